@@ -1,11 +1,16 @@
 package fwcd.sc18.alphabeta;
 
+import java.util.List;
+
+import fwcd.sc18.board.BoardIndex;
 import fwcd.sc18.core.CopyableLogic;
 import fwcd.sc18.core.EvaluatingLogic;
+import fwcd.sc18.core.ParallelRootSearch;
+import fwcd.sc18.evaluator.CachingEvaluator;
 import fwcd.sc18.evaluator.HeuristicEvaluator;
 import fwcd.sc18.evaluator.HeuristicPruner;
-import fwcd.sc18.evaluator.MoveEvaluator;
 import fwcd.sc18.evaluator.MovePruner;
+import fwcd.sc18.exception.SearchTimeoutException;
 import fwcd.sc18.trainer.core.VirtualClient;
 import fwcd.sc18.utils.GameAlgorithms;
 
@@ -16,20 +21,36 @@ import sc.plugin2018.AbstractClient;
 import sc.plugin2018.GameState;
 import sc.plugin2018.Move;
 import sc.plugin2018.Player;
+import sc.plugin2018.util.Constants;
+import sc.shared.GameResult;
 
+/**
+ * An iterative-deepening alpha-beta logic that searches
+ * increasingly deeper until it's per-move time budget
+ * runs out.
+ */
 public class AlphaBetaLogic extends EvaluatingLogic {
 	private static final Logger LOG = LoggerFactory.getLogger("ownlog");
 	private int depth = 4;
-	private MoveEvaluator evaluator = new HeuristicEvaluator();
+	private int maxDepth = Constants.ROUND_LIMIT * 2;
+	private long moveTimeMs = 1500;
+	private float aspirationWindow = 1;
+	private boolean reduceLateMoves = true;
+	private final HeuristicEvaluator heuristic = new HeuristicEvaluator();
+	private final CachingEvaluator evaluator = CachingEvaluator.ofPositions(heuristic, 1 << 18);
 	private MovePruner pruner = new HeuristicPruner();
+	private final TranspositionTable table = new TranspositionTable(1 << 20);
+	private final HeuristicMoveOrderer orderer = new HeuristicMoveOrderer();
+
+	private final SearchStats moveStats = new SearchStats();
+	private final SearchStats gameStats = new SearchStats();
 
 	private boolean benchmark = false;
-	private int gameStateEvaluations = 0;
-	
+
 	public AlphaBetaLogic(VirtualClient client) {
 		super(client);
 	}
-	
+
 	public AlphaBetaLogic(AbstractClient client) {
 		super(client);
 	}
@@ -39,17 +60,179 @@ public class AlphaBetaLogic extends EvaluatingLogic {
 		return new AlphaBetaLogic(client);
 	}
 
+	@Override
+	protected void onGameStart(GameState gameState) {
+		table.clear();
+		orderer.clear();
+		heuristic.setBoardIndex(BoardIndex.of(gameState));
+		evaluator.clear();
+		evaluator.resetStats();
+		gameStats.reset();
+	}
+
+	@Override
+	protected void onGameEnd(GameState gameState, boolean won, GameResult result, String errorMessage) {
+		LOG.info("Searched game: {}, leaf cache hit rate {}", gameStats, evaluator.getHitRate());
+	}
+
+	/**
+	 * Searches the root moves with depths 1, 2, 3, ... until
+	 * either the maximum depth or the deadline is reached and returns
+	 * the best move from the last completed iteration.
+	 */
+	@Override
+	protected Move selectMove(GameState gameBeforeMove, Player me) {
+		long startTime = System.currentTimeMillis();
+		SearchContext context = new SearchContext(me.getPlayerColor(), pruner, evaluator);
+		context.setDeadline(startTime + moveTimeMs);
+		context.setTable(table);
+		context.setOrderer(orderer);
+		context.setStats(moveStats);
+		context.setReduceLateMoves(reduceLateMoves);
+		moveStats.reset();
+		table.nextSearch();
+		orderer.nextSearch();
+
+		List<Move> moves = gameBeforeMove.getPossibleMoves();
+		long rootHash = ZobristHashing.hash(gameBeforeMove);
+		Move bestMove = moves.get(0);
+		float bestRating = Float.NaN;
+		int completedPlies = 0;
+
+		try {
+			for (int plies=1; plies<=maxDepth; plies++) {
+				int remainingDepth = plies - 1;
+				float lower = Float.NEGATIVE_INFINITY;
+				float upper = Float.POSITIVE_INFINITY;
+
+				if (Float.isFinite(bestRating)) {
+					// Aspiration window around the rating of the previous iteration
+					lower = bestRating - aspirationWindow;
+					upper = bestRating + aspirationWindow;
+				}
+
+				ParallelRootSearch search;
+
+				while (true) {
+					float windowLower = lower;
+					float windowUpper = upper;
+					search = searchRootMoves(moves, (move, alpha) -> searchRootMove(move, gameBeforeMove, rootHash, remainingDepth, alpha, windowLower, windowUpper, context));
+					float rating = search.getBestRating();
+
+					// Re-search with an open window on the failing side
+					if (rating <= lower && lower != Float.NEGATIVE_INFINITY) {
+						lower = Float.NEGATIVE_INFINITY;
+					} else if (rating >= upper && upper != Float.POSITIVE_INFINITY) {
+						upper = Float.POSITIVE_INFINITY;
+					} else {
+						break;
+					}
+				}
+
+				bestMove = search.getBestMove();
+				bestRating = search.getBestRating();
+				completedPlies = plies;
+
+				// Search the previously best move first during the next iteration
+				moves.remove(bestMove);
+				moves.add(0, bestMove);
+			}
+		} catch (SearchTimeoutException e) {
+			// Keep the best move from the last completed iteration
+		}
+
+		moveStats.addElapsedMs(System.currentTimeMillis() - startTime);
+		gameStats.add(moveStats);
+
+		if (benchmark) {
+			LOG.info("Completed iterative deepening search with {} plies: {}", completedPlies, moveStats);
+		} else {
+			LOG.debug("Completed iterative deepening search with {} plies: {}", completedPlies, moveStats);
+		}
+
+		return bestMove;
+	}
+
+	/**
+	 * Searches a root move within the given aspiration window. Moves
+	 * that are searched after a first rating (alpha) has been established
+	 * are searched with a null window first.
+	 */
+	private float searchRootMove(Move move, GameState gameBeforeMove, long rootHash, int depth, float alpha, float lower, float upper, SearchContext context) {
+		float windowAlpha = Math.max(alpha, lower);
+
+		if (alpha > lower) {
+			float rating = GameAlgorithms.alphaBeta(false, move, gameBeforeMove, rootHash, depth, windowAlpha, Math.nextUp(windowAlpha), context);
+			if (rating <= windowAlpha || rating >= upper) {
+				return rating;
+			}
+		}
+
+		return GameAlgorithms.alphaBeta(false, move, gameBeforeMove, rootHash, depth, windowAlpha, upper, context);
+	}
+
 	@Override
 	protected float evaluateMove(Move move, GameState gameBeforeMove, Player me) {
 		long startTime = System.currentTimeMillis();
-		float rating = GameAlgorithms.alphaBeta(false, move, gameBeforeMove, depth, me.getPlayerColor(), pruner, evaluator);
-		long delta = System.currentTimeMillis() - startTime;
+		SearchContext context = new SearchContext(me.getPlayerColor(), pruner, evaluator);
+		SearchStats stats = new SearchStats();
+		context.setStats(stats);
+
+		float rating = GameAlgorithms.alphaBeta(false, move, gameBeforeMove, 0, depth, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, context);
+		stats.addElapsedMs(System.currentTimeMillis() - startTime);
 
-		if (benchmark && delta > 0) {
-			LOG.info("Alpha-Beta Search evaluated {} game states per second", (gameStateEvaluations * 1000) / delta);
-			gameStateEvaluations = 0;
+		if (benchmark) {
+			LOG.info("Alpha-Beta Search evaluated {} game states per second", stats.getNodesPerSecond());
 		}
 
 		return rating;
 	}
+
+	/**
+	 * Sets the wall-clock time budget for a single move.
+	 */
+	public void setMoveTimeMs(long moveTimeMs) {
+		this.moveTimeMs = moveTimeMs;
+	}
+
+	/**
+	 * Sets the half-width of the window around the previous iteration's
+	 * rating that the root moves are searched with.
+	 */
+	public void setAspirationWindow(float aspirationWindow) {
+		this.aspirationWindow = aspirationWindow;
+	}
+
+	public void setReduceLateMoves(boolean reduceLateMoves) {
+		this.reduceLateMoves = reduceLateMoves;
+	}
+
+	/**
+	 * Logs the search statistics of every move at info level.
+	 */
+	public void setBenchmark(boolean benchmark) {
+		this.benchmark = benchmark;
+	}
+
+	/**
+	 * @return The statistics of the last (or currently running) move search
+	 */
+	public SearchStats getMoveStats() {
+		return moveStats;
+	}
+
+	/**
+	 * @return The accumulated statistics of all move searches of the current game
+	 */
+	public SearchStats getGameStats() {
+		return gameStats;
+	}
+
+	/**
+	 * Sets the depth (in plies) at which the iterative deepening stops
+	 * even if there is still time left.
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
 }
@@ -0,0 +1,235 @@
+package fwcd.sc18.alphabeta;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import fwcd.sc18.utils.HUIUtils;
+
+import sc.plugin2018.Action;
+import sc.plugin2018.Advance;
+import sc.plugin2018.Card;
+import sc.plugin2018.CardType;
+import sc.plugin2018.EatSalad;
+import sc.plugin2018.ExchangeCarrots;
+import sc.plugin2018.FallBack;
+import sc.plugin2018.FieldType;
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.plugin2018.util.Constants;
+
+/**
+ * A move orderer that ranks moves by (in descending priority):
+ *
+ * <ul>
+ * <li>the best move stored in the transposition table</li>
+ * <li>entering the goal</li>
+ * <li>the two killer moves of the current turn</li>
+ * <li>eating a salad</li>
+ * <li>the history heuristic (indexed by action type and target field)</li>
+ * </ul>
+ *
+ * <p>Killer moves and history scores are shared by all threads
+ * of a search. Concurrent updates may occasionally be lost, which
+ * only affects the quality of the ordering.</p>
+ */
+public class HeuristicMoveOrderer implements MoveOrderer {
+	private static final int TABLE_MOVE_SCORE = 1 << 30;
+	private static final int GOAL_SCORE = 1 << 28;
+	private static final int FIRST_KILLER_SCORE = 1 << 27;
+	private static final int SECOND_KILLER_SCORE = 1 << 26;
+	private static final int SALAD_SCORE = 1 << 25;
+	private static final int MAX_HISTORY_SCORE = 1 << 24;
+
+	private static final int ACTION_TYPES = 6;
+	private static final int MAX_TURN = Constants.ROUND_LIMIT * 2;
+
+	private final int[][] killers = new int[MAX_TURN + 1][2];
+	private final int[][] history = new int[ACTION_TYPES][Constants.NUM_FIELDS + 1];
+
+	private final LongAdder cutoffs = new LongAdder();
+	private final LongAdder firstMoveCutoffs = new LongAdder();
+
+	@Override
+	public int[] order(List<Move> moves, GameState state, int tableMoveIndex) {
+		int count = moves.size();
+		int[] indices = new int[count];
+		int[] scores = new int[count];
+		int[] turnKillers = killers[Math.min(state.getTurn(), MAX_TURN)];
+
+		for (int i=0; i<count; i++) {
+			Move move = moves.get(i);
+			int score;
+
+			if (i == tableMoveIndex) {
+				score = TABLE_MOVE_SCORE;
+			} else {
+				int targetField = HUIUtils.getTargetField(move, state);
+				int key = keyOf(move);
+
+				if (targetField == HUIUtils.MAX_FIELD) {
+					score = GOAL_SCORE;
+				} else if (key == turnKillers[0]) {
+					score = FIRST_KILLER_SCORE;
+				} else if (key == turnKillers[1]) {
+					score = SECOND_KILLER_SCORE;
+				} else if (eatsSalad(move, state, targetField)) {
+					score = SALAD_SCORE;
+				} else {
+					score = history[actionTypeOf(move)][clampField(targetField)];
+				}
+			}
+
+			indices[i] = i;
+			scores[i] = score;
+		}
+
+		// Insertion sort (stable and fast for the small move lists of this game)
+		for (int i=1; i<count; i++) {
+			int index = indices[i];
+			int score = scores[i];
+			int j = i - 1;
+
+			while (j >= 0 && scores[j] < score) {
+				indices[j + 1] = indices[j];
+				scores[j + 1] = scores[j];
+				j--;
+			}
+
+			indices[j + 1] = index;
+			scores[j + 1] = score;
+		}
+
+		return indices;
+	}
+
+	@Override
+	public void onCutoff(Move move, GameState state, int depth, int moveNumber) {
+		cutoffs.increment();
+		if (moveNumber == 0) {
+			firstMoveCutoffs.increment();
+		}
+
+		int[] turnKillers = killers[Math.min(state.getTurn(), MAX_TURN)];
+		int key = keyOf(move);
+
+		if (turnKillers[0] != key) {
+			turnKillers[1] = turnKillers[0];
+			turnKillers[0] = key;
+		}
+
+		int[] typeHistory = history[actionTypeOf(move)];
+		int field = clampField(HUIUtils.getTargetField(move, state));
+		typeHistory[field] += depth * depth;
+
+		if (typeHistory[field] > MAX_HISTORY_SCORE) {
+			ageHistory();
+		}
+	}
+
+	@Override
+	public void nextSearch() {
+		ageHistory();
+	}
+
+	@Override
+	public void clear() {
+		for (int[] turnKillers : killers) {
+			Arrays.fill(turnKillers, 0);
+		}
+		for (int[] typeHistory : history) {
+			Arrays.fill(typeHistory, 0);
+		}
+		cutoffs.reset();
+		firstMoveCutoffs.reset();
+	}
+
+	/**
+	 * @return The fraction of cutoffs that were caused by the first searched move
+	 */
+	public float getFirstMoveCutoffRate() {
+		long total = cutoffs.sum();
+		return total == 0 ? 0 : firstMoveCutoffs.sum() / (float) total;
+	}
+
+	public long getCutoffs() {
+		return cutoffs.sum();
+	}
+
+	private void ageHistory() {
+		for (int[] typeHistory : history) {
+			for (int i=0; i<typeHistory.length; i++) {
+				typeHistory[i] /= 2;
+			}
+		}
+	}
+
+	private int clampField(int field) {
+		return Math.max(0, Math.min(field, Constants.NUM_FIELDS));
+	}
+
+	private boolean eatsSalad(Move move, GameState state, int targetField) {
+		for (Action action : move.actions) {
+			if (action instanceof EatSalad) {
+				return true;
+			} else if (action instanceof Card && ((Card) action).getType() == CardType.EAT_SALAD) {
+				return true;
+			}
+		}
+
+		return targetField >= 0
+				&& targetField < Constants.NUM_FIELDS
+				&& state.getTypeAt(targetField) == FieldType.SALAD;
+	}
+
+	/**
+	 * Classifies a move by it's first action.
+	 */
+	private int actionTypeOf(Move move) {
+		return actionTypeOf(move.actions.get(0));
+	}
+
+	private int actionTypeOf(Action action) {
+		Class<? extends Action> clazz = action.getClass();
+
+		if (clazz == Advance.class) {
+			return 0;
+		} else if (clazz == Card.class) {
+			return 1;
+		} else if (clazz == ExchangeCarrots.class) {
+			return 2;
+		} else if (clazz == FallBack.class) {
+			return 3;
+		} else if (clazz == EatSalad.class) {
+			return 4;
+		} else {
+			return 5;
+		}
+	}
+
+	/**
+	 * Computes a (non-zero) key identifying a move
+	 * independently of the move object itself.
+	 */
+	private int keyOf(Move move) {
+		int key = 1;
+
+		for (Action action : move.actions) {
+			int value;
+
+			if (action instanceof Advance) {
+				value = ((Advance) action).getDistance();
+			} else if (action instanceof Card) {
+				value = (((Card) action).getType().ordinal() << 8) ^ ((Card) action).getValue();
+			} else if (action instanceof ExchangeCarrots) {
+				value = ((ExchangeCarrots) action).getValue();
+			} else {
+				value = 0;
+			}
+
+			key = (key * 31 + actionTypeOf(action)) * 31 + value;
+		}
+
+		return key == 0 ? 1 : key;
+	}
+}
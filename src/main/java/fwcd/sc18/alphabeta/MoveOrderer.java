@@ -0,0 +1,43 @@
+package fwcd.sc18.alphabeta;
+
+import java.util.List;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+
+/**
+ * Determines the order in which the children of a node
+ * are searched. Searching good moves first causes earlier
+ * cutoffs and thus a smaller search tree.
+ */
+public interface MoveOrderer {
+	/**
+	 * Ranks the given moves.
+	 *
+	 * @param moves - The moves possible in the given state
+	 * @param state - The state the moves are performed on
+	 * @param tableMoveIndex - The index of the best move stored in the transposition table or -1
+	 * @return The indices of the moves in the order in which they should be searched
+	 */
+	int[] order(List<Move> moves, GameState state, int tableMoveIndex);
+
+	/**
+	 * Called whenever a move caused a cutoff.
+	 *
+	 * @param move - The move that caused the cutoff
+	 * @param state - The state the move was performed on
+	 * @param depth - The remaining depth of the node
+	 * @param moveNumber - The position of the move in the search order
+	 */
+	void onCutoff(Move move, GameState state, int depth, int moveNumber);
+
+	/**
+	 * Called before every new search.
+	 */
+	default void nextSearch() {}
+
+	/**
+	 * Resets all learned information, e.g. after a game.
+	 */
+	default void clear() {}
+}
@@ -0,0 +1,142 @@
+package fwcd.sc18.alphabeta;
+
+import fwcd.sc18.evaluator.LeafBatch;
+import fwcd.sc18.evaluator.MoveEvaluator;
+import fwcd.sc18.evaluator.MovePruner;
+
+import sc.shared.PlayerColor;
+
+/**
+ * Bundles the parameters that are shared by all
+ * nodes of a single alpha-beta search.
+ *
+ * <p>A context may be shared by the threads of a parallel
+ * search, thus the reusable leaf buffers are thread-local.</p>
+ */
+public class SearchContext {
+	private final PlayerColor myColor;
+	private final MovePruner pruner;
+	private final MoveEvaluator evaluator;
+
+	private long deadline = Long.MAX_VALUE;
+	private TranspositionTable table = null;
+	private MoveOrderer orderer = null;
+	private SearchStats stats = null;
+	private boolean reduceLateMoves = false;
+	private boolean batchLeaves = false;
+	private final ThreadLocal<LeafBuffers> leafBuffers = ThreadLocal.withInitial(LeafBuffers::new);
+
+	/**
+	 * The reusable buffers of a thread used for batched leaf evaluation.
+	 */
+	private static class LeafBuffers {
+		private LeafBatch batch = null;
+		private float[] leafRatings = null;
+		private float[] batchRatings = null;
+	}
+
+	/**
+	 * @param myColor - The color of the maximizing player
+	 * @param pruner - The pruner (may be null)
+	 * @param evaluator - The evaluator used to rate leaf nodes
+	 */
+	public SearchContext(PlayerColor myColor, MovePruner pruner, MoveEvaluator evaluator) {
+		this.myColor = myColor;
+		this.pruner = pruner;
+		this.evaluator = evaluator;
+	}
+
+	public PlayerColor getMyColor() { return myColor; }
+
+	public MovePruner getPruner() { return pruner; }
+
+	public MoveEvaluator getEvaluator() { return evaluator; }
+
+	public long getDeadline() { return deadline; }
+
+	/**
+	 * Sets the time (in epoch milliseconds) after
+	 * which the search will be aborted.
+	 */
+	public void setDeadline(long deadline) { this.deadline = deadline; }
+
+	/**
+	 * @return The transposition table or null if none is used
+	 */
+	public TranspositionTable getTable() { return table; }
+
+	public void setTable(TranspositionTable table) { this.table = table; }
+
+	/**
+	 * @return The move orderer or null if moves are searched in the order they are generated
+	 */
+	public MoveOrderer getOrderer() { return orderer; }
+
+	public void setOrderer(MoveOrderer orderer) { this.orderer = orderer; }
+
+	/**
+	 * @return The statistics collector or null if no statistics are collected
+	 */
+	public SearchStats getStats() { return stats; }
+
+	public void setStats(SearchStats stats) { this.stats = stats; }
+
+	public boolean isReducingLateMoves() { return reduceLateMoves; }
+
+	/**
+	 * Enables late move reductions, which search late quiet moves
+	 * less deeply first (requires a move orderer to be effective).
+	 */
+	public void setReduceLateMoves(boolean reduceLateMoves) { this.reduceLateMoves = reduceLateMoves; }
+
+	public boolean isBatchingLeaves() { return batchLeaves; }
+
+	/**
+	 * Enables batched leaf evaluation, which rates all children
+	 * of a node at depth 1 using a single {@link LeafBatch}.
+	 */
+	public void setBatchLeaves(boolean batchLeaves) { this.batchLeaves = batchLeaves; }
+
+	/**
+	 * Fetches the (cleared) leaf batch of the current thread. Since
+	 * only the nodes at depth 1 use it, a single batch per thread
+	 * can be reused.
+	 */
+	public LeafBatch getLeafBatch() {
+		LeafBuffers buffers = leafBuffers.get();
+
+		if (buffers.batch == null) {
+			buffers.batch = evaluator.newBatch();
+		} else {
+			buffers.batch.clear();
+		}
+
+		return buffers.batch;
+	}
+
+	/**
+	 * Fetches a reusable buffer (of the current thread) for the ratings of the children of a node.
+	 */
+	public float[] getLeafRatings(int minLength) {
+		LeafBuffers buffers = leafBuffers.get();
+
+		if (buffers.leafRatings == null || buffers.leafRatings.length < minLength) {
+			buffers.leafRatings = new float[Math.max(minLength, 64)];
+		}
+
+		return buffers.leafRatings;
+	}
+
+	/**
+	 * Fetches a reusable buffer (of the current thread) for the output of a leaf batch.
+	 */
+	public float[] getBatchRatings(int minLength) {
+		LeafBuffers buffers = leafBuffers.get();
+
+		if (buffers.batchRatings == null || buffers.batchRatings.length < minLength) {
+			buffers.batchRatings = new float[Math.max(minLength, 64)];
+		}
+
+		return buffers.batchRatings;
+	}
+}
@@ -0,0 +1,176 @@
+package fwcd.sc18.alphabeta;
+
+import java.util.Arrays;
+import java.util.List;
+
+import fwcd.sc18.utils.HUIException;
+import fwcd.sc18.utils.PluginAccess;
+
+import sc.plugin2018.Action;
+import sc.plugin2018.CardType;
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.plugin2018.Player;
+import sc.shared.InvalidGameStateException;
+import sc.shared.InvalidMoveException;
+import sc.shared.PlayerColor;
+
+/**
+ * A mutable game state that performs moves in place and
+ * undoes them using a preallocated undo stack, thus avoiding
+ * a deep copy of the game state for every searched node.
+ *
+ * <p>Only the fields that {@link Move#perform} can modify are
+ * saved: the turn, the current player, the last move and the
+ * per-player fields of both players. The board is never modified.</p>
+ *
+ * <p>Instances are not thread-safe and are intended to be owned
+ * by a single search thread.</p>
+ */
+public class SearchState {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final GameState state;
+	private final GameState previous;
+	private int ply = 0;
+	private int previousPly = -1;
+
+	// Undo stack (one entry per ply, player entries are stored at 2 * ply + playerIndex)
+	private int[] turns = new int[INITIAL_CAPACITY];
+	private PlayerColor[] currentPlayers = new PlayerColor[INITIAL_CAPACITY];
+	private Move[] lastMoves = new Move[INITIAL_CAPACITY];
+	private int[] fieldIndices = new int[INITIAL_CAPACITY * 2];
+	private int[] carrots = new int[INITIAL_CAPACITY * 2];
+	private int[] salads = new int[INITIAL_CAPACITY * 2];
+	private Object[] cards = new Object[INITIAL_CAPACITY * 2];
+	private Action[] lastNonSkipActions = new Action[INITIAL_CAPACITY * 2];
+	private boolean[] mustPlayCards = new boolean[INITIAL_CAPACITY * 2];
+
+	/**
+	 * Creates a new search state from a copy of
+	 * the given state (which is never modified).
+	 */
+	public SearchState(GameState root) {
+		try {
+			state = root.clone();
+			previous = root.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new HUIException(e);
+		}
+	}
+
+	/**
+	 * @return The current (mutable) state
+	 */
+	public GameState getState() { return state; }
+
+	/**
+	 * @return The number of moves that have been applied and not yet undone
+	 */
+	public int getPly() { return ply; }
+
+	/**
+	 * Fetches the state before the last applied move. The returned
+	 * object is only valid until the next call to apply or undo.
+	 */
+	public GameState getPrevious() {
+		if (ply == 0) {
+			throw new IllegalStateException("No move has been applied yet");
+		} else if (previousPly != ply) {
+			restore(ply - 1, previous);
+			previousPly = ply;
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Performs a move in place.
+	 *
+	 * @return Whether the move was valid (the state is left unchanged otherwise)
+	 */
+	public boolean apply(Move move) {
+		save(ply);
+		ply++;
+		previousPly = -1;
+
+		try {
+			move.perform(state);
+			return true;
+		} catch (InvalidMoveException | InvalidGameStateException e) {
+			undo();
+			return false;
+		}
+	}
+
+	/**
+	 * Reverts the last applied move.
+	 */
+	public void undo() {
+		if (ply == 0) {
+			throw new IllegalStateException("No move to undo");
+		}
+
+		ply--;
+		previousPly = -1;
+		restore(ply, state);
+	}
+
+	private void save(int frame) {
+		if (frame >= turns.length) {
+			grow();
+		}
+
+		turns[frame] = state.getTurn();
+		currentPlayers[frame] = state.getCurrentPlayerColor();
+		lastMoves[frame] = state.getLastMove();
+		savePlayer(frame * 2, state.getPlayer(PlayerColor.RED));
+		savePlayer(frame * 2 + 1, state.getPlayer(PlayerColor.BLUE));
+	}
+
+	private void savePlayer(int slot, Player player) {
+		fieldIndices[slot] = player.getFieldIndex();
+		carrots[slot] = player.getCarrots();
+		salads[slot] = player.getSalads();
+		cards[slot] = player.getCards();
+		lastNonSkipActions[slot] = player.getLastNonSkipAction();
+		mustPlayCards[slot] = player.mustPlayCard();
+	}
+
+	private void restore(int frame, GameState target) {
+		PluginAccess.setTurn(target, turns[frame]);
+		PluginAccess.setCurrentPlayer(target, currentPlayers[frame]);
+		PluginAccess.setLastMove(target, lastMoves[frame]);
+		restorePlayer(frame * 2, target.getPlayer(PlayerColor.RED));
+		restorePlayer(frame * 2 + 1, target.getPlayer(PlayerColor.BLUE));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void restorePlayer(int slot, Player player) {
+		player.setFieldIndex(fieldIndices[slot]);
+		PluginAccess.setCarrots(player, carrots[slot]);
+		PluginAccess.setSalads(player, salads[slot]);
+
+		// Card lists are never modified in place (playing a card replaces the list),
+		// thus they can safely be shared between the states
+		if (player.getCards() != cards[slot]) {
+			PluginAccess.setCards(player, (List<CardType>) cards[slot]);
+		}
+
+		player.setLastNonSkipAction(lastNonSkipActions[slot]);
+		player.setMustPlayCard(mustPlayCards[slot]);
+	}
+
+	private void grow() {
+		int capacity = turns.length * 2;
+		turns = Arrays.copyOf(turns, capacity);
+		currentPlayers = Arrays.copyOf(currentPlayers, capacity);
+		lastMoves = Arrays.copyOf(lastMoves, capacity);
+		fieldIndices = Arrays.copyOf(fieldIndices, capacity * 2);
+		carrots = Arrays.copyOf(carrots, capacity * 2);
+		salads = Arrays.copyOf(salads, capacity * 2);
+		cards = Arrays.copyOf(cards, capacity * 2);
+		lastNonSkipActions = Arrays.copyOf(lastNonSkipActions, capacity * 2);
+		mustPlayCards = Arrays.copyOf(mustPlayCards, capacity * 2);
+	}
+}
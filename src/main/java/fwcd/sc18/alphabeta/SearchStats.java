@@ -0,0 +1,158 @@
+package fwcd.sc18.alphabeta;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics of one or more alpha-beta searches.
+ *
+ * <p>All counters are striped ({@link LongAdder}), thus they
+ * can be updated by the threads of a parallel search without
+ * contending with each other. Reading a statistic while a
+ * search is running yields an approximate value.</p>
+ */
+public class SearchStats {
+	private final LongAdder nodes = new LongAdder();
+	private final LongAdder leafEvaluations = new LongAdder();
+	private final LongAdder expandedNodes = new LongAdder();
+	private final LongAdder searchedChildren = new LongAdder();
+	private final LongAdder cutoffs = new LongAdder();
+	private final LongAdder firstMoveCutoffs = new LongAdder();
+	private final LongAdder tableProbes = new LongAdder();
+	private final LongAdder tableHits = new LongAdder();
+	private final LongAdder elapsedMs = new LongAdder();
+	private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a visited node.
+	 *
+	 * @param ply - The distance (in plies) of the node from the root
+	 */
+	public void recordNode(int ply) {
+		nodes.increment();
+		maxDepth.accumulate(ply);
+	}
+
+	public void recordLeafEvaluation() {
+		leafEvaluations.increment();
+	}
+
+	/**
+	 * Records an inner node whose children have been searched.
+	 *
+	 * @param children - The number of children that have actually been searched
+	 */
+	public void recordExpansion(int children) {
+		expandedNodes.increment();
+		searchedChildren.add(children);
+	}
+
+	/**
+	 * Records a beta- or alpha-cutoff.
+	 *
+	 * @param moveNumber - The position of the move that caused the cutoff in the search order
+	 */
+	public void recordCutoff(int moveNumber) {
+		cutoffs.increment();
+		if (moveNumber == 0) {
+			firstMoveCutoffs.increment();
+		}
+	}
+
+	public void recordTableProbe(boolean hit) {
+		tableProbes.increment();
+		if (hit) {
+			tableHits.increment();
+		}
+	}
+
+	public void addElapsedMs(long ms) {
+		elapsedMs.add(ms);
+	}
+
+	/**
+	 * Adds the statistics of another search to this one.
+	 */
+	public void add(SearchStats other) {
+		nodes.add(other.getNodes());
+		leafEvaluations.add(other.getLeafEvaluations());
+		expandedNodes.add(other.expandedNodes.sum());
+		searchedChildren.add(other.searchedChildren.sum());
+		cutoffs.add(other.getCutoffs());
+		firstMoveCutoffs.add(other.firstMoveCutoffs.sum());
+		tableProbes.add(other.getTableProbes());
+		tableHits.add(other.tableHits.sum());
+		elapsedMs.add(other.getElapsedMs());
+		maxDepth.accumulate(other.getMaxDepth());
+	}
+
+	public void reset() {
+		nodes.reset();
+		leafEvaluations.reset();
+		expandedNodes.reset();
+		searchedChildren.reset();
+		cutoffs.reset();
+		firstMoveCutoffs.reset();
+		tableProbes.reset();
+		tableHits.reset();
+		elapsedMs.reset();
+		maxDepth.reset();
+	}
+
+	public long getNodes() { return nodes.sum(); }
+
+	public long getLeafEvaluations() { return leafEvaluations.sum(); }
+
+	public long getCutoffs() { return cutoffs.sum(); }
+
+	public long getTableProbes() { return tableProbes.sum(); }
+
+	public long getElapsedMs() { return elapsedMs.sum(); }
+
+	/**
+	 * @return The deepest ply (counted from the root) that has been visited
+	 */
+	public int getMaxDepth() { return (int) maxDepth.get(); }
+
+	public long getNodesPerSecond() {
+		long ms = getElapsedMs();
+		return ms == 0 ? 0 : (getNodes() * 1000) / ms;
+	}
+
+	/**
+	 * @return The fraction of cutoffs that were caused by the first searched move
+	 */
+	public float getFirstMoveCutoffRate() {
+		long total = getCutoffs();
+		return total == 0 ? 0 : firstMoveCutoffs.sum() / (float) total;
+	}
+
+	/**
+	 * @return The average number of children searched per inner node (after cutoffs)
+	 */
+	public float getEffectiveBranchingFactor() {
+		long expanded = expandedNodes.sum();
+		return expanded == 0 ? 0 : searchedChildren.sum() / (float) expanded;
+	}
+
+	/**
+	 * @return The fraction of transposition table probes that found an entry
+	 */
+	public float getTableHitRate() {
+		long probes = getTableProbes();
+		return probes == 0 ? 0 : tableHits.sum() / (float) probes;
+	}
+
+	@Override
+	public String toString() {
+		String s = String.format("%d nodes in %d ms (%d nodes/s), %d leaf evaluations, %d cutoffs (%.1f%% by first move), branching factor %.2f, max depth %d",
+				getNodes(), getElapsedMs(), getNodesPerSecond(), getLeafEvaluations(), getCutoffs(),
+				getFirstMoveCutoffRate() * 100, getEffectiveBranchingFactor(), getMaxDepth());
+
+		if (getTableProbes() > 0) {
+			s += String.format(", TT hit rate %.1f%%", getTableHitRate() * 100);
+		}
+
+		return s;
+	}
+}
@@ -0,0 +1,140 @@
+package fwcd.sc18.alphabeta;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size hash table that caches the results of
+ * previously searched positions, keyed by their Zobrist hash.
+ *
+ * <p>Every entry is packed into a single long holding the score,
+ * the remaining search depth, the bound type, the age (search id)
+ * and the index of the best move in the position's move list.
+ * The key is stored XORed with the entry, which allows lock-free
+ * concurrent access: Torn writes are detected because the stored
+ * key no longer matches the entry.</p>
+ */
+public class TranspositionTable {
+	/** Returned by {@link #probe(long)} if the position is not stored. */
+	public static final long MISS = 0;
+
+	private static final long VALID_BIT = 1L << 63;
+	private static final int SCORE_SHIFT = 0;
+	private static final int DEPTH_SHIFT = 32;
+	private static final int BOUND_SHIFT = 40;
+	private static final int AGE_SHIFT = 42;
+	private static final int MOVE_SHIFT = 50;
+	private static final int BYTE_MASK = 0xFF;
+	private static final Bound[] BOUNDS = Bound.values();
+
+	private final long[] keys;
+	private final long[] entries;
+	private final int indexMask;
+	private int age = 0;
+
+	public enum Bound {
+		/** The stored score is the exact value of the position. */
+		EXACT,
+		/** The value of the position is greater than or equal to the stored score. */
+		LOWER,
+		/** The value of the position is less than or equal to the stored score. */
+		UPPER
+	}
+
+	/**
+	 * Creates a new table with at least the given number of entries
+	 * (rounded up to the next power of two).
+	 */
+	public TranspositionTable(int minEntries) {
+		int size = Integer.highestOneBit(Math.max(minEntries - 1, 1)) << 1;
+		keys = new long[size];
+		entries = new long[size];
+		indexMask = size - 1;
+	}
+
+	/**
+	 * Looks up a position.
+	 *
+	 * @param hash - The Zobrist hash of the position
+	 * @return The packed entry or {@link #MISS}
+	 */
+	public long probe(long hash) {
+		int index = (int) hash & indexMask;
+		long entry = entries[index];
+
+		if ((keys[index] ^ entry) == hash) {
+			return entry;
+		} else {
+			return MISS;
+		}
+	}
+
+	/**
+	 * Stores a search result. An existing entry is only replaced if it
+	 * stems from an older search or has been searched less deeply.
+	 *
+	 * @param hash - The Zobrist hash of the position
+	 * @param depth - The remaining depth the position has been searched with
+	 * @param bound - The type of the score
+	 * @param score - The score of the position
+	 * @param moveIndex - The index of the best move or -1 if there was none
+	 */
+	public void store(long hash, int depth, Bound bound, float score, int moveIndex) {
+		int index = (int) hash & indexMask;
+		long existing = entries[index];
+
+		if (existing == MISS || ageOf(existing) != (age & BYTE_MASK) || depth >= depthOf(existing)) {
+			long entry = VALID_BIT
+					| ((Float.floatToRawIntBits(score) & 0xFFFFFFFFL) << SCORE_SHIFT)
+					| ((long) (Math.min(depth, BYTE_MASK) & BYTE_MASK) << DEPTH_SHIFT)
+					| ((long) bound.ordinal() << BOUND_SHIFT)
+					| ((long) (age & BYTE_MASK) << AGE_SHIFT)
+					| ((long) ((moveIndex + 1) & BYTE_MASK) << MOVE_SHIFT);
+			keys[index] = hash ^ entry;
+			entries[index] = entry;
+		}
+	}
+
+	/**
+	 * Marks the beginning of a new search, which causes
+	 * the entries of older searches to be replaced first.
+	 */
+	public void nextSearch() {
+		age++;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(entries, MISS);
+		age = 0;
+	}
+
+	public int size() {
+		return entries.length;
+	}
+
+	public static float scoreOf(long entry) {
+		return Float.intBitsToFloat((int) (entry >>> SCORE_SHIFT));
+	}
+
+	public static int depthOf(long entry) {
+		return (int) (entry >>> DEPTH_SHIFT) & BYTE_MASK;
+	}
+
+	public static Bound boundOf(long entry) {
+		return BOUNDS[(int) (entry >>> BOUND_SHIFT) & 0x3];
+	}
+
+	/**
+	 * @return The index of the best move in the position's move list or -1
+	 */
+	public static int moveIndexOf(long entry) {
+		return ((int) (entry >>> MOVE_SHIFT) & BYTE_MASK) - 1;
+	}
+
+	private static int ageOf(long entry) {
+		return (int) (entry >>> AGE_SHIFT) & BYTE_MASK;
+	}
+}
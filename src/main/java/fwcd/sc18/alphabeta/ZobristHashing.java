@@ -0,0 +1,205 @@
+package fwcd.sc18.alphabeta;
+
+import java.util.List;
+import java.util.Random;
+
+import sc.plugin2018.Action;
+import sc.plugin2018.Advance;
+import sc.plugin2018.Card;
+import sc.plugin2018.CardType;
+import sc.plugin2018.EatSalad;
+import sc.plugin2018.ExchangeCarrots;
+import sc.plugin2018.FallBack;
+import sc.plugin2018.GameState;
+import sc.plugin2018.Player;
+import sc.plugin2018.util.Constants;
+import sc.shared.PlayerColor;
+
+/**
+ * Computes 64-bit Zobrist hashes of game states. Two states
+ * that agree on the fields, carrots, salads, cards, last actions
+ * of both players, the current player and the turn hash to the
+ * same value.
+ *
+ * <p>The keys are generated from a fixed seed, thus hashes
+ * are stable across runs.</p>
+ */
+public final class ZobristHashing {
+	private static final int COLORS = 2;
+	private static final int MAX_TURN = Constants.ROUND_LIMIT * 2;
+	private static final int ACTION_CODES = 12;
+
+	private static final long[][] FIELD_KEYS = new long[COLORS][Constants.NUM_FIELDS];
+	private static final long[][] SALAD_KEYS = new long[COLORS][Constants.SALADS_TO_EAT + 1];
+	private static final long[][] CARD_KEYS = new long[COLORS][1 << CardType.values().length];
+	private static final long[][] LAST_ACTION_KEYS = new long[COLORS][ACTION_CODES];
+	private static final long[] CARROT_SEEDS = new long[COLORS];
+	private static final long[] MUST_PLAY_CARD_KEYS = new long[COLORS];
+	private static final long[] TURN_KEYS = new long[MAX_TURN + 1];
+	private static final long BLUE_TO_MOVE_KEY;
+
+	static {
+		Random random = new Random(0x5C18L);
+
+		for (int color=0; color<COLORS; color++) {
+			fill(FIELD_KEYS[color], random);
+			fill(SALAD_KEYS[color], random);
+			fill(CARD_KEYS[color], random);
+			fill(LAST_ACTION_KEYS[color], random);
+			CARROT_SEEDS[color] = random.nextLong();
+			MUST_PLAY_CARD_KEYS[color] = random.nextLong();
+		}
+
+		fill(TURN_KEYS, random);
+		BLUE_TO_MOVE_KEY = random.nextLong();
+	}
+
+	private ZobristHashing() {}
+
+	private static void fill(long[] keys, Random random) {
+		for (int i=0; i<keys.length; i++) {
+			keys[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * Computes the hash of a game state from scratch.
+	 */
+	public static long hash(GameState state) {
+		return hash(state.getPlayer(PlayerColor.RED))
+				^ hash(state.getPlayer(PlayerColor.BLUE))
+				^ sideAndTurnKey(state);
+	}
+
+	/**
+	 * Incrementally derives the hash of a child state
+	 * from the hash of it's parent state by only swapping
+	 * the keys of the player components that changed.
+	 */
+	public static long childHash(long parentHash, GameState parent, GameState child) {
+		return parentHash
+				^ sideAndTurnKey(parent)
+				^ sideAndTurnKey(child)
+				^ playerDelta(0, parent.getPlayer(PlayerColor.RED), child.getPlayer(PlayerColor.RED))
+				^ playerDelta(1, parent.getPlayer(PlayerColor.BLUE), child.getPlayer(PlayerColor.BLUE));
+	}
+
+	/**
+	 * Computes the keys that need to be swapped to turn the hash
+	 * of a player into the hash of the player after a move (which
+	 * is zero for an opponent that was not affected by the move).
+	 */
+	private static long playerDelta(int color, Player before, Player after) {
+		long delta = 0;
+
+		if (before.getFieldIndex() != after.getFieldIndex()) {
+			delta ^= FIELD_KEYS[color][before.getFieldIndex()] ^ FIELD_KEYS[color][after.getFieldIndex()];
+		}
+		if (before.getSalads() != after.getSalads()) {
+			delta ^= SALAD_KEYS[color][before.getSalads()] ^ SALAD_KEYS[color][after.getSalads()];
+		}
+		if (before.getCarrots() != after.getCarrots()) {
+			delta ^= mix(CARROT_SEEDS[color] + before.getCarrots()) ^ mix(CARROT_SEEDS[color] + after.getCarrots());
+		}
+		if (before.mustPlayCard() != after.mustPlayCard()) {
+			delta ^= MUST_PLAY_CARD_KEYS[color];
+		}
+
+		// Card lists and actions are compared by reference first, since they are usually shared
+		List<CardType> cardsBefore = before.getCards();
+		List<CardType> cardsAfter = after.getCards();
+		if (cardsBefore != cardsAfter) {
+			int maskBefore = cardMask(cardsBefore);
+			int maskAfter = cardMask(cardsAfter);
+			if (maskBefore != maskAfter) {
+				delta ^= CARD_KEYS[color][maskBefore] ^ CARD_KEYS[color][maskAfter];
+			}
+		}
+
+		Action actionBefore = before.getLastNonSkipAction();
+		Action actionAfter = after.getLastNonSkipAction();
+		if (actionBefore != actionAfter) {
+			delta ^= LAST_ACTION_KEYS[color][lastActionCode(actionBefore)] ^ LAST_ACTION_KEYS[color][lastActionCode(actionAfter)];
+		}
+
+		return delta;
+	}
+
+	private static long sideAndTurnKey(GameState state) {
+		long key = TURN_KEYS[Math.min(state.getTurn(), MAX_TURN)];
+
+		if (state.getCurrentPlayerColor() == PlayerColor.BLUE) {
+			key ^= BLUE_TO_MOVE_KEY;
+		}
+
+		return key;
+	}
+
+	private static long hash(Player player) {
+		int color = player.getPlayerColor() == PlayerColor.RED ? 0 : 1;
+		long key = FIELD_KEYS[color][player.getFieldIndex()]
+				^ SALAD_KEYS[color][player.getSalads()]
+				^ CARD_KEYS[color][cardMask(player.getCards())]
+				^ LAST_ACTION_KEYS[color][lastActionCode(player.getLastNonSkipAction())]
+				^ mix(CARROT_SEEDS[color] + player.getCarrots());
+
+		if (player.mustPlayCard()) {
+			key ^= MUST_PLAY_CARD_KEYS[color];
+		}
+
+		return key;
+	}
+
+	private static int cardMask(List<CardType> cards) {
+		int mask = 0;
+
+		for (CardType card : cards) {
+			mask |= 1 << card.ordinal();
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Encodes the (rule-relevant) type of the last
+	 * non-skip action as a small integer.
+	 */
+	private static int lastActionCode(Action action) {
+		if (action == null) {
+			return 0;
+		}
+
+		Class<? extends Action> clazz = action.getClass();
+
+		if (clazz == Advance.class) {
+			return 1;
+		} else if (clazz == EatSalad.class) {
+			return 2;
+		} else if (clazz == ExchangeCarrots.class) {
+			return ((ExchangeCarrots) action).getValue() > 0 ? 3 : 4;
+		} else if (clazz == FallBack.class) {
+			return 5;
+		} else if (clazz == Card.class) {
+			Card card = (Card) action;
+
+			if (card.getType() == CardType.TAKE_OR_DROP_CARROTS) {
+				int value = card.getValue();
+				return value > 0 ? 6 : (value < 0 ? 10 : 11);
+			} else {
+				return 6 + card.getType().ordinal();
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown action type: " + clazz.getSimpleName());
+		}
+	}
+
+	/**
+	 * The SplitMix64 finalizer, used to hash unbounded
+	 * values (like carrots) for which no key table exists.
+	 */
+	private static long mix(long x) {
+		x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+		x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+		return x ^ (x >>> 31);
+	}
+}
@@ -0,0 +1,153 @@
+package fwcd.sc18.board;
+
+import sc.plugin2018.FieldType;
+import sc.plugin2018.GameState;
+import sc.plugin2018.util.Constants;
+
+/**
+ * An immutable bitboard view of a board that stores one
+ * mask per {@link FieldType}. Since the board has 65 fields,
+ * every mask is split into a low long (fields 0 - 63) and
+ * a high long (field 64, the goal, in bit 0).
+ *
+ * <p>Field queries are answered using bit scans instead of
+ * iterating the board.</p>
+ */
+public final class BitBoard {
+	/** The index of the first field stored in the high masks. */
+	public static final int HIGH_OFFSET = 64;
+
+	private static final FieldType[] TYPES = FieldType.values();
+
+	private final long[] lowMasks = new long[TYPES.length];
+	private final long[] highMasks = new long[TYPES.length];
+
+	private BitBoard(FieldType[] types) {
+		for (int i=0; i<types.length; i++) {
+			int ordinal = types[i].ordinal();
+
+			if (i < HIGH_OFFSET) {
+				lowMasks[ordinal] |= 1L << i;
+			} else {
+				highMasks[ordinal] |= 1L << (i - HIGH_OFFSET);
+			}
+		}
+	}
+
+	/**
+	 * Creates a bitboard from the field types (indexed by field).
+	 */
+	public static BitBoard of(FieldType[] types) {
+		if (types.length > 2 * Long.SIZE) {
+			throw new IllegalArgumentException("A board with " + types.length + " fields does not fit into a bitboard");
+		}
+
+		return new BitBoard(types);
+	}
+
+	public static BitBoard of(GameState state) {
+		FieldType[] types = new FieldType[Constants.NUM_FIELDS];
+
+		for (int i=0; i<types.length; i++) {
+			types[i] = state.getTypeAt(i);
+		}
+
+		return new BitBoard(types);
+	}
+
+	/**
+	 * @return The mask of the fields 0 - 63 having the given type
+	 */
+	public long getLowMask(FieldType type) { return lowMasks[type.ordinal()]; }
+
+	/**
+	 * @return The mask of the fields 64 - 127 having the given type
+	 */
+	public long getHighMask(FieldType type) { return highMasks[type.ordinal()]; }
+
+	public boolean isType(FieldType type, int index) {
+		if (index < 0) {
+			return false;
+		} else if (index < HIGH_OFFSET) {
+			return (lowMasks[type.ordinal()] & (1L << index)) != 0;
+		} else {
+			return index < 2 * HIGH_OFFSET && (highMasks[type.ordinal()] & (1L << (index - HIGH_OFFSET))) != 0;
+		}
+	}
+
+	/**
+	 * Equivalent to {@link GameState#getNextFieldByType(FieldType, int)}.
+	 *
+	 * @return The index of the closest field of the given type after the given index or -1
+	 */
+	public int getNextFieldByType(FieldType type, int index) {
+		int from = index + 1;
+
+		if (from < HIGH_OFFSET) {
+			long low = lowMasks[type.ordinal()] & (-1L << Math.max(from, 0));
+			if (low != 0) {
+				return Long.numberOfTrailingZeros(low);
+			}
+		}
+
+		long high = highMasks[type.ordinal()] & (-1L << Math.max(from - HIGH_OFFSET, 0));
+		return (high == 0 || from >= 2 * HIGH_OFFSET) ? -1 : HIGH_OFFSET + Long.numberOfTrailingZeros(high);
+	}
+
+	/**
+	 * Equivalent to {@link GameState#getPreviousFieldByType(FieldType, int)}.
+	 *
+	 * @return The index of the closest field of the given type before the given index or -1
+	 */
+	public int getPreviousFieldByType(FieldType type, int index) {
+		if (index > HIGH_OFFSET) {
+			long high = highMasks[type.ordinal()] & belowMask(Math.min(index - HIGH_OFFSET, Long.SIZE));
+			if (high != 0) {
+				return HIGH_OFFSET + (Long.SIZE - 1) - Long.numberOfLeadingZeros(high);
+			}
+		}
+
+		long low = lowMasks[type.ordinal()] & belowMask(Math.max(Math.min(index, Long.SIZE), 0));
+		return (low == 0) ? -1 : (Long.SIZE - 1) - Long.numberOfLeadingZeros(low);
+	}
+
+	/**
+	 * Computes the fields that a player could advance to
+	 * as far as the field types and the opponent are concerned,
+	 * thus excluding hedgehogs, the opponent's field and salad
+	 * fields (if the player has no salads left). Hare fields
+	 * and the goal still have to be validated by the caller.
+	 *
+	 * @param index - The player's field
+	 * @param otherIndex - The opponent's field
+	 * @param maxDistance - The maximum distance the player can afford
+	 * @param hasSalads - Whether the player has salads left
+	 * @return The mask of the candidate fields, limited to the low fields (0 - 63)
+	 */
+	public long getAdvanceCandidates(int index, int otherIndex, int maxDistance, boolean hasSalads) {
+		int last = Math.min(index + maxDistance, HIGH_OFFSET - 1);
+		if (maxDistance <= 0 || index + 1 > last) {
+			return 0;
+		}
+
+		long range = (-1L << (index + 1)) & (-1L >>> ((Long.SIZE - 1) - last));
+		long blocked = lowMasks[FieldType.HEDGEHOG.ordinal()] | lowMasks[FieldType.INVALID.ordinal()] | occupancyMask(otherIndex);
+
+		if (!hasSalads) {
+			blocked |= lowMasks[FieldType.SALAD.ordinal()];
+		}
+
+		return range & ~blocked;
+	}
+
+	/**
+	 * @return The mask of a player occupying the given field (empty if the player is in the goal)
+	 */
+	public static long occupancyMask(int index) {
+		return (index >= 0 && index < HIGH_OFFSET) ? (1L << index) : 0;
+	}
+
+	private static long belowMask(int bits) {
+		return (bits >= Long.SIZE) ? -1L : ((1L << bits) - 1);
+	}
+}
@@ -0,0 +1,106 @@
+package fwcd.sc18.board;
+
+import sc.plugin2018.CardType;
+import sc.plugin2018.FieldType;
+import sc.plugin2018.GameState;
+import sc.plugin2018.Player;
+import sc.plugin2018.util.Constants;
+import sc.plugin2018.util.GameRuleLogic;
+
+/**
+ * Precomputed lookup tables for a (per game fixed) board,
+ * turning the linear board scans of {@link GameState} and
+ * {@code HUIUtils} into array reads.
+ *
+ * <p>Instances are immutable and thus safe to share between threads.</p>
+ */
+public final class BoardIndex {
+	private static final FieldType[] TYPES = FieldType.values();
+	private static final int[] CARROT_COSTS = new int[Constants.NUM_FIELDS + 1];
+
+	static {
+		for (int distance=0; distance<CARROT_COSTS.length; distance++) {
+			CARROT_COSTS[distance] = GameRuleLogic.calculateCarrots(distance);
+		}
+	}
+
+	private final FieldType[] types = new FieldType[Constants.NUM_FIELDS];
+	/** Indexed by [type ordinal][field index] */
+	private final int[][] nextFields = new int[TYPES.length][Constants.NUM_FIELDS];
+	private final int[][] previousFields = new int[TYPES.length][Constants.NUM_FIELDS];
+
+	private BoardIndex(GameState state) {
+		for (int i=0; i<Constants.NUM_FIELDS; i++) {
+			types[i] = state.getTypeAt(i);
+		}
+
+		for (FieldType type : TYPES) {
+			int[] next = nextFields[type.ordinal()];
+			int[] previous = previousFields[type.ordinal()];
+
+			for (int i=0; i<Constants.NUM_FIELDS; i++) {
+				next[i] = state.getNextFieldByType(type, i);
+				previous[i] = state.getPreviousFieldByType(type, i);
+			}
+		}
+	}
+
+	/**
+	 * Indexes the board of the given state.
+	 */
+	public static BoardIndex of(GameState state) {
+		return new BoardIndex(state);
+	}
+
+	public FieldType getTypeAt(int index) {
+		return (index >= 0 && index < types.length) ? types[index] : FieldType.INVALID;
+	}
+
+	/**
+	 * Equivalent to {@link GameState#getNextFieldByType(FieldType, int)}.
+	 */
+	public int getNextFieldByType(FieldType type, int index) {
+		return nextFields[type.ordinal()][index];
+	}
+
+	/**
+	 * Equivalent to {@link GameState#getPreviousFieldByType(FieldType, int)}.
+	 */
+	public int getPreviousFieldByType(FieldType type, int index) {
+		return previousFields[type.ordinal()][index];
+	}
+
+	public int distToNextField(FieldType type, int index) {
+		return getNextFieldByType(type, index) - index;
+	}
+
+	public int distToPrevField(FieldType type, int index) {
+		return getPreviousFieldByType(type, index) - index;
+	}
+
+	/**
+	 * Equivalent to {@code HUIUtils.distToNextSalad}.
+	 */
+	public int distToNextSalad(Player player) {
+		int index = player.getFieldIndex();
+		int distToSaladField = distToNextField(FieldType.SALAD, index);
+		int distToHareField = distToNextField(FieldType.HARE, index);
+
+		if (distToHareField < distToSaladField && player.ownsCardOfType(CardType.EAT_SALAD)) {
+			return distToHareField;
+		} else {
+			return distToSaladField;
+		}
+	}
+
+	/**
+	 * Equivalent to {@link GameRuleLogic#calculateCarrots(int)}.
+	 */
+	public static int calculateCarrots(int distance) {
+		if (distance >= 0 && distance < CARROT_COSTS.length) {
+			return CARROT_COSTS[distance];
+		} else {
+			return GameRuleLogic.calculateCarrots(distance);
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package fwcd.sc18.core;
 
-import java.util.stream.Stream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import com.antelmann.game.GameMove;
 import com.antelmann.game.GamePlay;
@@ -20,7 +21,13 @@ import sc.shared.PlayerColor;
  * a numeric rating to a move/state-combination.
  */
 public abstract class EvaluatingLogic extends TemplateLogic implements MoveEvaluator {
+	/** Used by all logics that neither set a pool nor a parallelism. */
+	private static final ForkJoinPool SHARED_POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+	
 	private boolean parallelize = true;
+	private ForkJoinPool pool = SHARED_POOL;
+	/** Whether the pool was created by (and should thus be shut down by) this logic. */
+	private boolean ownsPool = false;
 	
 	public EvaluatingLogic(VirtualClient client) {
 		super(client);
@@ -32,22 +39,72 @@ public abstract class EvaluatingLogic extends TemplateLogic implements MoveEvalu
 	
 	@Override
 	protected Move selectMove(GameState gameBeforeMove, Player me) {
-		Stream<Move> moves = gameBeforeMove.getPossibleMoves().stream();
+		return selectBestMove(gameBeforeMove.getPossibleMoves(), (move, alpha) -> evaluateMove(move, gameBeforeMove, me, alpha));
+	}
+	
+	/**
+	 * Evaluates every move exactly once (in parallel if enabled)
+	 * and returns the best one.
+	 */
+	protected Move selectBestMove(List<Move> moves, ParallelRootSearch.RootMoveEvaluator moveEvaluator) {
+		return searchRootMoves(moves, moveEvaluator).getBestMove();
+	}
+	
+	/**
+	 * Evaluates every move exactly once (in parallel if enabled)
+	 * and returns the completed search, which provides both
+	 * the best move and it's rating.
+	 */
+	protected ParallelRootSearch searchRootMoves(List<Move> moves, ParallelRootSearch.RootMoveEvaluator moveEvaluator) {
+		if (moves.isEmpty()) {
+			throw new IllegalStateException("No possible moves");
+		}
+		
+		ParallelRootSearch search = new ParallelRootSearch(moves, moveEvaluator);
 		
-		if (parallelize) {
-			moves = moves.parallel();
+		if (parallelize && moves.size() > 1) {
+			search.runParallel(getPool());
+		} else {
+			search.runSequential();
 		}
 		
-		return moves
-				.max((a, b) -> Float.compare(
-						evaluateMove(a, gameBeforeMove, me),
-						evaluateMove(b, gameBeforeMove, me)
-				))
-				.orElseThrow(IllegalStateException::new);
+		return search;
 	}
 	
 	protected abstract float evaluateMove(Move move, GameState gameBeforeMove, Player me);
-
+	
+	/**
+	 * Rates a move given the best rating of it's siblings found so far.
+	 * Subclasses may return any rating less than or equal to alpha if the
+	 * move can not beat alpha. Delegates to the exact evaluation by default.
+	 */
+	protected float evaluateMove(Move move, GameState gameBeforeMove, Player me, float alpha) {
+		return evaluateMove(move, gameBeforeMove, me);
+	}
+	
+	private ForkJoinPool getPool() { return pool; }
+	
+	/**
+	 * Searches the root moves using a dedicated pool with the given
+	 * number of threads instead of the pool shared by all logics.
+	 */
+	public void setParallelism(int parallelism) {
+		setPool(new ForkJoinPool(parallelism));
+		ownsPool = true;
+	}
+	
+	/**
+	 * Searches the root moves using an existing pool (that
+	 * may be shared with other logics) instead of the default one.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		if (ownsPool) {
+			this.pool.shutdown();
+			ownsPool = false;
+		}
+		this.pool = pool;
+	}
+	
 	public void setParallelize(boolean parallelize) {
 		this.parallelize = parallelize;
 	}
@@ -0,0 +1,147 @@
+package fwcd.sc18.core;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import sc.plugin2018.Move;
+
+/**
+ * Searches every root move exactly once and keeps track of the
+ * best one. The first ("eldest") move is searched alone to establish
+ * a bound, the remaining ones are then split across a {@link ForkJoinPool}
+ * ("Young Brothers Wait").
+ *
+ * <p>The best rating found so far is published lock-free and used
+ * as alpha by all subsequently started evaluations.</p>
+ */
+public class ParallelRootSearch {
+	private final List<Move> moves;
+	private final RootMoveEvaluator evaluator;
+	private final AtomicLong best;
+	private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+	@FunctionalInterface
+	public static interface RootMoveEvaluator {
+		/**
+		 * Rates a move. Ratings that are less than or equal to
+		 * alpha are only upper bounds of the real rating.
+		 */
+		float evaluate(Move move, float alpha);
+	}
+
+	public ParallelRootSearch(List<Move> moves, RootMoveEvaluator evaluator) {
+		this.moves = moves;
+		this.evaluator = evaluator;
+		best = new AtomicLong(pack(Float.NEGATIVE_INFINITY, 0));
+	}
+
+	/**
+	 * Evaluates all moves on the calling thread.
+	 */
+	public void runSequential() {
+		for (int i=0; i<moves.size(); i++) {
+			evaluate(i);
+		}
+		rethrowFailure();
+	}
+
+	/**
+	 * Evaluates the first move on the calling thread
+	 * and the remaining moves using the given pool.
+	 */
+	public void runParallel(ForkJoinPool pool) {
+		int count = moves.size();
+
+		if (count > 0) {
+			evaluate(0);
+			rethrowFailure();
+		}
+
+		if (count > 1) {
+			pool.invoke(new RootTask(1, count));
+			rethrowFailure();
+		}
+	}
+
+	public Move getBestMove() {
+		return moves.get(indexOf(best.get()));
+	}
+
+	public float getBestRating() {
+		return ratingOf(best.get());
+	}
+
+	private void evaluate(int index) {
+		if (failure.get() != null) {
+			return;
+		}
+
+		try {
+			float alpha = getBestRating();
+			float rating = evaluator.evaluate(moves.get(index), alpha);
+
+			if (rating > alpha) {
+				// The rating is exact, thus it may replace the current best move
+				long packed = pack(rating, index);
+				long current = best.get();
+
+				while (packed > current && !best.compareAndSet(current, packed)) {
+					current = best.get();
+				}
+			}
+		} catch (RuntimeException e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	private void rethrowFailure() {
+		RuntimeException e = failure.get();
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	/**
+	 * Packs a rating and a move index into a long whose (signed)
+	 * ordering matches the ordering of the ratings. Equal ratings
+	 * are ordered such that lower indices come out larger.
+	 */
+	private static long pack(float rating, int index) {
+		int bits = Float.floatToIntBits(rating);
+		int sortableBits = bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+		return ((long) sortableBits << 32) | (Integer.MAX_VALUE - index);
+	}
+
+	private static float ratingOf(long packed) {
+		int sortableBits = (int) (packed >> 32);
+		return Float.intBitsToFloat(sortableBits ^ ((sortableBits >> 31) & Integer.MAX_VALUE));
+	}
+
+	private static int indexOf(long packed) {
+		return Integer.MAX_VALUE - (int) packed;
+	}
+
+	private class RootTask extends RecursiveAction {
+		private static final long serialVersionUID = -3079415693451027315L;
+		private final int from;
+		private final int to;
+
+		public RootTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if ((to - from) <= 1) {
+				evaluate(from);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new RootTask(from, mid), new RootTask(mid, to));
+			}
+		}
+	}
+}
@@ -8,6 +8,7 @@ import com.antelmann.game.GamePlay;
 import fwcd.sc18.agbinds.AGGameState;
 import fwcd.sc18.agbinds.AGMove;
 import fwcd.sc18.agbinds.AGPlayerColor;
+import fwcd.sc18.trainer.core.DirectLogic;
 import fwcd.sc18.trainer.core.VirtualClient;
 import fwcd.sc18.utils.HUIUtils;
 
@@ -25,7 +26,7 @@ import sc.shared.PlayerColor;
  * both the "Software Challenge"-API and the
  * Antelmann-Game-API.
  */
-public abstract class TemplateLogic implements IGameHandler, CopyableLogic, com.antelmann.game.Player {
+public abstract class TemplateLogic implements IGameHandler, DirectLogic, CopyableLogic, com.antelmann.game.Player {
 	protected static final Logger LOG = LoggerFactory.getLogger("ownlog");
 	
 	private final VirtualClient virtualClient;
@@ -61,6 +62,16 @@ public abstract class TemplateLogic implements IGameHandler, CopyableLogic, com.
 
 	@Override
 	public void onRequestAction() {
+		sendAction(nextMove());
+	}
+	
+	@Override
+	public Move requestMove(GameState state) {
+		onUpdate(state);
+		return nextMove();
+	}
+	
+	private Move nextMove() {
 		if (firstMove) {
 			onGameStart(gameState);
 			firstMove = false;
@@ -73,11 +84,15 @@ public abstract class TemplateLogic implements IGameHandler, CopyableLogic, com.
 		move.orderActions();
 		
 		onMoveSend(gameState, move);
-		long endTime = System.currentTimeMillis();
-		sendAction(move);
 		
-		LOG.info("Committed move in {} ms", endTime - startTime);
-		LOG.debug("Carrots: {}, field: {}", getMe().getCarrots(), getMe().getFieldIndex());
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Committed move in {} ms", System.currentTimeMillis() - startTime);
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Carrots: {}, field: {}", getMe().getCarrots(), getMe().getFieldIndex());
+		}
+		
+		return move;
 	}
 	
 	protected abstract Move selectMove(GameState gameBeforeMove, Player me);
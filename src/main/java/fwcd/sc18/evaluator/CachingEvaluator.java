@@ -0,0 +1,222 @@
+package fwcd.sc18.evaluator;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import fwcd.sc18.alphabeta.ZobristHashing;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.shared.PlayerColor;
+
+/**
+ * A MoveEvaluator decorator that memoizes the ratings of
+ * another evaluator in a fixed-size table keyed by Zobrist hashes.
+ *
+ * <p>The table stores every entry in two plain longs whose
+ * consistency is verified by XORing the key with the value (like
+ * {@link fwcd.sc18.alphabeta.TranspositionTable}), thus it can be
+ * accessed by multiple threads without locking. Colliding entries
+ * simply replace each other.</p>
+ *
+ * <p>Since the hashes do not cover the board, the cache has to be
+ * cleared whenever a new game starts (or the delegate changes).</p>
+ */
+public class CachingEvaluator implements MoveEvaluator {
+	private static final long VALID_BIT = 1L << 32;
+	private static final long PRUNED_KEY = 0x9E3779B97F4A7C15L;
+	private static final long BLUE_KEY = 0xC2B2AE3D27D4EB4FL;
+
+	private final MoveEvaluator delegate;
+	private final boolean keyedByTransition;
+	private final long[] keys;
+	private final long[] values;
+	private final int indexMask;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a cache for an evaluator whose ratings only depend on
+	 * the state after the move, the color and whether the move was pruned.
+	 */
+	public static CachingEvaluator ofPositions(MoveEvaluator delegate, int minEntries) {
+		return new CachingEvaluator(delegate, minEntries, false);
+	}
+
+	/**
+	 * Creates a cache for an evaluator whose ratings may additionally
+	 * depend on the state before the move.
+	 */
+	public static CachingEvaluator ofTransitions(MoveEvaluator delegate, int minEntries) {
+		return new CachingEvaluator(delegate, minEntries, true);
+	}
+
+	private CachingEvaluator(MoveEvaluator delegate, int minEntries, boolean keyedByTransition) {
+		this.delegate = delegate;
+		this.keyedByTransition = keyedByTransition;
+
+		int size = Integer.highestOneBit(Math.max(minEntries - 1, 1)) << 1;
+		keys = new long[size];
+		values = new long[size];
+		indexMask = size - 1;
+	}
+
+	@Override
+	public float rate(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
+		long key = keyOf(myColor, gameBeforeMove, gameAfterMove, wasPruned);
+		long value = probe(key);
+
+		if (value != 0) {
+			return Float.intBitsToFloat((int) value);
+		}
+
+		float rating = delegate.rate(move, myColor, gameBeforeMove, gameAfterMove, wasPruned);
+		store(key, rating);
+
+		return rating;
+	}
+
+	/**
+	 * Creates a batch that serves cached leaves directly
+	 * and forwards the remaining ones to a batch of the delegate.
+	 */
+	@Override
+	public LeafBatch newBatch() {
+		return new CachingLeafBatch();
+	}
+
+	private long keyOf(PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
+		long key = ZobristHashing.hash(gameAfterMove);
+
+		if (keyedByTransition) {
+			// Rotate to keep the key of a transition distinct from the reverse one
+			key ^= Long.rotateLeft(ZobristHashing.hash(gameBeforeMove), 17);
+		}
+		if (myColor == PlayerColor.BLUE) {
+			key ^= BLUE_KEY;
+		}
+		if (wasPruned) {
+			key ^= PRUNED_KEY;
+		}
+
+		return key;
+	}
+
+	/**
+	 * @return The stored value or 0 if there is no entry for the key
+	 */
+	private long probe(long key) {
+		int index = (int) key & indexMask;
+		long value = values[index];
+
+		if (value != 0 && (keys[index] ^ value) == key) {
+			hits.increment();
+			return value;
+		}
+
+		misses.increment();
+		return 0;
+	}
+
+	private void store(long key, float rating) {
+		int index = (int) key & indexMask;
+		long newValue = VALID_BIT | (Float.floatToRawIntBits(rating) & 0xFFFFFFFFL);
+		keys[index] = key ^ newValue;
+		values[index] = newValue;
+	}
+
+	/**
+	 * Removes all entries (should be called whenever a new game starts).
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(values, 0);
+	}
+
+	public void resetStats() {
+		hits.reset();
+		misses.reset();
+	}
+
+	public long getHits() { return hits.sum(); }
+
+	public long getMisses() { return misses.sum(); }
+
+	/**
+	 * @return The fraction of ratings that were served from the cache
+	 */
+	public float getHitRate() {
+		long h = getHits();
+		long total = h + getMisses();
+		return total == 0 ? 0 : h / (float) total;
+	}
+
+	public MoveEvaluator getDelegate() { return delegate; }
+
+	private class CachingLeafBatch implements LeafBatch {
+		private final LeafBatch delegateBatch = delegate.newBatch();
+		private long[] leafKeys = new long[16];
+		private float[] leafRatings = new float[16];
+		/** The index in the delegate's batch or -1 if the leaf was cached. */
+		private int[] delegateIndices = new int[16];
+		private float[] delegateRatings = new float[16];
+		private int size = 0;
+
+		@Override
+		public int add(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
+			if (size >= leafKeys.length) {
+				int capacity = size * 2;
+				leafKeys = Arrays.copyOf(leafKeys, capacity);
+				leafRatings = Arrays.copyOf(leafRatings, capacity);
+				delegateIndices = Arrays.copyOf(delegateIndices, capacity);
+			}
+
+			long key = keyOf(myColor, gameBeforeMove, gameAfterMove, wasPruned);
+			long value = probe(key);
+			leafKeys[size] = key;
+
+			if (value != 0) {
+				leafRatings[size] = Float.intBitsToFloat((int) value);
+				delegateIndices[size] = -1;
+			} else {
+				delegateIndices[size] = delegateBatch.add(move, myColor, gameBeforeMove, gameAfterMove, wasPruned);
+			}
+
+			return size++;
+		}
+
+		@Override
+		public void rateAll(float[] ratings) {
+			int delegated = delegateBatch.size();
+
+			if (delegated > 0) {
+				if (delegateRatings.length < delegated) {
+					delegateRatings = new float[leafKeys.length];
+				}
+				delegateBatch.rateAll(delegateRatings);
+			}
+
+			for (int i=0; i<size; i++) {
+				int delegateIndex = delegateIndices[i];
+
+				if (delegateIndex < 0) {
+					ratings[i] = leafRatings[i];
+				} else {
+					float rating = delegateRatings[delegateIndex];
+					store(leafKeys[i], rating);
+					ratings[i] = rating;
+				}
+			}
+		}
+
+		@Override
+		public int size() { return size; }
+
+		@Override
+		public void clear() {
+			size = 0;
+			delegateBatch.clear();
+		}
+	}
+}
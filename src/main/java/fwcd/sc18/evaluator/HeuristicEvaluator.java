@@ -1,17 +1,27 @@
 package fwcd.sc18.evaluator;
 
+import fwcd.sc18.board.BoardIndex;
 import fwcd.sc18.utils.HUIUtils;
 
 import sc.plugin2018.GameState;
 import sc.plugin2018.Move;
 import sc.plugin2018.Player;
-import sc.plugin2018.util.GameRuleLogic;
 import sc.shared.PlayerColor;
 
 public class HeuristicEvaluator implements MoveEvaluator {
 	public static final float GOOD_RATING = 10000000;
 	public static final float BAD_RATING = -10000000;
 
+	private volatile BoardIndex boardIndex = null;
+
+	/**
+	 * Sets the index of the current game's board, which replaces
+	 * the board scans (null to scan the board again).
+	 */
+	public void setBoardIndex(BoardIndex boardIndex) {
+		this.boardIndex = boardIndex;
+	}
+
 	public float rate(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
 		if (wasPruned) {
 			return BAD_RATING;
@@ -31,19 +41,21 @@ public class HeuristicEvaluator implements MoveEvaluator {
 			return GOOD_RATING - turn;
 		}
 
+		BoardIndex index = boardIndex;
 		float multiplier = 1;
 		int saladWeight = 32;
 		int turnWeight = 2;
 		int fieldWeight = 6;
 		int carrotWeight = 1;
 		
-		if (fieldIndex > HUIUtils.LAST_SALAD_FIELD && carrots > GameRuleLogic.calculateCarrots(64 - fieldIndex)) {
+		if (fieldIndex > HUIUtils.LAST_SALAD_FIELD && carrots > BoardIndex.calculateCarrots(64 - fieldIndex)) {
 			multiplier = 0.5F;
 		}
 
 		float normFieldIndex = HUIUtils.normalize(fieldIndex, 0, 64);
 		float normCarrotRating;
-		int carrotOptimum = (salads > 0) ? (int) (GameRuleLogic.calculateCarrots(HUIUtils.distToNextSalad(me, gameAfterMove)) * normFieldIndex) + 10 : 4;
+		int distToNextSalad = (index == null) ? HUIUtils.distToNextSalad(me, gameAfterMove) : index.distToNextSalad(me);
+		int carrotOptimum = (salads > 0) ? (int) (BoardIndex.calculateCarrots(distToNextSalad) * normFieldIndex) + 10 : 4;
 		
 		if (carrots > carrotOptimum) {
 			normCarrotRating = HUIUtils.invertNormalize(carrots, carrotOptimum, HUIUtils.CARROT_THRESHOLD);
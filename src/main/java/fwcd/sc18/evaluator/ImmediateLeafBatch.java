@@ -0,0 +1,44 @@
+package fwcd.sc18.evaluator;
+
+import java.util.Arrays;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.shared.PlayerColor;
+
+/**
+ * The default {@link LeafBatch} that rates every
+ * leaf as soon as it is added.
+ */
+public class ImmediateLeafBatch implements LeafBatch {
+	private final MoveEvaluator evaluator;
+	private float[] ratings = new float[16];
+	private int size = 0;
+
+	public ImmediateLeafBatch(MoveEvaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	@Override
+	public int add(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
+		if (size >= ratings.length) {
+			ratings = Arrays.copyOf(ratings, size * 2);
+		}
+
+		ratings[size] = evaluator.rate(move, myColor, gameBeforeMove, gameAfterMove, wasPruned);
+		return size++;
+	}
+
+	@Override
+	public void rateAll(float[] ratings) {
+		System.arraycopy(this.ratings, 0, ratings, 0, size);
+	}
+
+	@Override
+	public int size() { return size; }
+
+	@Override
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,38 @@
+package fwcd.sc18.evaluator;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.shared.PlayerColor;
+
+/**
+ * Collects leaves (typically the children of a single node)
+ * in order to rate them together, which allows evaluators
+ * to process all leaves in a single pass (for example a
+ * batched forward pass through a neural network).
+ *
+ * <p>Since the passed game states may be mutated after
+ * {@link #add} returns (see {@code SearchState}), implementations
+ * have to extract everything they need immediately.</p>
+ *
+ * <p>Batches are not thread-safe, but may be reused after
+ * calling {@link #clear()}.</p>
+ */
+public interface LeafBatch {
+	/**
+	 * Adds a leaf to this batch.
+	 *
+	 * @return The index of the leaf in this batch (leaves are numbered consecutively, starting at 0)
+	 */
+	int add(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned);
+
+	/**
+	 * Rates all leaves that have been added since the last clear.
+	 *
+	 * @param ratings - The output array, indexed by the leaf indices
+	 */
+	void rateAll(float[] ratings);
+
+	int size();
+
+	void clear();
+}
@@ -9,4 +9,13 @@ import sc.shared.PlayerColor;
  */
 public interface MoveEvaluator {
 	float rate(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned);
+
+	/**
+	 * Creates a batch that rates multiple leaves at once.
+	 * Evaluators that benefit from batching should override this,
+	 * by default the leaves are simply rated one by one.
+	 */
+	default LeafBatch newBatch() {
+		return new ImmediateLeafBatch(this);
+	}
 }
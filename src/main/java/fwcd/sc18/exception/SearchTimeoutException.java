@@ -0,0 +1,15 @@
+package fwcd.sc18.exception;
+
+/**
+ * Indicates that a search has exceeded it's deadline
+ * and has been aborted. Thrown out of the recursion
+ * to unwind it as fast as possible, thus no stack
+ * trace is recorded.
+ */
+public class SearchTimeoutException extends RuntimeException {
+	private static final long serialVersionUID = 2934801948373302561L;
+
+	public SearchTimeoutException() {
+		super("The search exceeded it's deadline.", null, false, false);
+	}
+}
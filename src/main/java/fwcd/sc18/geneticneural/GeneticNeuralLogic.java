@@ -1,13 +1,19 @@
 package fwcd.sc18.geneticneural;
 
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import fwcd.sc18.alphabeta.SearchContext;
+import fwcd.sc18.board.BoardIndex;
 import fwcd.sc18.core.CopyableLogic;
 import fwcd.sc18.core.EvaluatingLogic;
+import fwcd.sc18.evaluator.CachingEvaluator;
+import fwcd.sc18.evaluator.LeafBatch;
+import fwcd.sc18.evaluator.MoveEvaluator;
 import fwcd.sc18.exception.CorruptedDataException;
 import fwcd.sc18.trainer.core.VirtualClient;
 import fwcd.sc18.utils.GameAlgorithms;
@@ -16,13 +22,10 @@ import fwcd.sc18.utils.MatchResult;
 
 import sc.plugin2018.AbstractClient;
 import sc.plugin2018.Action;
-import sc.plugin2018.CardType;
 import sc.plugin2018.ExchangeCarrots;
-import sc.plugin2018.FieldType;
 import sc.plugin2018.GameState;
 import sc.plugin2018.Move;
 import sc.plugin2018.Player;
-import sc.plugin2018.util.Constants;
 import sc.plugin2018.util.GameRuleLogic;
 import sc.shared.GameResult;
 import sc.shared.InvalidGameStateException;
@@ -34,17 +37,21 @@ import sc.shared.PlayerColor;
  * board states and a genetic algorithm to train this network.
  */
 public class GeneticNeuralLogic extends EvaluatingLogic {
-	private static final int ENCODED_BOARD_SIZE = 26;
+	private static final int ENCODED_BOARD_SIZE = StateEncoder.SIZE;
 	private static final Logger GENETIC_LOG = LoggerFactory.getLogger("geneticlog");
 
+	private static final int POPULATION_SIZE = 20;
+	private static final int[] LAYER_SIZES = {ENCODED_BOARD_SIZE, 30, 15, 5, 1};
+
 	private final GeneticStrategy strategy;
-	private final int populationSize = 20;
 	private final boolean useDropout = false;
-	private final int[] layerSizes = {ENCODED_BOARD_SIZE, 30, 15, 5, 1};
 	private int alphaBetaDepth = 0;
+	private boolean incrementalEncoding = true;
 
 	private final Population population;
 	private final Perceptron neuralNet;
+	private final CachingEvaluator leafCache = CachingEvaluator.ofTransitions(new LeafEvaluator(), 1 << 16);
+	private volatile BoardIndex boardIndex = null;
 	private final boolean trainMode;
 	private final int trainIndex;
 
@@ -59,10 +66,38 @@ public class GeneticNeuralLogic extends EvaluatingLogic {
 
 		GENETIC_LOG.info("Launching in training/testing mode...");
 		trainMode = true;
-		population = newPopulation();
+		population = newPopulation(strategy, true, trainIndex);
 		neuralNet = newPerceptron();
 	}
 
+	/**
+	 * Creates a training logic that shares it's population with other
+	 * logics (see {@link #newSharedPopulation(GeneticStrategy, int)}).
+	 */
+	public GeneticNeuralLogic(VirtualClient client, GeneticStrategy strategy, int trainIndex, Population population) {
+		super(client);
+		this.strategy = strategy;
+		this.trainIndex = trainIndex;
+		this.population = population;
+
+		trainMode = true;
+		neuralNet = newPerceptron();
+	}
+
+	/**
+	 * Creates a logic that plays using fixed weights without
+	 * a population (e.g. to evaluate an individual remotely).
+	 */
+	public GeneticNeuralLogic(VirtualClient client, float[] weights) {
+		super(client);
+		strategy = new GeneticStrategy.None();
+		trainMode = false;
+		trainIndex = -1;
+		population = null;
+		neuralNet = newPerceptron();
+		neuralNet.setWeights(weights);
+	}
+
 	public GeneticNeuralLogic(AbstractClient client) {
 		super(client);
 
@@ -70,7 +105,7 @@ public class GeneticNeuralLogic extends EvaluatingLogic {
 		strategy = new GeneticStrategy.None();
 		trainMode = false;
 		trainIndex = -1;
-		population = newPopulation();
+		population = newPopulation(strategy, false, trainIndex);
 		neuralNet = newPerceptron();
 	}
 
@@ -88,12 +123,20 @@ public class GeneticNeuralLogic extends EvaluatingLogic {
 
 	@Override
 	protected void onGameStart(GameState gameState) {
-		neuralNet.setWeights(population.sample());
+		if (population != null) {
+			neuralNet.setWeights(population.sample(neuralNet.getWeights()));
+		}
 		neuralNet.setDropoutEnabled(trainMode && useDropout);
+		leafCache.clear();
+		boardIndex = BoardIndex.of(gameState);
 	}
 
 	@Override
 	protected void onGameEnd(GameState gameState, boolean won, GameResult result, String errorMessage) {
+		if (population == null) {
+			return;
+		}
+
 		float[] genes = neuralNet.getWeights();
 		MatchResult res = new MatchResult(gameState, getMyColor(), won, result, errorMessage, genes);
 		EvaluationResult eval = strategy.evaluate(res, population.getFitness(genes), population);
@@ -105,7 +148,11 @@ public class GeneticNeuralLogic extends EvaluatingLogic {
 
 	}
 
-	private float evaluateLeaf(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
+	/**
+	 * Checks whether a move is ruled out regardless of the network's
+	 * rating (reverting a carrot exchange or not entering the goal).
+	 */
+	private boolean isForbidden(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove) {
 		for (Action action : move.actions) {
 			if (action instanceof ExchangeCarrots) {
 				Action lastAction = gameBeforeMove.getPlayer(myColor).getLastNonSkipAction();
@@ -114,79 +161,239 @@ public class GeneticNeuralLogic extends EvaluatingLogic {
 					ExchangeCarrots last = (ExchangeCarrots) lastAction;
 
 					if ((last.getValue() > 0 && current.getValue() < 0) || (last.getValue() < 0 && current.getValue() > 0)) {
-						return Float.NEGATIVE_INFINITY;
+						return true;
 					}
 				}
 			}
 		}
 
+		return GameRuleLogic.canEnterGoal(gameBeforeMove) && !gameAfterMove.getPlayer(myColor).inGoal();
+	}
+
+	private float evaluateLeaf(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
 		try {
-			if (GameRuleLogic.canEnterGoal(gameBeforeMove) && !getMe(gameAfterMove).inGoal()) {
+			if (isForbidden(move, myColor, gameBeforeMove, gameAfterMove)) {
 				return Float.NEGATIVE_INFINITY;
 			}
 
-			return neuralNet.compute(encode(gameAfterMove))[0];
+			return neuralNet.computeFirst(encode(gameAfterMove, myColor));
 		} catch (ArrayIndexOutOfBoundsException e) {
-			throw new CorruptedDataException(population.getCounter());
+			throw new CorruptedDataException(individualIndex());
 		}
 	}
 
+	@Override
+	protected Move selectMove(GameState gameBeforeMove, Player me) {
+		if (alphaBetaDepth < 1) {
+			return selectBestLeaf(gameBeforeMove.getPossibleMoves(), gameBeforeMove, me.getPlayerColor());
+		} else {
+			return super.selectMove(gameBeforeMove, me);
+		}
+	}
+
+	/**
+	 * Rates all moves in a single batch and returns the
+	 * best one (the first one in case of equal ratings).
+	 */
+	private Move selectBestLeaf(List<Move> moves, GameState gameBeforeMove, PlayerColor myColor) {
+		if (moves.isEmpty()) {
+			throw new IllegalStateException("No possible moves");
+		}
+
+		LeafBatch batch = leafCache.newBatch();
+		int[] leafIndices = new int[moves.size()];
+
+		for (int i=0; i<moves.size(); i++) {
+			try {
+				Move move = moves.get(i);
+				leafIndices[i] = batch.add(move, myColor, gameBeforeMove, HUIUtils.spawnChild(gameBeforeMove, move), false);
+			} catch (InvalidGameStateException | InvalidMoveException e) {
+				leafIndices[i] = -1;
+			}
+		}
+
+		float[] batchRatings = new float[batch.size()];
+		batch.rateAll(batchRatings);
+		int bestIndex = 0;
+		float bestRating = Float.NEGATIVE_INFINITY;
+
+		for (int i=0; i<moves.size(); i++) {
+			float rating = (leafIndices[i] < 0) ? Float.NEGATIVE_INFINITY : batchRatings[leafIndices[i]];
+
+			if (rating > bestRating) {
+				bestRating = rating;
+				bestIndex = i;
+			}
+		}
+
+		return moves.get(bestIndex);
+	}
+
 	@Override
 	protected float evaluateMove(Move move, GameState gameBeforeMove, Player me) {
 		PlayerColor myColor = me.getPlayerColor();
 		if (alphaBetaDepth < 1) {
 			try {
-				return evaluateLeaf(move, myColor, gameBeforeMove, HUIUtils.spawnChild(gameBeforeMove, move), false);
+				return leafCache.rate(move, myColor, gameBeforeMove, HUIUtils.spawnChild(gameBeforeMove, move), false);
 			} catch (InvalidGameStateException | InvalidMoveException e) {
 				return Float.NEGATIVE_INFINITY;
 			}
 		} else {
-			return GameAlgorithms.alphaBeta(true, move, gameBeforeMove, alphaBetaDepth, myColor, null, this::evaluateLeaf);
+			SearchContext context = new SearchContext(myColor, null, leafCache);
+			context.setBatchLeaves(true);
+			return GameAlgorithms.alphaBeta(true, move, gameBeforeMove, 0, alphaBetaDepth, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, context);
 		}
 	}
 
-	private float[] encode(GameState gameState) {
-		Player me = getMe(gameState);
-		Player opponent = getOpponent(gameState);
-		List<CardType> myCards = me.getCards();
-		int myFieldIndex = me.getFieldIndex();
-		int oppFieldIndex = opponent.getFieldIndex();
-		FieldType myFieldType = gameState.getTypeAt(myFieldIndex);
-
+	private float[] encode(GameState gameState, PlayerColor myColor) {
 		float[] encoded = new float[ENCODED_BOARD_SIZE];
-		int i = 0;
-
-		// The total count of statements below needs to match the ENCODED_BOARD_SIZE
-
-		encoded[i++] = HUIUtils.normalize(gameState.getRound(), 0, Constants.ROUND_LIMIT);
-		encoded[i++] = HUIUtils.normalize(me.getCarrots(), 0, HUIUtils.CARROT_THRESHOLD);
-		encoded[i++] = HUIUtils.normalize(me.getSalads(), 0, Constants.SALADS_TO_EAT);
-		encoded[i++] = HUIUtils.normalize(myFieldIndex, 0, HUIUtils.MAX_FIELD);
-		encoded[i++] = HUIUtils.normalize(opponent.getCarrots(), 0, HUIUtils.CARROT_THRESHOLD);
-		encoded[i++] = HUIUtils.normalize(opponent.getSalads(), 0, Constants.SALADS_TO_EAT);
-		encoded[i++] = HUIUtils.normalize(oppFieldIndex, 0, HUIUtils.MAX_FIELD);
-		encoded[i++] = myCards.contains(CardType.EAT_SALAD) ? 1 : 0;
-		encoded[i++] = myCards.contains(CardType.FALL_BACK) ? 1 : 0;
-		encoded[i++] = myCards.contains(CardType.HURRY_AHEAD) ? 1 : 0;
-		encoded[i++] = myCards.contains(CardType.TAKE_OR_DROP_CARROTS) ? 1 : 0;
-		encoded[i++] = myFieldType == FieldType.CARROT ? 1 : 0;
-		encoded[i++] = myFieldType == FieldType.HARE ? 1 : 0;
-		encoded[i++] = myFieldType == FieldType.HEDGEHOG ? 1 : 0;
-		encoded[i++] = myFieldType == FieldType.POSITION_1 ? 1 : 0;
-		encoded[i++] = myFieldType == FieldType.POSITION_2 ? 1 : 0;
-		encoded[i++] = myFieldType == FieldType.SALAD ? 1 : 0;
-		encoded[i++] = myFieldType == FieldType.START ? 1 : 0;
-		encoded[i++] = myFieldType == FieldType.GOAL ? 1 : 0;
-		encoded[i++] = HUIUtils.normalize(HUIUtils.distToNextField(FieldType.CARROT, myFieldIndex, gameState), 0, HUIUtils.MAX_FIELD);
-		encoded[i++] = HUIUtils.normalize(HUIUtils.distToNextField(FieldType.HARE, myFieldIndex, gameState), 0, HUIUtils.MAX_FIELD);
-		encoded[i++] = HUIUtils.normalize(HUIUtils.distToPrevField(FieldType.HEDGEHOG, myFieldIndex, gameState), 0, HUIUtils.MAX_FIELD);
-		encoded[i++] = HUIUtils.normalize(HUIUtils.distToNextField(FieldType.POSITION_1, myFieldIndex, gameState), 0, HUIUtils.MAX_FIELD);
-		encoded[i++] = HUIUtils.normalize(HUIUtils.distToNextField(FieldType.POSITION_2, myFieldIndex, gameState), 0, HUIUtils.MAX_FIELD);
-		encoded[i++] = HUIUtils.normalize(HUIUtils.distToNextField(FieldType.SALAD, myFieldIndex, gameState), 0, HUIUtils.MAX_FIELD);
-		encoded[i++] = HUIUtils.normalize(HUIUtils.distToNextField(FieldType.GOAL, myFieldIndex, gameState), 0, HUIUtils.MAX_FIELD);
+		encode(gameState, myColor, currentBoardIndex(gameState), encoded, 0);
+		return encoded;
+	}
 
+	private BoardIndex currentBoardIndex(GameState gameState) {
+		BoardIndex index = boardIndex;
+		return (index == null) ? BoardIndex.of(gameState) : index;
+	}
 
-		return encoded;
+	/**
+	 * Encodes a game state into the given array, starting at the given offset.
+	 */
+	private void encode(GameState gameState, PlayerColor myColor, BoardIndex board, float[] encoded, int offset) {
+		StateEncoder.encode(gameState, myColor, board, encoded, offset);
+	}
+
+	/**
+	 * Enables or disables the incremental encoding of batched leaves,
+	 * which derives the encodings and the first layer of the network
+	 * for the children of a node from the ones of the node.
+	 */
+	public void setIncrementalEncoding(boolean incrementalEncoding) {
+		this.incrementalEncoding = incrementalEncoding;
+	}
+
+	/**
+	 * Enables or disables int8 quantized inference
+	 * (see {@link Perceptron#setQuantized(boolean)}).
+	 */
+	public void setQuantizedInference(boolean quantized) {
+		neuralNet.setQuantized(quantized);
+	}
+
+	/**
+	 * Rates leaves using the neural network.
+	 */
+	private class LeafEvaluator implements MoveEvaluator {
+		@Override
+		public float rate(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
+			return evaluateLeaf(move, myColor, gameBeforeMove, gameAfterMove, wasPruned);
+		}
+
+		@Override
+		public LeafBatch newBatch() {
+			return new NeuralLeafBatch();
+		}
+	}
+
+	/**
+	 * Encodes the leaves into an input matrix and
+	 * passes them through the network in a single batch.
+	 *
+	 * <p>If incremental encoding is enabled (and the network is not
+	 * quantized), every leaf is encoded from the state before it's
+	 * move and it's first layer is derived from the one of that state,
+	 * thus only the remaining layers are computed for each leaf.</p>
+	 */
+	private class NeuralLeafBatch implements LeafBatch {
+		private final StateEncoder encoder = new StateEncoder();
+		private final float[] parentAccumulator = new float[LAYER_SIZES[1]];
+		private float[] inputs = new float[16 * ENCODED_BOARD_SIZE];
+		private float[] accumulators = new float[16 * LAYER_SIZES[1]];
+		/** The row in the input matrix or -1 if the leaf is forbidden. */
+		private int[] rows = new int[16];
+		private float[] outputs = new float[16];
+		private int size = 0;
+		private int rowCount = 0;
+		private boolean incremental = false;
+
+		@Override
+		public int add(Move move, PlayerColor myColor, GameState gameBeforeMove, GameState gameAfterMove, boolean wasPruned) {
+			if (size >= rows.length) {
+				rows = Arrays.copyOf(rows, size * 2);
+			}
+
+			if (size == 0) {
+				incremental = incrementalEncoding && !neuralNet.isQuantized();
+			}
+
+			if (isForbidden(move, myColor, gameBeforeMove, gameAfterMove)) {
+				rows[size] = -1;
+			} else {
+				if ((rowCount + 1) * ENCODED_BOARD_SIZE > inputs.length) {
+					inputs = Arrays.copyOf(inputs, inputs.length * 2);
+				}
+
+				int inputOffset = rowCount * ENCODED_BOARD_SIZE;
+				BoardIndex board = currentBoardIndex(gameAfterMove);
+
+				if (incremental) {
+					if ((rowCount + 1) * LAYER_SIZES[1] > accumulators.length) {
+						accumulators = Arrays.copyOf(accumulators, accumulators.length * 2);
+					}
+					if (encoder.setParent(gameBeforeMove, myColor, board)) {
+						neuralNet.computeAccumulator(encoder.getParentFeatures(), 0, parentAccumulator, 0);
+					}
+
+					encoder.encodeChild(gameAfterMove, board, inputs, inputOffset);
+					neuralNet.updateAccumulator(
+							parentAccumulator, 0,
+							encoder.getParentFeatures(), 0,
+							inputs, inputOffset,
+							accumulators, rowCount * LAYER_SIZES[1]
+					);
+				} else {
+					encode(gameAfterMove, myColor, board, inputs, inputOffset);
+				}
+
+				rows[size] = rowCount++;
+			}
+
+			return size++;
+		}
+
+		@Override
+		public void rateAll(float[] ratings) {
+			if (outputs.length < rowCount) {
+				outputs = new float[rows.length];
+			}
+
+			try {
+				if (incremental) {
+					for (int row=0; row<rowCount; row++) {
+						outputs[row] = neuralNet.computeFirstFromAccumulator(accumulators, row * LAYER_SIZES[1]);
+					}
+				} else {
+					neuralNet.computeBatch(inputs, rowCount, outputs);
+				}
+			} catch (ArrayIndexOutOfBoundsException e) {
+				throw new CorruptedDataException(individualIndex());
+			}
+
+			for (int i=0; i<size; i++) {
+				ratings[i] = (rows[i] < 0) ? Float.NEGATIVE_INFINITY : outputs[rows[i]];
+			}
+		}
+
+		@Override
+		public int size() { return size; }
+
+		@Override
+		public void clear() {
+			size = 0;
+			rowCount = 0;
+			// The network's weights may change between batches
+			encoder.reset();
+		}
 	}
 
 	@Override
@@ -194,14 +401,33 @@ public class GeneticNeuralLogic extends EvaluatingLogic {
 		return new GeneticNeuralLogic(client, this);
 	}
 
+	/**
+	 * @return The index of the current individual or -1 if the weights are fixed
+	 */
+	private int individualIndex() {
+		return (population == null) ? -1 : population.getIndex(neuralNet.getWeights());
+	}
+
 	private Perceptron newPerceptron() {
-		return new Perceptron(layerSizes);
+		return new Perceptron(LAYER_SIZES);
+	}
+
+	public static int[] getLayerSizes() { return LAYER_SIZES.clone(); }
+
+	/**
+	 * Creates a training population whose generations are evaluated
+	 * concurrently by all logics sharing it.
+	 */
+	public static Population newSharedPopulation(GeneticStrategy strategy, int trainIndex) {
+		Population population = newPopulation(strategy, true, trainIndex);
+		population.setConcurrentEvaluation(true);
+		return population;
 	}
 
-	private Population newPopulation() {
+	private static Population newPopulation(GeneticStrategy strategy, boolean trainMode, int trainIndex) {
 		return new Population(
-				populationSize,
-				() -> HUIUtils.generateWeights(layerSizes),
+				POPULATION_SIZE,
+				() -> HUIUtils.generateWeights(LAYER_SIZES),
 				Paths.get("."),
 				strategy,
 				trainMode,
@@ -0,0 +1,26 @@
+package fwcd.sc18.geneticneural;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Memory barriers for memory-mapped files, which may be shared
+ * between threads and processes. Plain accesses of a mapped buffer
+ * do not provide any ordering, thus the reads and writes of a
+ * published value have to be separated by a fence.
+ */
+final class MemoryFences {
+	/** Only used for it's memory barriers. */
+	private static final AtomicInteger FENCE = new AtomicInteger();
+
+	private MemoryFences() {}
+
+	/**
+	 * Prevents the preceding and the following buffer accesses from
+	 * being reordered (by the compiler or the CPU). This uses an atomic
+	 * read-modify-write instead of a VarHandle fence, since the latter
+	 * is not available in Java 8.
+	 */
+	static void fullFence() {
+		FENCE.incrementAndGet();
+	}
+}
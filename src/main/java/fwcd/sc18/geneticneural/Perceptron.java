@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -14,10 +15,33 @@ import fwcd.sc18.utils.IntSet;
 
 /**
  * A feed-forward multi-layer perceptron.
+ *
+ * <p>Inference does not allocate: Intermediate layers are
+ * written into thread-local buffers and dropout is applied
+ * by computing with a masked copy of the weights, which is
+ * only rebuilt when the weights or the dropout state change.
+ * After modifying the array returned by {@link #getWeights()}
+ * in place, {@link #setWeights(float[])} has to be called
+ * again.</p>
+ *
+ * <p>Optionally, inference can use int8 quantized weights
+ * (see {@link #setQuantized(boolean)}).</p>
  */
 public class Perceptron {
+	/** The number of samples that are passed through the layers together in a batch. */
+	private static final int BATCH_BLOCK_SIZE = 32;
+	
 	private final int[] layerSizes;
 	private float[] weights;
+	/** The weights used for inference (with dropped out weights set to zero). */
+	private volatile float[] activeWeights;
+	/** The weights of the first layer, stored per input neuron. */
+	private volatile float[] firstLayerColumns;
+	private final ThreadLocal<float[][]> layerBuffers = ThreadLocal.withInitial(this::newLayerBuffers);
+	private final ThreadLocal<float[][]> batchBuffers = ThreadLocal.withInitial(this::newBatchBuffers);
+	/** The quantized weights or null if inference uses floats. */
+	private volatile QuantizedNetwork quantizedNetwork = null;
+	private boolean quantized = false;
 	
 	private IntSet dropoutIndices;
 	private float dropoutPercent = 0.1F;
@@ -30,33 +54,62 @@ public class Perceptron {
 	public Perceptron(int... layerSizes) {
 		this.layerSizes = layerSizes;
 		weights = HUIUtils.generateWeights(layerSizes);
+		updateActiveWeights();
 	}
 	
 	/**
 	 * Computes the output vector for a given input.
 	 */
 	public float[] compute(float[] input) {
+		float[] output = new float[layerSizes[layerSizes.length - 1]];
+		compute(input, output);
+		return output;
+	}
+	
+	/**
+	 * Computes the output vector for a given input
+	 * and writes it into the given output array
+	 * without allocating.
+	 */
+	public void compute(float[] input, float[] output) {
 		if (input.length != layerSizes[0]) {
 			throw new RuntimeException("Input vector size does not match input layer size.");
+		} else if (output.length < layerSizes[layerSizes.length - 1]) {
+			throw new RuntimeException("Output vector is smaller than the output layer size.");
 		}
 		
-		int weightIndex = 0;
-		float[] layer = input;
+		QuantizedNetwork quantizedNet = quantizedNetwork;
+		if (quantizedNet != null) {
+			quantizedNet.compute(input, 0, output, 0, layerBuffers.get());
+			return;
+		}
 		
-		for (int nextLayerI=1; nextLayerI<layerSizes.length; nextLayerI++) {
-			float[] nextLayer = new float[layerSizes[nextLayerI]];
+		forward(activeWeights, input, 1, 0, output, layerBuffers.get());
+	}
+	
+	/**
+	 * Computes the layers starting at the given one.
+	 *
+	 * @param layer - The activations of the layer before firstLayerI
+	 * @param weightIndex - The index of the first weight leading to firstLayerI
+	 */
+	private void forward(float[] w, float[] layer, int firstLayerI, int weightIndex, float[] output, float[][] buffers) {
+		int lastLayerI = layerSizes.length - 1;
+		
+		for (int nextLayerI=firstLayerI; nextLayerI<=lastLayerI; nextLayerI++) {
+			float[] nextLayer = (nextLayerI == lastLayerI) ? output : buffers[nextLayerI];
+			int layerSize = layerSizes[nextLayerI - 1];
+			int nextLayerSize = layerSizes[nextLayerI];
 			
-			for (int nextNeuronI=0; nextNeuronI<nextLayer.length; nextNeuronI++) {
+			for (int nextNeuronI=0; nextNeuronI<nextLayerSize; nextNeuronI++) {
 				float dot = 0;
 				
-				for (float neuron : layer) {
-					if (isWeightEnabled(weightIndex)) {
-						dot += neuron * weights[weightIndex];
-					}
-					weightIndex++;
+				for (int neuronI=0; neuronI<layerSize; neuronI++) {
+					dot += layer[neuronI] * w[weightIndex + neuronI];
 				}
+				weightIndex += layerSize;
 				
-				float bias = isWeightEnabled(weightIndex) ? weights[weightIndex] : 0;
+				float bias = w[weightIndex];
 				weightIndex++;
 				
 				nextLayer[nextNeuronI] = relu(dot + bias);
@@ -64,12 +117,291 @@ public class Perceptron {
 			
 			layer = nextLayer;
 		}
+	}
+	
+	/**
+	 * Convenience method that computes the first output neuron.
+	 */
+	public float computeFirst(float[] input) {
+		float[] output = layerBuffers.get()[0];
+		compute(input, output);
+		return output[0];
+	}
+	
+	/**
+	 * Computes the pre-activations of the first layer after the
+	 * input layer (the "accumulator"). Together with {@link #updateAccumulator}
+	 * this allows deriving the accumulator of a similar input (e.g.
+	 * the encoding of a child state) by only adding the weight columns
+	 * of the changed inputs.
+	 *
+	 * <p>The accumulator methods always use the float weights.</p>
+	 */
+	public void computeAccumulator(float[] input, int inputOffset, float[] accumulator, int accumulatorOffset) {
+		float[] w = activeWeights;
+		int inputSize = layerSizes[0];
+		int weightIndex = 0;
+		
+		for (int neuronI=0; neuronI<layerSizes[1]; neuronI++) {
+			float dot = 0;
+			
+			for (int inputI=0; inputI<inputSize; inputI++) {
+				dot += input[inputOffset + inputI] * w[weightIndex + inputI];
+			}
+			weightIndex += inputSize;
+			
+			accumulator[accumulatorOffset + neuronI] = dot + w[weightIndex];
+			weightIndex++;
+		}
+	}
+	
+	/**
+	 * Derives the accumulator of a new input from the one of an old input.
+	 */
+	public void updateAccumulator(
+			float[] accumulator, int accumulatorOffset,
+			float[] oldInput, int oldInputOffset,
+			float[] newInput, int newInputOffset,
+			float[] newAccumulator, int newAccumulatorOffset
+	) {
+		float[] columns = firstLayerColumns;
+		int size = layerSizes[1];
+		System.arraycopy(accumulator, accumulatorOffset, newAccumulator, newAccumulatorOffset, size);
 		
-		return layer;
+		for (int inputI=0; inputI<layerSizes[0]; inputI++) {
+			float delta = newInput[newInputOffset + inputI] - oldInput[oldInputOffset + inputI];
+			
+			if (delta != 0) {
+				int columnStart = inputI * size;
+				for (int neuronI=0; neuronI<size; neuronI++) {
+					newAccumulator[newAccumulatorOffset + neuronI] += delta * columns[columnStart + neuronI];
+				}
+			}
+		}
 	}
 	
-	private boolean isWeightEnabled(int weightIndex) {
-		return !dropoutEnabled || !dropoutIndices.contains(weightIndex);
+	/**
+	 * Finishes a forward pass from an accumulator
+	 * and returns the first output neuron.
+	 */
+	public float computeFirstFromAccumulator(float[] accumulator, int accumulatorOffset) {
+		float[][] buffers = layerBuffers.get();
+		int lastLayerI = layerSizes.length - 1;
+		float[] firstLayer = (lastLayerI == 1) ? buffers[0] : buffers[1];
+		
+		for (int neuronI=0; neuronI<layerSizes[1]; neuronI++) {
+			firstLayer[neuronI] = relu(accumulator[accumulatorOffset + neuronI]);
+		}
+		
+		if (lastLayerI > 1) {
+			forward(activeWeights, firstLayer, 2, layerSizes[1] * (layerSizes[0] + 1), buffers[0], buffers);
+		}
+		
+		return buffers[0][0];
+	}
+	
+	/**
+	 * Computes the output vectors for multiple inputs.
+	 */
+	public float[][] computeBatch(float[][] inputs) {
+		int inputSize = layerSizes[0];
+		int outputSize = layerSizes[layerSizes.length - 1];
+		float[] flatInputs = new float[inputs.length * inputSize];
+		float[] flatOutputs = new float[inputs.length * outputSize];
+		
+		for (int i=0; i<inputs.length; i++) {
+			if (inputs[i].length != inputSize) {
+				throw new RuntimeException("Input vector size does not match input layer size.");
+			}
+			System.arraycopy(inputs[i], 0, flatInputs, i * inputSize, inputSize);
+		}
+		
+		computeBatch(flatInputs, inputs.length, flatOutputs);
+		float[][] outputs = new float[inputs.length][];
+		
+		for (int i=0; i<inputs.length; i++) {
+			outputs[i] = Arrays.copyOfRange(flatOutputs, i * outputSize, (i + 1) * outputSize);
+		}
+		
+		return outputs;
+	}
+	
+	/**
+	 * Computes the output vectors for multiple inputs without
+	 * allocating. The results are exactly the same as the ones
+	 * of {@link #compute(float[], float[])}.
+	 *
+	 * <p>The samples are processed in blocks, each layer
+	 * being computed for the whole block at once, thus every
+	 * weight row is reused for all samples of the block
+	 * while it is in the cache (matrix-matrix instead
+	 * of matrix-vector products).</p>
+	 *
+	 * @param inputs - The input matrix (one row of input layer size per sample)
+	 * @param batchSize - The number of samples
+	 * @param outputs - The output matrix (one row of output layer size per sample)
+	 */
+	public void computeBatch(float[] inputs, int batchSize, float[] outputs) {
+		int lastLayerI = layerSizes.length - 1;
+		int inputSize = layerSizes[0];
+		
+		if (inputs.length < batchSize * inputSize) {
+			throw new RuntimeException("Input matrix is smaller than batch size times input layer size.");
+		} else if (outputs.length < batchSize * layerSizes[lastLayerI]) {
+			throw new RuntimeException("Output matrix is smaller than batch size times output layer size.");
+		}
+		
+		QuantizedNetwork quantizedNet = quantizedNetwork;
+		if (quantizedNet != null) {
+			int outputSize = layerSizes[lastLayerI];
+			float[][] buffers = layerBuffers.get();
+			
+			for (int sampleI=0; sampleI<batchSize; sampleI++) {
+				quantizedNet.compute(inputs, sampleI * inputSize, outputs, sampleI * outputSize, buffers);
+			}
+			return;
+		}
+		
+		float[] w = activeWeights;
+		float[][] buffers = batchBuffers.get();
+		
+		for (int blockStart=0; blockStart<batchSize; blockStart+=BATCH_BLOCK_SIZE) {
+			int blockSize = Math.min(BATCH_BLOCK_SIZE, batchSize - blockStart);
+			int weightIndex = 0;
+			float[] layer = inputs;
+			int layerOffset = blockStart * inputSize;
+			
+			for (int nextLayerI=1; nextLayerI<=lastLayerI; nextLayerI++) {
+				int layerSize = layerSizes[nextLayerI - 1];
+				int nextLayerSize = layerSizes[nextLayerI];
+				float[] nextLayer = (nextLayerI == lastLayerI) ? outputs : buffers[nextLayerI];
+				int nextLayerOffset = (nextLayerI == lastLayerI) ? (blockStart * nextLayerSize) : 0;
+				
+				for (int nextNeuronI=0; nextNeuronI<nextLayerSize; nextNeuronI++) {
+					int rowStart = weightIndex + nextNeuronI * (layerSize + 1);
+					float bias = w[rowStart + layerSize];
+					
+					int sampleI = 0;
+					
+					// Compute four samples at once using independent accumulators
+					for (; sampleI+4<=blockSize; sampleI+=4) {
+						int start0 = layerOffset + sampleI * layerSize;
+						int start1 = start0 + layerSize;
+						int start2 = start1 + layerSize;
+						int start3 = start2 + layerSize;
+						float dot0 = 0;
+						float dot1 = 0;
+						float dot2 = 0;
+						float dot3 = 0;
+						
+						for (int neuronI=0; neuronI<layerSize; neuronI++) {
+							float weight = w[rowStart + neuronI];
+							dot0 += layer[start0 + neuronI] * weight;
+							dot1 += layer[start1 + neuronI] * weight;
+							dot2 += layer[start2 + neuronI] * weight;
+							dot3 += layer[start3 + neuronI] * weight;
+						}
+						
+						int outputStart = nextLayerOffset + sampleI * nextLayerSize + nextNeuronI;
+						nextLayer[outputStart] = relu(dot0 + bias);
+						nextLayer[outputStart + nextLayerSize] = relu(dot1 + bias);
+						nextLayer[outputStart + 2 * nextLayerSize] = relu(dot2 + bias);
+						nextLayer[outputStart + 3 * nextLayerSize] = relu(dot3 + bias);
+					}
+					
+					for (; sampleI<blockSize; sampleI++) {
+						int sampleStart = layerOffset + sampleI * layerSize;
+						float dot = 0;
+						
+						for (int neuronI=0; neuronI<layerSize; neuronI++) {
+							dot += layer[sampleStart + neuronI] * w[rowStart + neuronI];
+						}
+						
+						nextLayer[nextLayerOffset + sampleI * nextLayerSize + nextNeuronI] = relu(dot + bias);
+					}
+				}
+				
+				weightIndex += nextLayerSize * (layerSize + 1);
+				layer = nextLayer;
+				layerOffset = nextLayerOffset;
+			}
+		}
+	}
+	
+	private float[][] newBatchBuffers() {
+		float[][] buffers = new float[layerSizes.length][];
+		
+		// The input and output matrices are provided by the caller
+		for (int i=1; i<layerSizes.length - 1; i++) {
+			buffers[i] = new float[BATCH_BLOCK_SIZE * layerSizes[i]];
+		}
+		
+		return buffers;
+	}
+	
+	private float[][] newLayerBuffers() {
+		float[][] buffers = new float[layerSizes.length][];
+		
+		// Index 0 stores the output (the input is provided by the caller)
+		buffers[0] = new float[layerSizes[layerSizes.length - 1]];
+		
+		for (int i=1; i<layerSizes.length; i++) {
+			buffers[i] = new float[layerSizes[i]];
+		}
+		
+		return buffers;
+	}
+	
+	private void updateActiveWeights() {
+		if (dropoutEnabled && dropoutIndices != null) {
+			float[] masked = weights.clone();
+			
+			for (int i=0; i<masked.length; i++) {
+				if (dropoutIndices.contains(i)) {
+					masked[i] = 0;
+				}
+			}
+			
+			activeWeights = masked;
+		} else {
+			activeWeights = weights;
+		}
+		
+		firstLayerColumns = transposeFirstLayer(activeWeights);
+		quantizedNetwork = quantized ? QuantizedNetwork.of(layerSizes, activeWeights) : null;
+	}
+	
+	private float[] transposeFirstLayer(float[] w) {
+		int inputSize = layerSizes[0];
+		int size = layerSizes[1];
+		float[] columns = new float[inputSize * size];
+		
+		for (int neuronI=0; neuronI<size; neuronI++) {
+			for (int inputI=0; inputI<inputSize; inputI++) {
+				columns[inputI * size + neuronI] = w[neuronI * (inputSize + 1) + inputI];
+			}
+		}
+		
+		return columns;
+	}
+	
+	/**
+	 * Enables or disables int8 quantized inference. The
+	 * weights are quantized whenever they change, thus
+	 * this mode is meant for fixed weights (e.g. the fittest
+	 * individual in production) rather than training.
+	 */
+	public void setQuantized(boolean quantized) {
+		this.quantized = quantized;
+		updateActiveWeights();
+	}
+	
+	public boolean isQuantized() {
+		return quantized;
+	}
+	
+	public int[] getLayerSizes() {
+		return layerSizes.clone();
 	}
 	
 	public void setDropoutEnabled(boolean dropoutEnabled) {
@@ -97,10 +429,13 @@ public class Perceptron {
 		} else if (!dropoutEnabled && dropoutIndices != null) {
 			dropoutIndices = null;
 		}
+		
+		updateActiveWeights();
 	}
 	
 	public void setWeights(float[] weights) {
 		this.weights = weights;
+		updateActiveWeights();
 	}
 	
 	public float[] getWeights() {
@@ -139,6 +474,7 @@ public class Perceptron {
 			}
 			
 			weights = newWeights;
+			updateActiveWeights();
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
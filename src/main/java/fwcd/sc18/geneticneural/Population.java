@@ -1,17 +1,10 @@
 package fwcd.sc18.geneticneural;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.UncheckedIOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.StandardOpenOption;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
@@ -21,7 +14,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import fwcd.sc18.exception.CorruptedDataException;
-import fwcd.sc18.utils.FloatList;
 import fwcd.sc18.utils.IndexedHashMap;
 import fwcd.sc18.utils.IndexedMap;
 import fwcd.sc18.utils.MatchResult;
@@ -29,9 +21,15 @@ import fwcd.sc18.utils.MatchResult;
 /**
  * A population that uses genetic techniques to
  * find optimize a solution.
+ *
+ * <p>All public methods are synchronized, thus a population
+ * can be shared by multiple training threads (see
+ * {@link #setConcurrentEvaluation(boolean)}).</p>
  */
 public class Population {
 	private static final Logger GENETIC_LOG = LoggerFactory.getLogger("geneticlog");
+	/** The number of ints in a stats row. */
+	private static final int STATS_INTS = 7;
 	
 	private final IndexedMap<float[], Float> individuals;
 	private final Supplier<float[]> spawner;
@@ -44,11 +42,32 @@ public class Population {
 	private float mutatorBias = 0;
 
 	private Path savePath = null;
+	private String checkpointFile = "Population.bin";
 	private String counterFile = "Counter";
+	private String statsStoreFile = "Stats.bin";
 	private String statsFile = "Stats";
 	private String individualFilePrefix = "Individual";
 	private String backupFolder = "Backup";
-	private int maxStatsBytes = 100000;
+	private int statsCapacity = 4096;
+	/** Only accessed by the writer thread. */
+	private StatsStore statsStore = null;
+	private final PopulationWriter writer = new PopulationWriter(new PopulationWriter.Target() {
+		@Override
+		public void writeCheckpoint(PopulationCheckpoint checkpoint) throws IOException {
+			checkpoint.write(savePath.resolve(checkpointFile));
+		}
+		
+		@Override
+		public void appendStats(int[] stats) throws IOException {
+			saveStats(stats);
+		}
+		
+		@Override
+		public void createBackup() throws IOException {
+			Population.this.createBackup();
+		}
+	}, 1024);
+	private TelemetryChannel telemetry = null;
 	
 	private int counter = 0;
 	private int streak = 0;
@@ -62,6 +81,14 @@ public class Population {
 	private int longestStreak = 0;
 	private float maxFitness = Float.NEGATIVE_INFINITY;
 	
+	// Per-individual bookkeeping of the concurrent evaluation (indexed like the individuals)
+	private boolean concurrent = false;
+	private boolean closed = false;
+	private int[] streaks;
+	private boolean[] evaluating;
+	private boolean[] evaluated;
+	private int evaluatedCount = 0;
+	
 	/**
 	 * Constructs a new population with the given hyperparameters. This
 	 * method will try to load an exisiting population from the given
@@ -105,10 +132,113 @@ public class Population {
 	/**
 	 * Samples an individual from this population depending on the trainMode.
 	 */
-	public float[] sample() {
+	public synchronized float[] sample() {
 		return trainMode ? selectTrainingGenes() : selectFittestGenes();
 	}
 	
+	/**
+	 * Samples an individual for a caller that has previously been
+	 * assigned the given individual (or null). When evaluating concurrently,
+	 * the caller keeps it's individual until the strategy moves on and then
+	 * acquires one that has not been evaluated in the current generation,
+	 * waiting for the other callers to finish the generation if necessary.
+	 */
+	public synchronized float[] sample(float[] previous) {
+		if (!trainMode || !concurrent) {
+			return sample();
+		}
+		
+		if (previous != null) {
+			int index = individuals.indexOfKey(previous);
+			
+			if (index >= 0 && evaluating[index]) {
+				return previous;
+			}
+		}
+		
+		return acquireTrainingGenes();
+	}
+	
+	/**
+	 * Publishes the metrics of every evaluated game to the given channel.
+	 */
+	public synchronized void setTelemetry(TelemetryChannel telemetry) {
+		this.telemetry = telemetry;
+	}
+	
+	/**
+	 * Enables/disables the concurrent evaluation of generations. When enabled,
+	 * every individual is evaluated independently (tracking it's own streak)
+	 * by whichever caller acquired it and the next generation is only bred
+	 * once all individuals have been evaluated.
+	 */
+	public synchronized void setConcurrentEvaluation(boolean concurrent) {
+		this.concurrent = concurrent;
+		resetEvaluation();
+	}
+	
+	public synchronized boolean isEvaluatingConcurrently() { return concurrent; }
+	
+	/**
+	 * Wakes up all callers waiting for the next generation, which
+	 * will then receive the fittest individual. Should be called
+	 * once training is stopped.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Releases an individual that was acquired for concurrent evaluation
+	 * without finishing it (e.g. because the evaluating worker failed),
+	 * thus allowing another caller to evaluate it from scratch.
+	 */
+	public synchronized void release(float[] individual) {
+		if (concurrent) {
+			int index = individuals.indexOfKey(individual);
+			
+			if (index >= 0 && evaluating[index]) {
+				evaluating[index] = false;
+				streaks[index] = 0;
+				notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Acquires the next individual that is neither being
+	 * nor has been evaluated in the current generation.
+	 */
+	private float[] acquireTrainingGenes() {
+		while (!closed) {
+			for (int i=0; i<evaluating.length; i++) {
+				if (!evaluating[i] && !evaluated[i]) {
+					evaluating[i] = true;
+					return strategy.selectTrainingGenes(individuals, i)[trainIndex];
+				}
+			}
+			
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		
+		// Results of the returned individual will be ignored by evolve
+		return selectFittestGenes();
+	}
+	
+	private void resetEvaluation() {
+		int size = size();
+		streaks = new int[size];
+		evaluating = new boolean[size];
+		evaluated = new boolean[size];
+		evaluatedCount = 0;
+	}
+	
 	/**
 	 * Selects the current individual for training.
 	 */
@@ -148,7 +278,7 @@ public class Population {
 	/**
 	 * Adds/replaces the given individual and it's associated fitness.
 	 */
-	public void put(float[] individual, float fitness) {
+	public synchronized void put(float[] individual, float fitness) {
 		individuals.put(individual, fitness);
 	}
 	
@@ -156,11 +286,11 @@ public class Population {
 	 * Adds/replaces the given individual and it's associated fitness
 	 * at the given index.
 	 */
-	public void put(int index, float[] individual, float fitness) {
+	public synchronized void put(int index, float[] individual, float fitness) {
 		individuals.put(index, individual, fitness);
 	}
 	
-	public float getFitness(float[] individual) {
+	public synchronized float getFitness(float[] individual) {
 		return individuals.get(individual);
 	}
 	
@@ -173,12 +303,16 @@ public class Population {
 	 * 
 	 * @return Whether the counter has been changed to the next individual
 	 */
-	public boolean evolve(MatchResult result, EvaluationResult evaluation) {
+	public synchronized boolean evolve(MatchResult result, EvaluationResult evaluation) {
 		boolean nextIndividual = false;
 		
-		if (trainMode) {
+		if (trainMode && concurrent) {
+			nextIndividual = evolveConcurrently(result, evaluation);
+		} else if (trainMode) {
 			boolean nextGeneration = false;
 			int counterDelta = evaluation.getCounterDelta();
+			int index = counter;
+			int individualStreak;
 			put(result.getGenes(), evaluation.getFitness());
 			
 			if (counterDelta > 0) {
@@ -186,53 +320,124 @@ public class Population {
 				nextIndividual = true;
 				nextGeneration = evaluation.shouldSkipToNextGeneration() || counter >= size();
 				
+				individualStreak = streak;
 				longestStreak = Math.max(longestStreak, streak);
 				streak = 0;
 			} else {
 				streak++;
+				individualStreak = streak;
 			}
 			
-			if (result.isWon()) {
-				if (result.inGoal()) {
-					int moves = result.getTurn();
-					minGoalMoves = Math.min(moves, minGoalMoves);
-					maxGoalMoves = Math.max(moves, maxGoalMoves);
-					goalWins++;
-				} else {
-					wins++;
-				}
-			} else {
-				losses++;
-			}
+			recordResult(result);
+			publish(index, individualStreak, evaluation.getFitness());
 			
 			if (nextGeneration) {
-				// Reached a full generation
-				strategy.onPreNextGeneration(this);
-				sortByFitnessDescending();
-				maxFitness = individuals.getValue(0);
-				
-				counter = 0;
-				streak = 0;
-				generation++;
-				
-				log();
-				copyMutate();
-				saveAll();
-
-				wins = 0;
-				losses = 0;
-				goalWins = 0;
-				longestStreak = 0;
-				minGoalMoves = Integer.MAX_VALUE;
-				maxGoalMoves = Integer.MIN_VALUE;
-				maxFitness = Float.NEGATIVE_INFINITY;
-				strategy.onPostNextGeneration(this);
+				nextGeneration();
 			}
 		}
 		
 		return nextIndividual;
 	}
 	
+	/**
+	 * Evolves the individual of the given result independently of
+	 * the other individuals, which may be evaluated concurrently. The
+	 * next generation is bred once every individual has been evaluated.
+	 */
+	private boolean evolveConcurrently(MatchResult result, EvaluationResult evaluation) {
+		int index = individuals.indexOfKey(result.getGenes());
+		
+		if (index < 0 || !evaluating[index]) {
+			// Not acquired in the current generation (e.g. after close)
+			return true;
+		}
+		
+		individuals.setValue(index, evaluation.getFitness());
+		recordResult(result);
+		
+		if (evaluation.getCounterDelta() <= 0) {
+			streaks[index]++;
+			publish(index, streaks[index], evaluation.getFitness());
+			return false;
+		}
+		
+		publish(index, streaks[index], evaluation.getFitness());
+		
+		evaluating[index] = false;
+		markEvaluated(index);
+		longestStreak = Math.max(longestStreak, streaks[index]);
+		streaks[index] = 0;
+		
+		if (evaluation.shouldSkipToNextGeneration()) {
+			// Individuals that are currently being evaluated still finish their matches
+			for (int i=0; i<evaluated.length; i++) {
+				if (!evaluating[i]) {
+					markEvaluated(i);
+				}
+			}
+		}
+		
+		if (evaluatedCount >= size()) {
+			nextGeneration();
+			resetEvaluation();
+			notifyAll();
+		}
+		
+		return true;
+	}
+	
+	private void markEvaluated(int index) {
+		if (!evaluated[index]) {
+			evaluated[index] = true;
+			evaluatedCount++;
+		}
+	}
+	
+	private void publish(int index, int individualStreak, float fitness) {
+		if (telemetry != null) {
+			telemetry.publishEvaluation(generation, index, individualStreak, fitness);
+		}
+	}
+	
+	private void recordResult(MatchResult result) {
+		if (result.isWon()) {
+			if (result.inGoal()) {
+				int moves = result.getTurn();
+				minGoalMoves = Math.min(moves, minGoalMoves);
+				maxGoalMoves = Math.max(moves, maxGoalMoves);
+				goalWins++;
+			} else {
+				wins++;
+			}
+		} else {
+			losses++;
+		}
+	}
+	
+	private void nextGeneration() {
+		// Reached a full generation
+		strategy.onPreNextGeneration(this);
+		sortByFitnessDescending();
+		maxFitness = individuals.getValue(0);
+		
+		counter = 0;
+		streak = 0;
+		generation++;
+		
+		log();
+		copyMutate();
+		saveAll();
+
+		wins = 0;
+		losses = 0;
+		goalWins = 0;
+		longestStreak = 0;
+		minGoalMoves = Integer.MAX_VALUE;
+		maxGoalMoves = Integer.MIN_VALUE;
+		maxFitness = Float.NEGATIVE_INFINITY;
+		strategy.onPostNextGeneration(this);
+	}
+	
 	private void log() {
 		GENETIC_LOG.info("");
 		GENETIC_LOG.info(" <------------------ Generation {} ------------------> ", generation);
@@ -245,179 +450,145 @@ public class Population {
 	/**
 	 * @return The amount of individuals in this population.
 	 */
-	public int size() {
+	public synchronized int size() {
 		return individuals.size();
 	}
 	
-	private void saveCounter() {
-		Path file = savePath.resolve(counterFile);
-		
-		try (OutputStream fos = Files.newOutputStream(file); DataOutputStream dos = new DataOutputStream(fos)) {
-			dos.writeInt(counter);
-			dos.writeInt(streak);
-			dos.writeInt(generation);
-			dos.writeInt(wins);
-			dos.writeInt(goalWins);
-			dos.writeInt(losses);
-			dos.writeInt(minGoalMoves);
-			dos.writeInt(maxGoalMoves);
-			dos.writeInt(longestStreak);
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
-		}
+	/**
+	 * @return The counters in the order of {@link PopulationCheckpoint#getCounters()}
+	 */
+	private int[] counters() {
+		return new int[] {counter, streak, generation, wins, goalWins, losses, minGoalMoves, maxGoalMoves, longestStreak};
 	}
 	
-	private void saveStats() {
-		Path file = savePath.resolve(statsFile);
-		
-		try {
-			boolean fileExists = Files.exists(file);
-			long fileSize = fileExists ? Files.size(file) : 0;
-			
-			if (!fileExists) {
-				Files.createFile(file);
-			}
+	private void restoreCounters(int[] counters) {
+		counter = counters[0];
+		streak = counters[1];
+		generation = counters[2];
+		wins = counters[3];
+		goalWins = counters[4];
+		losses = counters[5];
+		minGoalMoves = counters[6];
+		maxGoalMoves = counters[7];
+		longestStreak = counters[8];
+	}
+	
+	private void saveStats(int[] stats) throws IOException {
+		if (statsStore == null) {
+			Path file = savePath.resolve(statsStoreFile);
+			Path legacyFile = savePath.resolve(statsFile);
+			boolean exists = Files.exists(file);
 			
-			if (generation % 1000 == 0 && generation > 1 && fileExists && fileSize > maxStatsBytes) {
-				// Truncate beginning of file to maxStatsBytes when file is becoming too large
-				
-				try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
-					int oldBytes = (int) fileSize;
-					int chunkSize = 7; // The number has to match the ints in a chunk written further below
-					int chunkBytes = Integer.BYTES * chunkSize;
-					int newBytes = maxStatsBytes - (maxStatsBytes % chunkSize);
-					int truncatedBytes = oldBytes - newBytes;
-					truncatedBytes -= truncatedBytes % chunkBytes;
-					
-					ByteBuffer buffer = ByteBuffer.allocate(oldBytes);
-					channel.read(buffer);
-					buffer.position(truncatedBytes);
-					ByteBuffer result = buffer.slice();
-					channel.position(0);
-					channel.write(result);
-					channel.truncate(newBytes);
-				}
-			}
+			statsStore = StatsStore.open(file, statsCapacity, STATS_INTS);
 			
-			try (OutputStream fos = Files.newOutputStream(file, StandardOpenOption.APPEND);
-					DataOutputStream dos = new DataOutputStream(fos)) {
-				// Writes a chunk
-				
-				dos.writeInt(wins);
-				dos.writeInt(goalWins);
-				dos.writeInt((int) maxFitness);
-				dos.writeInt(losses);
-				dos.writeInt(minGoalMoves);
-				dos.writeInt(maxGoalMoves);
-				dos.writeInt(longestStreak);
+			if (!exists && Files.exists(legacyFile)) {
+				statsStore.importLegacy(legacyFile);
 			}
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
 		}
+		
+		statsStore.append(stats);
 	}
 	
-	private boolean loadCounter() {
-		Path file = savePath.resolve(counterFile);
-		
-		try (InputStream fis = Files.newInputStream(file); DataInputStream dis = new DataInputStream(fis)) {
-			counter = dis.readInt();
-			streak = readIntOrZero(dis);
-			generation = readIntOrZero(dis);
-			wins = readIntOrZero(dis);
-			goalWins = readIntOrZero(dis);
-			losses = readIntOrZero(dis);
-			minGoalMoves = readIntOrZero(dis);
-			maxGoalMoves = readIntOrZero(dis);
-			longestStreak = readIntOrZero(dis);
-		} catch (IOException e) {
-			return false;
-		}
+	/**
+	 * Hands a snapshot of this population over to the writer thread.
+	 */
+	private void saveAll() {
+		int[] stats = {wins, goalWins, (int) maxFitness, losses, minGoalMoves, maxGoalMoves, longestStreak};
+		boolean backup = generation > 200 && generation % 100 == 0;
 		
-		return true;
+		writer.submit(snapshot(true), stats, backup);
 	}
-
-	private int readIntOrZero(DataInputStream dis) throws IOException {
-		return dis.available() > Integer.BYTES ? dis.readInt() : 0;
+	
+	/**
+	 * Blocks until all pending snapshots have been written to disk.
+	 * Should be called once training has stopped.
+	 */
+	public void flush() {
+		writer.flush();
 	}
-
-	private void save(int index, float[] individual, float fitness) {
-		Path file = savePath.resolve(individualFilePrefix + index);
+	
+	/**
+	 * @param copy - Whether the genes should be copied (instead of referenced)
+	 */
+	private PopulationCheckpoint snapshot(boolean copy) {
+		int size = individuals.size();
+		float[] fitness = new float[size];
+		float[][] genes = new float[size][];
 		
-		try (OutputStream fos = Files.newOutputStream(file); DataOutputStream dos = new DataOutputStream(fos)) {
-			dos.writeFloat(fitness);
-			for (float gene : individual) {
-				dos.writeFloat(gene);
-			}
+		for (int i=0; i<size; i++) {
+			float[] individual = individuals.getKey(i);
+			genes[i] = copy ? individual.clone() : individual;
+			fitness[i] = individuals.getValue(i);
+		}
+		
+		return new PopulationCheckpoint(counters(), fitness, genes);
+	}
+	
+	private void saveCheckpoint() {
+		try {
+			snapshot(false).write(savePath.resolve(checkpointFile));
 		} catch (IOException e) {
 			throw new UncheckedIOException(e);
 		}
 	}
-
-	private void saveAll() {
-		int i = 0;
-		for (float[] individual : individuals.keyList()) {
-			save(i, individual, individuals.get(individual));
-			i++;
-		}
-
-		saveCounter();
-		saveStats();
+	
+	private void createBackup() throws IOException {
+		Path backupPath = savePath.resolve(backupFolder);
 		
-		if (generation > 200 && generation % 100 == 0) {
-			createBackup(i);
+		if (!Files.exists(backupPath)) {
+			Files.createDirectory(backupPath);
 		}
+		
+		Files.copy(
+				savePath.resolve(checkpointFile),
+				backupPath.resolve(checkpointFile),
+				StandardCopyOption.REPLACE_EXISTING
+		);
 	}
 	
-	private void createBackup(int size) {
-		Path backupPath = savePath.resolve(backupFolder);
+	/**
+	 * Loads the checkpoint or imports a population
+	 * stored in the legacy layout (one file per individual).
+	 * 
+	 * @return Whether a population has been loaded
+	 */
+	private boolean loadAll(int total) {
+		Path file = savePath.resolve(checkpointFile);
+		PopulationCheckpoint checkpoint;
+		boolean imported = false;
 		
-		try {
-			if (!Files.exists(backupPath)) {
-				Files.createDirectory(backupPath);
+		if (Files.exists(file)) {
+			try {
+				checkpoint = PopulationCheckpoint.read(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
 			}
+		} else {
+			checkpoint = PopulationCheckpoint.importLegacy(savePath, counterFile, individualFilePrefix, total);
+			imported = true;
 			
-			Files.copy(
-					savePath.resolve(counterFile),
-					backupPath.resolve(counterFile),
-					StandardCopyOption.REPLACE_EXISTING
-			);
-			
-			for (int i=0; i<size; i++) {
-				Files.copy(
-						savePath.resolve(individualFilePrefix + i),
-						backupPath.resolve(individualFilePrefix + i),
-						StandardCopyOption.REPLACE_EXISTING
-				);
+			if (checkpoint == null) {
+				return false;
 			}
-		} catch (IOException e) {
-			throw new UncheckedIOException(e);
 		}
-	}
-
-	private boolean loadAll(int total) {
+		
 		for (int index=0; index<total; index++) {
-			Path file = savePath.resolve(individualFilePrefix + index);
+			float[] individual = (index < checkpoint.size()) ? checkpoint.getGenes(index) : null;
 			
-			if (!Files.exists(file)) {
-				return false;
-			}
-			
-			try (InputStream fis = Files.newInputStream(file); DataInputStream dis = new DataInputStream(fis)) {
-				FloatList individual = new FloatList();
-				float fitness = dis.readFloat();
-				
-				while (dis.available() > 0) {
-					individual.add(dis.readFloat());
-				}
-				
-				individuals.put(index, individual.toArray(), fitness);
-			} catch (IOException e) {
+			if (individual == null) {
 				put(index, spawner.get(), Float.NEGATIVE_INFINITY);
+			} else {
+				individuals.put(index, individual, checkpoint.getFitness(index));
 			}
 		}
 		
-		if (!loadCounter()) {
-			saveCounter();
+		if (checkpoint.getCounters() != null) {
+			restoreCounters(checkpoint.getCounters());
+		}
+		
+		if (imported) {
+			GENETIC_LOG.info("Imported {} individuals from {}", total, savePath);
+			saveCheckpoint();
 		}
 		
 		return true;
@@ -463,16 +634,39 @@ public class Population {
 		}
 	}
 	
-	public int getCounter() {
+	public synchronized int getCounter() {
 		return counter;
 	}
 	
-	public int getStreak() {
+	public synchronized int getStreak() {
 		return streak;
 	}
 	
+	public synchronized int getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * @return The index of the given individual (the counter if not evaluating concurrently)
+	 */
+	public synchronized int getIndex(float[] individual) {
+		return concurrent ? individuals.indexOfKey(individual) : counter;
+	}
+	
+	/**
+	 * @return The streak of the given individual (the global streak if not evaluating concurrently)
+	 */
+	public synchronized int getStreak(float[] individual) {
+		if (concurrent) {
+			int index = individuals.indexOfKey(individual);
+			return index >= 0 ? streaks[index] : 0;
+		} else {
+			return streak;
+		}
+	}
+	
 	@Override
-	public String toString() {
+	public synchronized String toString() {
 		return "[Population] " + individuals.valueList().toString();
 	}
 }
@@ -0,0 +1,237 @@
+package fwcd.sc18.geneticneural;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A snapshot of a population stored in a single, versioned file:
+ *
+ * <pre>
+ * int magic, int version, int size, int genomeLength
+ * int[COUNTERS] counters (see {@link #getCounters()})
+ * float[size] fitness
+ * float[size * genomeLength] genes (row by row)
+ * </pre>
+ *
+ * <p>Checkpoints are written to a temporary file first, which
+ * then atomically replaces the previous checkpoint. Both files are
+ * accessed through heap buffers instead of memory mapping, since
+ * (on Windows) mapped files can not be replaced and Java only
+ * unmaps a file once it's buffer has been garbage collected.</p>
+ */
+public class PopulationCheckpoint {
+	public static final int MAGIC = 0x48554950;
+	public static final int VERSION = 1;
+	/** The number of counters (in the order of the legacy counter file). */
+	public static final int COUNTERS = 9;
+	private static final int HEADER_BYTES = (4 + COUNTERS) * Integer.BYTES;
+
+	private final int[] counters;
+	private final float[] fitness;
+	private final float[][] genes;
+	private final int genomeLength;
+
+	/**
+	 * Creates a checkpoint (without copying the arrays).
+	 *
+	 * @param counters - The counters (may be null if unknown)
+	 * @param fitness - The fitness of every individual
+	 * @param genes - The individuals (null entries if unknown)
+	 */
+	public PopulationCheckpoint(int[] counters, float[] fitness, float[][] genes) {
+		if (fitness.length != genes.length) {
+			throw new IllegalArgumentException("Got " + fitness.length + " fitness values for " + genes.length + " individuals");
+		}
+
+		this.counters = counters;
+		this.fitness = fitness;
+		this.genes = genes;
+
+		int length = 0;
+		for (float[] individual : genes) {
+			if (individual != null) {
+				length = individual.length;
+				break;
+			}
+		}
+		genomeLength = length;
+	}
+
+	/**
+	 * Reads a checkpoint from the given file.
+	 */
+	public static PopulationCheckpoint read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long fileBytes = channel.size();
+			if (fileBytes < HEADER_BYTES) {
+				throw new IOException(file + " is too short to be a population checkpoint");
+			}
+
+			if (fileBytes > Integer.MAX_VALUE) {
+				throw new IOException("The checkpoint " + file + " is too large");
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) fileBytes);
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer) < 0) {
+					throw new IOException("The checkpoint " + file + " is truncated");
+				}
+			}
+			buffer.flip();
+
+			int magic = buffer.getInt();
+			int version = buffer.getInt();
+			int size = buffer.getInt();
+			int genomeLength = buffer.getInt();
+
+			if (magic != MAGIC) {
+				throw new IOException(file + " is not a population checkpoint");
+			} else if (version != VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+			} else if (size < 0 || genomeLength < 0 || byteSize(size, genomeLength) != fileBytes) {
+				throw new IOException("The checkpoint " + file + " is truncated or corrupted");
+			}
+
+			int[] counters = new int[COUNTERS];
+			for (int i=0; i<COUNTERS; i++) {
+				counters[i] = buffer.getInt();
+			}
+
+			FloatBuffer floats = buffer.asFloatBuffer();
+			float[] fitness = new float[size];
+			float[][] genes = new float[size][genomeLength];
+
+			floats.get(fitness);
+			for (int i=0; i<size; i++) {
+				floats.get(genes[i]);
+			}
+
+			return new PopulationCheckpoint(counters, fitness, genes);
+		}
+	}
+
+	/**
+	 * Writes this checkpoint to a temporary file (forcing it to
+	 * the storage device) and atomically moves it to the given path.
+	 */
+	public void write(Path file) throws IOException {
+		int size = size();
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (FileChannel channel = FileChannel.open(
+				tempFile,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING
+		)) {
+			ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(byteSize(size, genomeLength)));
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(size);
+			buffer.putInt(genomeLength);
+
+			for (int i=0; i<COUNTERS; i++) {
+				buffer.putInt((counters == null) ? 0 : counters[i]);
+			}
+
+			FloatBuffer floats = buffer.asFloatBuffer();
+			floats.put(fitness);
+
+			for (int i=0; i<size; i++) {
+				if (genes[i] == null || genes[i].length != genomeLength) {
+					throw new IllegalStateException("The individual " + i + " does not have " + genomeLength + " genes");
+				}
+				floats.put(genes[i]);
+			}
+
+			buffer.rewind();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+
+		try {
+			Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Imports a population stored in the legacy layout (a counter
+	 * file and one file per individual containing it's fitness
+	 * followed by it's genes).
+	 *
+	 * @param folder - The folder containing the files
+	 * @param counterFile - The name of the counter file
+	 * @param individualFilePrefix - The prefix of the individual files (followed by the index)
+	 * @param size - The number of individuals
+	 * @return The checkpoint or null if an individual file is missing. Unreadable individuals
+	 *         and a missing counter file are represented by null entries/counters.
+	 */
+	public static PopulationCheckpoint importLegacy(Path folder, String counterFile, String individualFilePrefix, int size) {
+		float[] fitness = new float[size];
+		float[][] genes = new float[size][];
+
+		for (int i=0; i<size; i++) {
+			Path file = folder.resolve(individualFilePrefix + i);
+
+			if (!Files.exists(file)) {
+				return null;
+			}
+
+			try {
+				FloatBuffer floats = ByteBuffer.wrap(Files.readAllBytes(file)).asFloatBuffer();
+				fitness[i] = floats.get();
+				genes[i] = new float[floats.remaining()];
+				floats.get(genes[i]);
+			} catch (IOException | RuntimeException e) {
+				fitness[i] = Float.NEGATIVE_INFINITY;
+				genes[i] = null;
+			}
+		}
+
+		int[] counters;
+		try {
+			ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(folder.resolve(counterFile)));
+			counters = new int[COUNTERS];
+
+			for (int i=0; i<COUNTERS && bytes.remaining() >= Integer.BYTES; i++) {
+				counters[i] = bytes.getInt();
+			}
+		} catch (IOException e) {
+			counters = null;
+		}
+
+		return new PopulationCheckpoint(counters, fitness, genes);
+	}
+
+	private static long byteSize(int size, int genomeLength) {
+		return HEADER_BYTES + (long) Float.BYTES * size * (1 + genomeLength);
+	}
+
+	public int size() { return fitness.length; }
+
+	public int getGenomeLength() { return genomeLength; }
+
+	/**
+	 * @return The counter, streak, generation, wins, goal wins, losses, minimum goal moves,
+	 *         maximum goal moves and longest streak (or null if unknown)
+	 */
+	public int[] getCounters() { return counters; }
+
+	public float getFitness(int index) { return fitness[index]; }
+
+	/**
+	 * @return The genes of the given individual (or null if unknown)
+	 */
+	public float[] getGenes(int index) { return genes[index]; }
+}
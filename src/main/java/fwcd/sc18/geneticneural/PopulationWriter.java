@@ -0,0 +1,171 @@
+package fwcd.sc18.geneticneural;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists immutable population snapshots on a dedicated
+ * (daemon) thread, thus training does not stall on disk I/O.
+ *
+ * <p>If snapshots arrive faster than they can be written, only
+ * the latest checkpoint is kept (and a pending backup is performed
+ * using it), while the stats rows of every generation are still
+ * appended in order. The number of pending stats rows is bounded,
+ * blocking the producer once the bound is reached.</p>
+ *
+ * <p>Failures are logged and rethrown on the next call
+ * to {@link #submit} or {@link #flush}.</p>
+ */
+class PopulationWriter {
+	private static final Logger GENETIC_LOG = LoggerFactory.getLogger("geneticlog");
+
+	/**
+	 * The actual (synchronous) persistence, which is only
+	 * invoked on the writer thread.
+	 */
+	interface Target {
+		void writeCheckpoint(PopulationCheckpoint checkpoint) throws IOException;
+
+		void appendStats(int[] stats) throws IOException;
+
+		void createBackup() throws IOException;
+	}
+
+	private final Target target;
+	private final int maxPendingStats;
+	private final Deque<int[]> pendingStats = new ArrayDeque<>();
+
+	private PopulationCheckpoint pendingCheckpoint = null;
+	private boolean pendingBackup = false;
+	private boolean writing = false;
+	private long coalesced = 0;
+	private RuntimeException failure = null;
+	private Thread thread = null;
+
+	PopulationWriter(Target target, int maxPendingStats) {
+		this.target = target;
+		this.maxPendingStats = maxPendingStats;
+	}
+
+	/**
+	 * Enqueues a snapshot, replacing a checkpoint that
+	 * has not been written yet.
+	 */
+	synchronized void submit(PopulationCheckpoint checkpoint, int[] stats, boolean backup) {
+		rethrowFailure();
+
+		while (pendingStats.size() >= maxPendingStats) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		if (pendingCheckpoint != null) {
+			coalesced++;
+		}
+
+		pendingCheckpoint = checkpoint;
+		pendingStats.addLast(stats);
+		pendingBackup |= backup;
+
+		if (thread == null) {
+			thread = new Thread(this::run, "PopulationWriter");
+			thread.setDaemon(true);
+			thread.start();
+			// Make sure that pending snapshots are not lost if the application exits without flushing
+			Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "PopulationWriter-Flush"));
+		}
+
+		notifyAll();
+	}
+
+	/**
+	 * Blocks until all submitted snapshots have been written.
+	 */
+	synchronized void flush() {
+		while (pendingCheckpoint != null || writing) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+
+		rethrowFailure();
+	}
+
+	/**
+	 * @return The number of checkpoints that were replaced before being written
+	 */
+	synchronized long getCoalesced() { return coalesced; }
+
+	private void run() {
+		while (true) {
+			PopulationCheckpoint checkpoint;
+			List<int[]> rows;
+			boolean backup;
+
+			synchronized (this) {
+				while (pendingCheckpoint == null) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				checkpoint = pendingCheckpoint;
+				rows = new ArrayList<>(pendingStats);
+				backup = pendingBackup;
+				pendingCheckpoint = null;
+				pendingStats.clear();
+				pendingBackup = false;
+				writing = true;
+				notifyAll();
+			}
+
+			try {
+				target.writeCheckpoint(checkpoint);
+				for (int[] row : rows) {
+					target.appendStats(row);
+				}
+				if (backup) {
+					target.createBackup();
+				}
+			} catch (IOException e) {
+				fail(new UncheckedIOException(e));
+			} catch (RuntimeException e) {
+				fail(e);
+			} finally {
+				synchronized (this) {
+					writing = false;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	private synchronized void fail(RuntimeException e) {
+		GENETIC_LOG.error("Could not save the population: {}", e.toString());
+		failure = e;
+	}
+
+	private void rethrowFailure() {
+		if (failure != null) {
+			RuntimeException e = failure;
+			failure = null;
+			throw e;
+		}
+	}
+}
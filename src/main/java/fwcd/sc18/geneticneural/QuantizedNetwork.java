@@ -0,0 +1,135 @@
+package fwcd.sc18.geneticneural;
+
+/**
+ * An immutable int8 quantized copy of the weights of
+ * a {@link Perceptron} that computes the layers using
+ * integer dot products.
+ *
+ * <p>Every layer uses a single weight scale, computed
+ * when the network is quantized. The activations are
+ * quantized to 16 bits per layer and sample (using their
+ * maximum magnitude), limited such that no dot product can
+ * overflow an int. Biases are kept as floats.</p>
+ */
+final class QuantizedNetwork {
+	private static final int MAX_WEIGHT = Byte.MAX_VALUE;
+	private static final int MAX_ACTIVATION = Short.MAX_VALUE;
+
+	private final int[] layerSizes;
+	/** The weights without biases, one row of the previous layer's size per neuron. */
+	private final byte[] weights;
+	private final float[] biases;
+	/** Indexed by the layer that the weights lead to. */
+	private final float[] weightScales;
+	private final int[] activationLimits;
+	private final ThreadLocal<short[]> activationBuffers;
+
+	private QuantizedNetwork(int[] layerSizes, float[] floatWeights) {
+		this.layerSizes = layerSizes;
+
+		int weightCount = 0;
+		int neuronCount = 0;
+		int maxLayerSize = 0;
+		for (int i=0; i<layerSizes.length; i++) {
+			if (i > 0) {
+				weightCount += layerSizes[i - 1] * layerSizes[i];
+				neuronCount += layerSizes[i];
+			}
+			maxLayerSize = Math.max(maxLayerSize, layerSizes[i]);
+		}
+
+		weights = new byte[weightCount];
+		biases = new float[neuronCount];
+		weightScales = new float[layerSizes.length];
+		activationLimits = new int[layerSizes.length];
+
+		int floatIndex = 0;
+		int weightIndex = 0;
+		int biasIndex = 0;
+
+		for (int nextLayerI=1; nextLayerI<layerSizes.length; nextLayerI++) {
+			int layerSize = layerSizes[nextLayerI - 1];
+			int nextLayerSize = layerSizes[nextLayerI];
+			float maxMagnitude = 0;
+
+			for (int nextNeuronI=0; nextNeuronI<nextLayerSize; nextNeuronI++) {
+				int rowStart = floatIndex + nextNeuronI * (layerSize + 1);
+				for (int neuronI=0; neuronI<layerSize; neuronI++) {
+					maxMagnitude = Math.max(maxMagnitude, Math.abs(floatWeights[rowStart + neuronI]));
+				}
+			}
+
+			float scale = maxMagnitude / MAX_WEIGHT;
+			float inverseScale = (maxMagnitude == 0) ? 0 : (MAX_WEIGHT / maxMagnitude);
+			weightScales[nextLayerI] = scale;
+			activationLimits[nextLayerI] = (int) Math.min(MAX_ACTIVATION, Integer.MAX_VALUE / ((long) MAX_WEIGHT * Math.max(layerSize, 1)));
+
+			for (int nextNeuronI=0; nextNeuronI<nextLayerSize; nextNeuronI++) {
+				for (int neuronI=0; neuronI<layerSize; neuronI++) {
+					weights[weightIndex++] = (byte) Math.round(floatWeights[floatIndex++] * inverseScale);
+				}
+				biases[biasIndex++] = floatWeights[floatIndex++];
+			}
+		}
+
+		short[] template = new short[maxLayerSize];
+		activationBuffers = ThreadLocal.withInitial(template::clone);
+	}
+
+	/**
+	 * Quantizes the given weights (in the layout used by {@link Perceptron}).
+	 */
+	static QuantizedNetwork of(int[] layerSizes, float[] weights) {
+		return new QuantizedNetwork(layerSizes, weights);
+	}
+
+	/**
+	 * Computes the output vector for a given input.
+	 *
+	 * @param layerBuffers - Buffers for the hidden layers (indexed by layer)
+	 */
+	void compute(float[] input, int inputOffset, float[] output, int outputOffset, float[][] layerBuffers) {
+		short[] activations = activationBuffers.get();
+		int lastLayerI = layerSizes.length - 1;
+		int weightIndex = 0;
+		int biasIndex = 0;
+		float[] layer = input;
+		int layerOffset = inputOffset;
+
+		for (int nextLayerI=1; nextLayerI<=lastLayerI; nextLayerI++) {
+			int layerSize = layerSizes[nextLayerI - 1];
+			int nextLayerSize = layerSizes[nextLayerI];
+			float[] nextLayer = (nextLayerI == lastLayerI) ? output : layerBuffers[nextLayerI];
+			int nextLayerOffset = (nextLayerI == lastLayerI) ? outputOffset : 0;
+
+			// Quantize the activations of the current layer
+			float maxMagnitude = 0;
+			for (int neuronI=0; neuronI<layerSize; neuronI++) {
+				maxMagnitude = Math.max(maxMagnitude, Math.abs(layer[layerOffset + neuronI]));
+			}
+
+			int limit = activationLimits[nextLayerI];
+			float inverseScale = (maxMagnitude == 0) ? 0 : (limit / maxMagnitude);
+			float dequantizeScale = weightScales[nextLayerI] * (maxMagnitude / limit);
+
+			for (int neuronI=0; neuronI<layerSize; neuronI++) {
+				activations[neuronI] = (short) Math.round(layer[layerOffset + neuronI] * inverseScale);
+			}
+
+			for (int nextNeuronI=0; nextNeuronI<nextLayerSize; nextNeuronI++) {
+				int dot = 0;
+
+				for (int neuronI=0; neuronI<layerSize; neuronI++) {
+					dot += activations[neuronI] * weights[weightIndex + neuronI];
+				}
+				weightIndex += layerSize;
+
+				float value = (dot * dequantizeScale) + biases[biasIndex++];
+				nextLayer[nextLayerOffset + nextNeuronI] = (value >= 0) ? value : 0;
+			}
+
+			layer = nextLayer;
+			layerOffset = nextLayerOffset;
+		}
+	}
+}
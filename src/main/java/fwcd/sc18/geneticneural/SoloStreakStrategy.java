@@ -51,8 +51,8 @@ public class SoloStreakStrategy implements GeneticStrategy {
 			fitness = FITNESS_BIAS - normSalads + normField - normCarrots;
 		}
 		
-		int counter = population.getCounter();
-		int streak = population.getStreak();
+		int counter = population.getIndex(result.getGenes());
+		int streak = population.getStreak(result.getGenes());
 		
 		float totalFitness = (streak > 0 ? prevFitness : 0) + fitness;
 		boolean nextIndividual = !won && streak >= 1;
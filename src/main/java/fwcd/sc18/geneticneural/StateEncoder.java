@@ -0,0 +1,195 @@
+package fwcd.sc18.geneticneural;
+
+import java.util.List;
+
+import fwcd.sc18.board.BoardIndex;
+import fwcd.sc18.utils.HUIUtils;
+
+import sc.plugin2018.CardType;
+import sc.plugin2018.FieldType;
+import sc.plugin2018.GameState;
+import sc.plugin2018.Player;
+import sc.plugin2018.util.Constants;
+import sc.shared.PlayerColor;
+
+/**
+ * Encodes game states into the input vectors of the neural network.
+ *
+ * <p>Besides encoding states from scratch, a child state can be
+ * encoded incrementally from it's parent: The features are split
+ * into groups (round, own stats, own cards, own field and the
+ * opponent's stats), each of which is only recomputed if the
+ * values it depends on changed and copied from the parent otherwise.</p>
+ *
+ * <p>Instances hold the parent and are thus not thread-safe.</p>
+ */
+final class StateEncoder {
+	/** The number of features. */
+	static final int SIZE = 26;
+
+	private static final int ROUND = 0;
+	private static final int MY_STATS = 1;
+	private static final int MY_FIELD_INDEX = 3;
+	private static final int OPPONENT_STATS = 4;
+	private static final int MY_CARDS = 7;
+	private static final int MY_FIELD = 11;
+
+	private final float[] parentFeatures = new float[SIZE];
+	private boolean hasParent = false;
+	private PlayerColor color;
+	private int round;
+	private int myCarrots;
+	private int mySalads;
+	private int myFieldIndex;
+	private List<CardType> myCards;
+	private int oppCarrots;
+	private int oppSalads;
+	private int oppFieldIndex;
+
+	/**
+	 * Encodes a game state from scratch.
+	 */
+	static void encode(GameState state, PlayerColor myColor, BoardIndex board, float[] encoded, int offset) {
+		Player me = state.getPlayer(myColor);
+		Player opponent = state.getPlayer(myColor.opponent());
+
+		encodeRound(state.getRound(), encoded, offset);
+		encodeMyStats(me.getCarrots(), me.getSalads(), encoded, offset);
+		encodeOpponent(opponent.getCarrots(), opponent.getSalads(), opponent.getFieldIndex(), encoded, offset);
+		encodeMyCards(me.getCards(), encoded, offset);
+		encodeMyField(me.getFieldIndex(), board, encoded, offset);
+	}
+
+	/**
+	 * Sets the parent whose features are reused by {@link #encodeChild}.
+	 * The parent is only encoded if it differs from the current one.
+	 *
+	 * @return Whether the parent changed
+	 */
+	boolean setParent(GameState parent, PlayerColor myColor, BoardIndex board) {
+		Player me = parent.getPlayer(myColor);
+		Player opponent = parent.getPlayer(myColor.opponent());
+
+		if (hasParent
+				&& color == myColor
+				&& round == parent.getRound()
+				&& myCarrots == me.getCarrots()
+				&& mySalads == me.getSalads()
+				&& myFieldIndex == me.getFieldIndex()
+				&& oppCarrots == opponent.getCarrots()
+				&& oppSalads == opponent.getSalads()
+				&& oppFieldIndex == opponent.getFieldIndex()
+				&& sameCards(myCards, me.getCards())) {
+			return false;
+		}
+
+		encode(parent, myColor, board, parentFeatures, 0);
+		hasParent = true;
+		color = myColor;
+		round = parent.getRound();
+		myCarrots = me.getCarrots();
+		mySalads = me.getSalads();
+		myFieldIndex = me.getFieldIndex();
+		myCards = me.getCards();
+		oppCarrots = opponent.getCarrots();
+		oppSalads = opponent.getSalads();
+		oppFieldIndex = opponent.getFieldIndex();
+
+		return true;
+	}
+
+	/**
+	 * @return The features of the current parent
+	 */
+	float[] getParentFeatures() { return parentFeatures; }
+
+	/**
+	 * Encodes a child of the current parent (see {@link #setParent}).
+	 * Equivalent to {@link #encode}, but only recomputes the
+	 * feature groups that differ from the parent.
+	 */
+	void encodeChild(GameState child, BoardIndex board, float[] encoded, int offset) {
+		if (!hasParent) {
+			throw new IllegalStateException("No parent has been set");
+		}
+
+		Player me = child.getPlayer(color);
+		Player opponent = child.getPlayer(color.opponent());
+		System.arraycopy(parentFeatures, 0, encoded, offset, SIZE);
+
+		if (child.getRound() != round) {
+			encodeRound(child.getRound(), encoded, offset);
+		}
+		if (me.getCarrots() != myCarrots || me.getSalads() != mySalads) {
+			encodeMyStats(me.getCarrots(), me.getSalads(), encoded, offset);
+		}
+		if (opponent.getCarrots() != oppCarrots || opponent.getSalads() != oppSalads || opponent.getFieldIndex() != oppFieldIndex) {
+			encodeOpponent(opponent.getCarrots(), opponent.getSalads(), opponent.getFieldIndex(), encoded, offset);
+		}
+		if (!sameCards(myCards, me.getCards())) {
+			encodeMyCards(me.getCards(), encoded, offset);
+		}
+		if (me.getFieldIndex() != myFieldIndex) {
+			encodeMyField(me.getFieldIndex(), board, encoded, offset);
+		}
+	}
+
+	/**
+	 * Forgets the current parent.
+	 */
+	void reset() {
+		hasParent = false;
+		myCards = null;
+	}
+
+	private static boolean sameCards(List<CardType> a, List<CardType> b) {
+		return a == b || (a != null && a.equals(b));
+	}
+
+	private static void encodeRound(int round, float[] encoded, int offset) {
+		encoded[offset + ROUND] = HUIUtils.normalize(round, 0, Constants.ROUND_LIMIT);
+	}
+
+	private static void encodeMyStats(int carrots, int salads, float[] encoded, int offset) {
+		int i = offset + MY_STATS;
+		encoded[i++] = HUIUtils.normalize(carrots, 0, HUIUtils.CARROT_THRESHOLD);
+		encoded[i++] = HUIUtils.normalize(salads, 0, Constants.SALADS_TO_EAT);
+	}
+
+	private static void encodeOpponent(int carrots, int salads, int fieldIndex, float[] encoded, int offset) {
+		int i = offset + OPPONENT_STATS;
+		encoded[i++] = HUIUtils.normalize(carrots, 0, HUIUtils.CARROT_THRESHOLD);
+		encoded[i++] = HUIUtils.normalize(salads, 0, Constants.SALADS_TO_EAT);
+		encoded[i++] = HUIUtils.normalize(fieldIndex, 0, HUIUtils.MAX_FIELD);
+	}
+
+	private static void encodeMyCards(List<CardType> cards, float[] encoded, int offset) {
+		int i = offset + MY_CARDS;
+		encoded[i++] = cards.contains(CardType.EAT_SALAD) ? 1 : 0;
+		encoded[i++] = cards.contains(CardType.FALL_BACK) ? 1 : 0;
+		encoded[i++] = cards.contains(CardType.HURRY_AHEAD) ? 1 : 0;
+		encoded[i++] = cards.contains(CardType.TAKE_OR_DROP_CARROTS) ? 1 : 0;
+	}
+
+	private static void encodeMyField(int fieldIndex, BoardIndex board, float[] encoded, int offset) {
+		FieldType fieldType = board.getTypeAt(fieldIndex);
+		encoded[offset + MY_FIELD_INDEX] = HUIUtils.normalize(fieldIndex, 0, HUIUtils.MAX_FIELD);
+
+		int i = offset + MY_FIELD;
+		encoded[i++] = fieldType == FieldType.CARROT ? 1 : 0;
+		encoded[i++] = fieldType == FieldType.HARE ? 1 : 0;
+		encoded[i++] = fieldType == FieldType.HEDGEHOG ? 1 : 0;
+		encoded[i++] = fieldType == FieldType.POSITION_1 ? 1 : 0;
+		encoded[i++] = fieldType == FieldType.POSITION_2 ? 1 : 0;
+		encoded[i++] = fieldType == FieldType.SALAD ? 1 : 0;
+		encoded[i++] = fieldType == FieldType.START ? 1 : 0;
+		encoded[i++] = fieldType == FieldType.GOAL ? 1 : 0;
+		encoded[i++] = HUIUtils.normalize(board.distToNextField(FieldType.CARROT, fieldIndex), 0, HUIUtils.MAX_FIELD);
+		encoded[i++] = HUIUtils.normalize(board.distToNextField(FieldType.HARE, fieldIndex), 0, HUIUtils.MAX_FIELD);
+		encoded[i++] = HUIUtils.normalize(board.distToPrevField(FieldType.HEDGEHOG, fieldIndex), 0, HUIUtils.MAX_FIELD);
+		encoded[i++] = HUIUtils.normalize(board.distToNextField(FieldType.POSITION_1, fieldIndex), 0, HUIUtils.MAX_FIELD);
+		encoded[i++] = HUIUtils.normalize(board.distToNextField(FieldType.POSITION_2, fieldIndex), 0, HUIUtils.MAX_FIELD);
+		encoded[i++] = HUIUtils.normalize(board.distToNextField(FieldType.SALAD, fieldIndex), 0, HUIUtils.MAX_FIELD);
+		encoded[i++] = HUIUtils.normalize(board.distToNextField(FieldType.GOAL, fieldIndex), 0, HUIUtils.MAX_FIELD);
+	}
+}
@@ -0,0 +1,232 @@
+package fwcd.sc18.geneticneural;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A fixed-capacity ring buffer of int rows (one per generation)
+ * stored in a memory-mapped file:
+ *
+ * <pre>
+ * int magic, int version, int capacity, int rowInts, long count, long reserved
+ * int[capacity * rowInts] rows
+ * </pre>
+ *
+ * <p>The count of appended rows acts as the write cursor: Row {@code i}
+ * is stored in slot {@code i % capacity} and the count is only
+ * incremented after the row has been written (separated by a fence). Appending is thus O(1)
+ * and a reader (possibly in another process) can detect rows that
+ * have been overwritten while it was reading them.</p>
+ *
+ * <p>A store may only be written by a single thread at a time.</p>
+ */
+public class StatsStore {
+	public static final int MAGIC = 0x48554953;
+	public static final int VERSION = 1;
+	private static final int COUNT_OFFSET = 16;
+	private static final int HEADER_BYTES = 32;
+
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final int rowInts;
+
+	private StatsStore(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		capacity = buffer.getInt(8);
+		rowInts = buffer.getInt(12);
+	}
+
+	/**
+	 * Opens the store for writing, creating it
+	 * with the given dimensions if it does not exist.
+	 */
+	public static StatsStore open(Path file, int capacity, int rowInts) throws IOException {
+		boolean exists = Files.exists(file);
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if (exists) {
+				MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+				validate(file, buffer, channel.size());
+
+				if (buffer.getInt(12) != rowInts) {
+					throw new IOException("The stats store " + file + " has rows of " + buffer.getInt(12) + " instead of " + rowInts + " ints");
+				}
+
+				return new StatsStore(buffer);
+			} else {
+				MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, byteSize(capacity, rowInts));
+				buffer.putInt(0, MAGIC);
+				buffer.putInt(4, VERSION);
+				buffer.putInt(8, capacity);
+				buffer.putInt(12, rowInts);
+				buffer.putLong(COUNT_OFFSET, 0);
+				return new StatsStore(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Maps an existing store for reading.
+	 */
+	public static StatsStore openReadOnly(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			validate(file, buffer, channel.size());
+			return new StatsStore(buffer);
+		}
+	}
+
+	/**
+	 * @return Whether the given file starts with the magic number of a stats store
+	 */
+	public static boolean isStatsStore(Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+			return channel.read(magic, 0) == Integer.BYTES && magic.getInt(0) == MAGIC;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static void validate(Path file, ByteBuffer buffer, long fileBytes) throws IOException {
+		if (fileBytes < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not a stats store");
+		} else if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported stats store version " + buffer.getInt(4) + " in " + file);
+		}
+
+		int capacity = buffer.getInt(8);
+		int rowInts = buffer.getInt(12);
+		if (capacity < 1 || rowInts < 1 || byteSize(capacity, rowInts) != fileBytes) {
+			throw new IOException("The stats store " + file + " is truncated or corrupted");
+		}
+	}
+
+	private static long byteSize(int capacity, int rowInts) {
+		return HEADER_BYTES + (long) Integer.BYTES * capacity * rowInts;
+	}
+
+	/**
+	 * Appends a row, overwriting the oldest one if the store is full.
+	 */
+	public void append(int[] row) {
+		if (row.length != rowInts) {
+			throw new IllegalArgumentException("Expected a row of " + rowInts + " ints, but got " + row.length);
+		}
+
+		long count = getCount();
+		int offset = rowOffset(count);
+
+		for (int i=0; i<rowInts; i++) {
+			buffer.putInt(offset + (i * Integer.BYTES), row[i]);
+		}
+
+		// Publishes the row
+		MemoryFences.fullFence();
+		buffer.putLong(COUNT_OFFSET, count + 1);
+	}
+
+	/**
+	 * Imports the rows of a legacy stats file (consecutive rows without a header),
+	 * keeping the most recent ones that fit into this store.
+	 */
+	public void importLegacy(Path legacyFile) throws IOException {
+		ByteBuffer legacy = ByteBuffer.wrap(Files.readAllBytes(legacyFile));
+		int rowBytes = rowInts * Integer.BYTES;
+		int rows = legacy.remaining() / rowBytes;
+		int[] row = new int[rowInts];
+
+		for (int r=Math.max(rows - capacity, 0); r<rows; r++) {
+			legacy.position(r * rowBytes);
+			for (int i=0; i<rowInts; i++) {
+				row[i] = legacy.getInt();
+			}
+			append(row);
+		}
+	}
+
+	/**
+	 * Reads the most recent rows directly from the mapped file, retrying
+	 * if some of them have been overwritten by a concurrent writer.
+	 * Since the oldest slot may be overwritten at any time, at most
+	 * {@code capacity - 1} rows are returned.
+	 *
+	 * <p>The retries are not bounded, since a writer can only overwrite
+	 * the rows being read by appending about {@code capacity} rows
+	 * during a single attempt.</p>
+	 *
+	 * @param maxRows - The maximum number of rows to read
+	 * @return The columns of the rows (oldest row first), indexed by [column][row]
+	 */
+	public int[][] readColumns(int maxRows) {
+		while (true) {
+			long count = getCount();
+			int[][] columns = readColumns(Math.max(count - Math.min(capacity - 1, maxRows), 0), count);
+			
+			if (columns != null) {
+				return columns;
+			}
+		}
+	}
+
+	/**
+	 * Reads the given range of rows directly from the mapped file.
+	 *
+	 * @param fromRow - The index of the first row (inclusive)
+	 * @param toRow - The index of the last row (exclusive), which may not exceed {@link #getCount()}
+	 * @return The columns of the rows indexed by [column][row] or null if some of them
+	 *         have been overwritten by a concurrent writer
+	 */
+	public int[][] readColumns(long fromRow, long toRow) {
+		if (fromRow < 0 || toRow < fromRow || (toRow - fromRow) >= capacity) {
+			throw new IllegalArgumentException("Invalid row range [" + fromRow + ", " + toRow + ")");
+		}
+		
+		int rows = (int) (toRow - fromRow);
+		int[][] columns = new int[rowInts][rows];
+		
+		for (int r=0; r<rows; r++) {
+			int offset = rowOffset(fromRow + r);
+			for (int i=0; i<rowInts; i++) {
+				columns[i][r] = buffer.getInt(offset + (i * Integer.BYTES));
+			}
+		}
+		
+		// While the count is c, the writer may be overwriting row c - capacity
+		MemoryFences.fullFence();
+		return (fromRow > getCount() - capacity) ? columns : null;
+	}
+
+	/**
+	 * Reads the count, followed by a fence, thus the rows
+	 * below the count can safely be read afterwards.
+	 *
+	 * @return The total number of rows appended so far
+	 */
+	public long getCount() {
+		long count = buffer.getLong(COUNT_OFFSET);
+		MemoryFences.fullFence();
+		return count;
+	}
+
+	public int getCapacity() { return capacity; }
+
+	public int getRowInts() { return rowInts; }
+
+	/**
+	 * Forces the written rows to the storage device.
+	 */
+	public void force() {
+		buffer.force();
+	}
+
+	private int rowOffset(long row) {
+		return HEADER_BYTES + (int) (row % capacity) * rowInts * Integer.BYTES;
+	}
+}
@@ -0,0 +1,216 @@
+package fwcd.sc18.geneticneural;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Live training metrics published through a small memory-mapped
+ * file, which any number of viewers (possibly in other processes)
+ * can read without locking:
+ *
+ * <pre>
+ * int magic, int version, long sequence, long timeMs, long matches,
+ * int generation, int individual, int streak, float fitness,
+ * float gamesPerSecond, float moveMicros
+ * </pre>
+ *
+ * <p>The metrics are guarded by a seqlock: The writer makes the
+ * sequence odd before and even again after an update, thus a
+ * reader retries if the sequence was odd or changed while it
+ * was reading.</p>
+ */
+public class TelemetryChannel {
+	public static final int MAGIC = 0x4855494D;
+	public static final int VERSION = 1;
+	private static final int SEQUENCE_OFFSET = 8;
+	private static final int TIME_OFFSET = 16;
+	private static final int MATCHES_OFFSET = 24;
+	private static final int GENERATION_OFFSET = 32;
+	private static final int INDIVIDUAL_OFFSET = 36;
+	private static final int STREAK_OFFSET = 40;
+	private static final int FITNESS_OFFSET = 44;
+	private static final int GAMES_PER_SECOND_OFFSET = 48;
+	private static final int MOVE_MICROS_OFFSET = 52;
+	private static final int BYTES = 64;
+	private static final int MAX_READ_ATTEMPTS = 64;
+
+	private final MappedByteBuffer buffer;
+	/** The sequence of the writer. */
+	private long sequence = 0;
+
+	private TelemetryChannel(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Creates (or takes over) the channel for publishing. The file
+	 * is never truncated, since viewers may still have it mapped.
+	 */
+	public static TelemetryChannel create(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			TelemetryChannel telemetry = new TelemetryChannel(channel.map(MapMode.READ_WRITE, 0, BYTES));
+			telemetry.sequence = telemetry.buffer.getLong(SEQUENCE_OFFSET) & ~1L;
+
+			telemetry.beginWrite();
+			telemetry.buffer.putInt(0, MAGIC);
+			telemetry.buffer.putInt(4, VERSION);
+			for (int offset=TIME_OFFSET; offset<BYTES; offset += Integer.BYTES) {
+				telemetry.buffer.putInt(offset, 0);
+			}
+			telemetry.endWrite();
+
+			return telemetry;
+		}
+	}
+
+	/**
+	 * Maps an existing channel for reading.
+	 */
+	public static TelemetryChannel open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < BYTES) {
+				throw new IOException(file + " is too short to be a telemetry channel");
+			}
+
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, BYTES);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a telemetry channel");
+			} else if (buffer.getInt(4) != VERSION) {
+				throw new IOException("Unsupported telemetry version " + buffer.getInt(4) + " in " + file);
+			}
+
+			return new TelemetryChannel(buffer);
+		}
+	}
+
+	/**
+	 * Publishes the metrics of an evaluated game.
+	 */
+	public synchronized void publishEvaluation(int generation, int individual, int streak, float fitness) {
+		beginWrite();
+		buffer.putInt(GENERATION_OFFSET, generation);
+		buffer.putInt(INDIVIDUAL_OFFSET, individual);
+		buffer.putInt(STREAK_OFFSET, streak);
+		buffer.putFloat(FITNESS_OFFSET, fitness);
+		endWrite();
+	}
+
+	/**
+	 * Publishes the throughput of the simulation.
+	 */
+	public synchronized void publishSimulation(long matches, float gamesPerSecond, float moveMicros) {
+		beginWrite();
+		buffer.putLong(MATCHES_OFFSET, matches);
+		buffer.putFloat(GAMES_PER_SECOND_OFFSET, gamesPerSecond);
+		buffer.putFloat(MOVE_MICROS_OFFSET, moveMicros);
+		endWrite();
+	}
+
+	private void beginWrite() {
+		sequence++;
+		buffer.putLong(SEQUENCE_OFFSET, sequence);
+		MemoryFences.fullFence();
+	}
+
+	private void endWrite() {
+		buffer.putLong(TIME_OFFSET, System.currentTimeMillis());
+		MemoryFences.fullFence();
+		sequence++;
+		buffer.putLong(SEQUENCE_OFFSET, sequence);
+	}
+
+	/**
+	 * Reads a consistent snapshot of the metrics.
+	 *
+	 * @return The snapshot or null if nothing has been published yet
+	 *         or the writer is (or died while) updating the metrics
+	 */
+	public Snapshot read() {
+		for (int attempt=0; attempt<MAX_READ_ATTEMPTS; attempt++) {
+			long before = buffer.getLong(SEQUENCE_OFFSET);
+			MemoryFences.fullFence();
+
+			if ((before & 1) == 0) {
+				Snapshot snapshot = new Snapshot(
+						buffer.getLong(TIME_OFFSET),
+						buffer.getLong(MATCHES_OFFSET),
+						buffer.getInt(GENERATION_OFFSET),
+						buffer.getInt(INDIVIDUAL_OFFSET),
+						buffer.getInt(STREAK_OFFSET),
+						buffer.getFloat(FITNESS_OFFSET),
+						buffer.getFloat(GAMES_PER_SECOND_OFFSET),
+						buffer.getFloat(MOVE_MICROS_OFFSET)
+				);
+				MemoryFences.fullFence();
+
+				if (buffer.getLong(SEQUENCE_OFFSET) == before) {
+					return snapshot.getTimeMs() == 0 ? null : snapshot;
+				}
+			}
+
+			Thread.yield();
+		}
+
+		return null;
+	}
+
+	/**
+	 * An immutable, consistent view of the published metrics.
+	 */
+	public static class Snapshot {
+		private final long timeMs;
+		private final long matches;
+		private final int generation;
+		private final int individual;
+		private final int streak;
+		private final float fitness;
+		private final float gamesPerSecond;
+		private final float moveMicros;
+
+		private Snapshot(long timeMs, long matches, int generation, int individual, int streak, float fitness, float gamesPerSecond, float moveMicros) {
+			this.timeMs = timeMs;
+			this.matches = matches;
+			this.generation = generation;
+			this.individual = individual;
+			this.streak = streak;
+			this.fitness = fitness;
+			this.gamesPerSecond = gamesPerSecond;
+			this.moveMicros = moveMicros;
+		}
+
+		/**
+		 * @return The (wall clock) time of the last update
+		 */
+		public long getTimeMs() { return timeMs; }
+
+		public long getMatches() { return matches; }
+
+		public int getGeneration() { return generation; }
+
+		public int getIndividual() { return individual; }
+
+		public int getStreak() { return streak; }
+
+		/**
+		 * @return The fitness after the last evaluated game
+		 */
+		public float getFitness() { return fitness; }
+
+		public float getGamesPerSecond() { return gamesPerSecond; }
+
+		/**
+		 * @return The average time a move of the trained logic takes
+		 */
+		public float getMoveMicros() { return moveMicros; }
+
+		@Override
+		public String toString() {
+			return String.format("Generation %d, individual %d, streak %d, fitness %.2f, %d matches, %.1f games/s, %.1f us/move",
+					generation, individual, streak, fitness, matches, gamesPerSecond, moveMicros);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package fwcd.sc18.mcts;
+
+import java.util.Random;
+
+import fwcd.sc18.evaluator.MoveEvaluator;
+import fwcd.sc18.packed.PackedMoves;
+import fwcd.sc18.packed.PackedState;
+import fwcd.sc18.utils.HUIUtils;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.shared.InvalidGameStateException;
+import sc.shared.InvalidMoveException;
+import sc.shared.PlayerColor;
+
+/**
+ * Plays the move rated best by a {@link MoveEvaluator}
+ * (epsilon-greedy, to keep the playouts diverse).
+ *
+ * <p>Considerably slower than random playouts, since every
+ * candidate move is performed on a plugin state.</p>
+ */
+public class EvaluatorPlayoutPolicy implements PlayoutPolicy {
+	private final MoveEvaluator evaluator;
+	private final float epsilon;
+
+	public EvaluatorPlayoutPolicy(MoveEvaluator evaluator) {
+		this(evaluator, 0.1F);
+	}
+
+	/**
+	 * @param evaluator - The (thread-safe) evaluator
+	 * @param epsilon - The probability of playing a random move instead
+	 */
+	public EvaluatorPlayoutPolicy(MoveEvaluator evaluator, float epsilon) {
+		this.evaluator = evaluator;
+		this.epsilon = epsilon;
+	}
+
+	@Override
+	public int select(PackedState state, GameState root, int[] moves, int count, Random random) {
+		if (count == 1 || random.nextFloat() < epsilon) {
+			return moves[random.nextInt(count)];
+		}
+
+		GameState before = state.toGameState(root);
+		PlayerColor color = state.getCurrentPlayerColor();
+		int bestMove = moves[0];
+		float bestRating = Float.NEGATIVE_INFINITY;
+
+		for (int i=0; i<count; i++) {
+			Move move = PackedMoves.toMove(moves[i]);
+
+			try {
+				float rating = evaluator.rate(move, color, before, HUIUtils.spawnChild(before, move), false);
+
+				if (rating > bestRating) {
+					bestRating = rating;
+					bestMove = moves[i];
+				}
+			} catch (InvalidMoveException | InvalidGameStateException e) {
+				// Generated moves are valid, thus this should never happen
+			}
+		}
+
+		return bestMove;
+	}
+}
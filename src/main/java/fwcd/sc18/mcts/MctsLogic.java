@@ -0,0 +1,279 @@
+package fwcd.sc18.mcts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fwcd.sc18.core.CopyableLogic;
+import fwcd.sc18.core.TemplateLogic;
+import fwcd.sc18.packed.PackedMoveGenerator;
+import fwcd.sc18.packed.PackedMoves;
+import fwcd.sc18.packed.PackedState;
+import fwcd.sc18.trainer.core.VirtualClient;
+
+import sc.plugin2018.AbstractClient;
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.plugin2018.Player;
+import sc.shared.PlayerColor;
+
+/**
+ * A Monte Carlo Tree Search logic using UCT that
+ * searches until it's per-move time budget runs out.
+ *
+ * <p>The search runs on all cores, either on a shared tree
+ * (using virtual losses to spread the threads) or on one
+ * tree per thread whose root statistics are merged. The
+ * subtree of the played moves is reused during the next turn.</p>
+ */
+public class MctsLogic extends TemplateLogic {
+	/**
+	 * The ways in which the search can be parallelized.
+	 */
+	public static enum Parallelism {
+		/** Every thread searches it's own tree, the root visits are summed up. */
+		ROOT,
+		/** All threads search a shared tree. */
+		TREE
+	}
+
+	private long moveTimeMs = 1500;
+	private float explorationConstant = (float) Math.sqrt(2);
+	private PlayoutPolicy playoutPolicy = new RandomPlayoutPolicy();
+	private Parallelism parallelMode = Parallelism.TREE;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private boolean reuseTree = true;
+	private ForkJoinPool pool = null;
+
+	private MctsNode[] roots = null;
+
+	public MctsLogic(VirtualClient client) {
+		super(client);
+	}
+
+	public MctsLogic(AbstractClient client) {
+		super(client);
+	}
+
+	@Override
+	public CopyableLogic copy(AbstractClient client) {
+		return new MctsLogic(client);
+	}
+
+	@Override
+	protected void onGameStart(GameState gameState) {
+		roots = null;
+	}
+
+	@Override
+	protected Move selectMove(GameState gameBeforeMove, Player me) {
+		List<Move> moves = gameBeforeMove.getPossibleMoves();
+		if (moves.size() == 1) {
+			roots = null;
+			return moves.get(0);
+		}
+
+		long deadline = System.currentTimeMillis() + moveTimeMs;
+		PackedState rootState = PackedState.of(gameBeforeMove);
+		int trees = (parallelMode == Parallelism.ROOT) ? parallelism : 1;
+		MctsNode[] searchRoots = new MctsNode[trees];
+		int reused = 0;
+
+		for (int i=0; i<trees; i++) {
+			MctsNode node = (reuseTree && roots != null && i < roots.length) ? roots[i].find(rootState) : null;
+
+			if (node == null) {
+				node = new MctsNode(rootState);
+			} else {
+				node.detach();
+				reused += node.getVisits();
+			}
+
+			searchRoots[i] = node;
+		}
+
+		AtomicLong iterations = new AtomicLong();
+		List<Callable<Void>> workers = new ArrayList<>();
+
+		for (int i=0; i<parallelism; i++) {
+			MctsNode root = searchRoots[i % trees];
+			workers.add(() -> {
+				iterations.addAndGet(search(root, gameBeforeMove, deadline));
+				return null;
+			});
+		}
+
+		if (parallelism > 1) {
+			getPool().invokeAll(workers);
+		} else {
+			iterations.addAndGet(search(searchRoots[0], gameBeforeMove, deadline));
+		}
+
+		int bestMove = selectMostVisited(searchRoots);
+		LOG.debug("MCTS ran {} playouts (reused {} visits)", iterations.get(), reused);
+
+		// Keep the subtrees of the played move for the next turn
+		roots = new MctsNode[trees];
+		for (int i=0; i<trees; i++) {
+			for (MctsNode child : searchRoots[i].getChildren()) {
+				if (child.getMove() == bestMove) {
+					roots[i] = child;
+				}
+			}
+			if (roots[i] == null) {
+				roots = null;
+				break;
+			}
+		}
+
+		for (Move move : moves) {
+			if (PackedMoves.of(move) == bestMove) {
+				return move;
+			}
+		}
+
+		LOG.warn("MCTS selected a move ({}) that the plugin did not generate", PackedMoves.toString(bestMove));
+		return moves.get(0);
+	}
+
+	/**
+	 * Runs playouts from the given root until the deadline is reached.
+	 *
+	 * @return The number of playouts
+	 */
+	private long search(MctsNode root, GameState rootGame, long deadline) {
+		Random random = ThreadLocalRandom.current();
+		int[] buffer = new int[PackedMoveGenerator.MAX_MOVES];
+		PackedState playout = new PackedState(root.getState());
+		long count = 0;
+
+		while (System.currentTimeMillis() < deadline) {
+			// Selection and expansion
+			MctsNode node = root;
+			node.addVirtualLoss();
+
+			while (!node.isTerminal()) {
+				MctsNode next = node.expand(buffer, random);
+				if (next == null) {
+					next = node.selectChild(explorationConstant);
+				}
+
+				next.addVirtualLoss();
+				node = next;
+
+				if (next.getVisits() == 0) {
+					break;
+				}
+			}
+
+			// Simulation
+			playout.copyFrom(node.getState());
+			while (!playout.isGameOver()) {
+				int moveCount = PackedMoveGenerator.generate(playout, buffer, 0);
+				playout.apply(playoutPolicy.select(playout, rootGame, buffer, moveCount, random));
+			}
+
+			// Backpropagation
+			PlayerColor winner = playout.getWinnerOrNull();
+			MctsNode current = node;
+			while (current != null) {
+				MctsNode parent = current.getParent();
+				float reward;
+
+				if (winner == null) {
+					reward = 0.5F;
+				} else if (parent == null) {
+					// The root is never selected, thus it's reward does not matter
+					reward = 0;
+				} else {
+					reward = (parent.getState().getCurrentPlayerColor() == winner) ? 1 : 0;
+				}
+
+				current.update(reward);
+				current = parent;
+			}
+
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Selects the root move with the most visits (summed over all trees).
+	 */
+	private int selectMostVisited(MctsNode[] searchRoots) {
+		Map<Integer, Integer> visits = new HashMap<>();
+
+		for (MctsNode root : searchRoots) {
+			for (MctsNode child : root.getChildren()) {
+				visits.merge(child.getMove(), child.getVisits(), Integer::sum);
+			}
+		}
+
+		int bestMove = 0;
+		int bestVisits = -1;
+
+		for (Map.Entry<Integer, Integer> entry : visits.entrySet()) {
+			if (entry.getValue() > bestVisits) {
+				bestVisits = entry.getValue();
+				bestMove = entry.getKey();
+			}
+		}
+
+		return bestMove;
+	}
+
+	private ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+
+		return pool;
+	}
+
+	/**
+	 * Sets the wall-clock time budget for a single move.
+	 */
+	public void setMoveTimeMs(long moveTimeMs) {
+		this.moveTimeMs = moveTimeMs;
+	}
+
+	/**
+	 * Sets the exploration constant of the UCT formula (sqrt(2) by default).
+	 */
+	public void setExplorationConstant(float explorationConstant) {
+		this.explorationConstant = explorationConstant;
+	}
+
+	public void setPlayoutPolicy(PlayoutPolicy playoutPolicy) {
+		this.playoutPolicy = playoutPolicy;
+	}
+
+	public void setParallelMode(Parallelism parallelMode) {
+		this.parallelMode = parallelMode;
+		roots = null;
+	}
+
+	/**
+	 * Sets the number of search threads.
+	 */
+	public void setParallelism(int parallelism) {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		this.parallelism = parallelism;
+		roots = null;
+	}
+
+	public void setReuseTree(boolean reuseTree) {
+		this.reuseTree = reuseTree;
+	}
+}
@@ -0,0 +1,165 @@
+package fwcd.sc18.mcts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import fwcd.sc18.packed.PackedMoveGenerator;
+import fwcd.sc18.packed.PackedState;
+
+/**
+ * A node of a Monte Carlo search tree. Stores the state
+ * after the move leading to it and the results of the
+ * playouts through it (from the perspective of the player
+ * who performed that move).
+ *
+ * <p>All accessors synchronize on the node, thus a tree
+ * may be searched by multiple threads at once. Running
+ * playouts are accounted for as virtual losses.</p>
+ */
+class MctsNode {
+	private static final int[] NO_MOVES = new int[0];
+
+	private MctsNode parent;
+	private final int move;
+	private final PackedState state;
+	private final List<MctsNode> children = new ArrayList<>();
+	private int[] untriedMoves = null;
+	private int untriedCount;
+	private int visits = 0;
+	private float wins = 0;
+	private int virtualLosses = 0;
+
+	/**
+	 * Creates a root node.
+	 */
+	MctsNode(PackedState state) {
+		this(null, 0, state);
+	}
+
+	private MctsNode(MctsNode parent, int move, PackedState state) {
+		this.parent = parent;
+		this.move = move;
+		this.state = state;
+	}
+
+	MctsNode getParent() { return parent; }
+
+	int getMove() { return move; }
+
+	PackedState getState() { return state; }
+
+	synchronized int getVisits() { return visits; }
+
+	synchronized float getWins() { return wins; }
+
+	synchronized List<MctsNode> getChildren() { return new ArrayList<>(children); }
+
+	/**
+	 * Turns this node into a root, allowing the
+	 * rest of the old tree to be garbage collected.
+	 */
+	synchronized void detach() {
+		parent = null;
+	}
+
+	boolean isTerminal() {
+		return state.isGameOver();
+	}
+
+	/**
+	 * Expands a random untried move if there is one.
+	 *
+	 * @return The new child or null if this node is fully expanded
+	 */
+	synchronized MctsNode expand(int[] buffer, Random random) {
+		if (untriedMoves == null) {
+			if (state.isGameOver()) {
+				untriedMoves = NO_MOVES;
+			} else {
+				untriedCount = PackedMoveGenerator.generate(state, buffer, 0);
+				untriedMoves = Arrays.copyOf(buffer, untriedCount);
+			}
+		}
+
+		if (untriedCount == 0) {
+			return null;
+		}
+
+		int i = random.nextInt(untriedCount);
+		int childMove = untriedMoves[i];
+		untriedMoves[i] = untriedMoves[--untriedCount];
+
+		PackedState childState = new PackedState(state);
+		childState.apply(childMove);
+
+		MctsNode child = new MctsNode(this, childMove, childState);
+		children.add(child);
+		return child;
+	}
+
+	/**
+	 * Selects the child with the highest upper confidence bound (UCT).
+	 */
+	synchronized MctsNode selectChild(float explorationConstant) {
+		double logVisits = Math.log(Math.max(1, visits + virtualLosses));
+		MctsNode best = null;
+		double bestBound = Double.NEGATIVE_INFINITY;
+
+		for (MctsNode child : children) {
+			double bound = child.upperConfidenceBound(logVisits, explorationConstant);
+			if (bound > bestBound) {
+				bestBound = bound;
+				best = child;
+			}
+		}
+
+		return best;
+	}
+
+	private synchronized double upperConfidenceBound(double parentLogVisits, float explorationConstant) {
+		int effectiveVisits = visits + virtualLosses;
+		if (effectiveVisits == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		return (wins / effectiveVisits) + (explorationConstant * Math.sqrt(parentLogVisits / effectiveVisits));
+	}
+
+	synchronized void addVirtualLoss() {
+		virtualLosses++;
+	}
+
+	/**
+	 * Records a playout result and removes the virtual loss.
+	 *
+	 * @param reward - The reward (between 0 and 1) of the player who moved into this node
+	 */
+	synchronized void update(float reward) {
+		virtualLosses--;
+		visits++;
+		wins += reward;
+	}
+
+	/**
+	 * Finds the node representing the given state
+	 * among the children and grandchildren.
+	 *
+	 * @return The node or null if it has not been expanded yet
+	 */
+	MctsNode find(PackedState target) {
+		for (MctsNode child : getChildren()) {
+			if (child.state.equals(target)) {
+				return child;
+			}
+			for (MctsNode grandchild : child.getChildren()) {
+				if (grandchild.state.equals(target)) {
+					return grandchild;
+				}
+			}
+		}
+
+		return null;
+	}
+}
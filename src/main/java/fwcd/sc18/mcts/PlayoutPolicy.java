@@ -0,0 +1,29 @@
+package fwcd.sc18.mcts;
+
+import java.util.Random;
+
+import fwcd.sc18.packed.PackedState;
+
+import sc.plugin2018.GameState;
+
+/**
+ * Picks the moves during the simulation (playout)
+ * phase of a Monte Carlo Tree Search.
+ *
+ * <p>Implementations are shared between the search
+ * threads and thus have to be thread-safe.</p>
+ */
+@FunctionalInterface
+public interface PlayoutPolicy {
+	/**
+	 * Selects one of the given packed moves.
+	 *
+	 * @param state - The state in which the move will be performed
+	 * @param root - A plugin state of the same game (may be used to convert the packed state)
+	 * @param moves - The generated moves
+	 * @param count - The number of generated moves
+	 * @param random - A random number generator owned by the calling thread
+	 * @return The selected move
+	 */
+	int select(PackedState state, GameState root, int[] moves, int count, Random random);
+}
@@ -0,0 +1,17 @@
+package fwcd.sc18.mcts;
+
+import java.util.Random;
+
+import fwcd.sc18.packed.PackedState;
+
+import sc.plugin2018.GameState;
+
+/**
+ * Plays uniformly random moves.
+ */
+public class RandomPlayoutPolicy implements PlayoutPolicy {
+	@Override
+	public int select(PackedState state, GameState root, int[] moves, int count, Random random) {
+		return moves[random.nextInt(count)];
+	}
+}
@@ -0,0 +1,78 @@
+package fwcd.sc18.packed;
+
+import fwcd.sc18.board.BitBoard;
+
+import sc.plugin2018.Board;
+import sc.plugin2018.FieldType;
+import sc.plugin2018.util.Constants;
+
+/**
+ * An immutable board that stores the field types
+ * as a byte array of {@link FieldType} ordinals.
+ * Boards can safely be shared between states and threads.
+ */
+public final class PackedBoard {
+	public static final int POSITION_1 = FieldType.POSITION_1.ordinal();
+	public static final int POSITION_2 = FieldType.POSITION_2.ordinal();
+	public static final int HEDGEHOG = FieldType.HEDGEHOG.ordinal();
+	public static final int SALAD = FieldType.SALAD.ordinal();
+	public static final int CARROT = FieldType.CARROT.ordinal();
+	public static final int HARE = FieldType.HARE.ordinal();
+	public static final int INVALID = FieldType.INVALID.ordinal();
+	public static final int GOAL = FieldType.GOAL.ordinal();
+	public static final int START = FieldType.START.ordinal();
+
+	private final byte[] types;
+	private final byte[] previousHedgehogs;
+	private final BitBoard bitBoard;
+
+	private PackedBoard(byte[] types) {
+		this.types = types;
+		previousHedgehogs = new byte[types.length];
+
+		FieldType[] allTypes = FieldType.values();
+		FieldType[] fieldTypes = new FieldType[types.length];
+		for (int i=0; i<types.length; i++) {
+			fieldTypes[i] = allTypes[types[i]];
+		}
+		bitBoard = BitBoard.of(fieldTypes);
+
+		int previous = -1;
+		for (int i=0; i<types.length; i++) {
+			previousHedgehogs[i] = (byte) previous;
+			if (types[i] == HEDGEHOG) {
+				previous = i;
+			}
+		}
+	}
+
+	public static PackedBoard of(Board board) {
+		byte[] types = new byte[Constants.NUM_FIELDS];
+
+		for (int i=0; i<types.length; i++) {
+			types[i] = (byte) board.getTypeAt(i).ordinal();
+		}
+
+		return new PackedBoard(types);
+	}
+
+	/**
+	 * @return The field type ordinal at the given index ({@link #INVALID} if out of bounds)
+	 */
+	public int typeAt(int index) {
+		return (index >= 0 && index < types.length) ? types[index] : INVALID;
+	}
+
+	/**
+	 * @return The index of the closest hedgehog field before the given index or -1 if there is none
+	 */
+	public int previousHedgehog(int index) {
+		return previousHedgehogs[index];
+	}
+
+	public BitBoard getBitBoard() { return bitBoard; }
+
+	public int size() {
+		return types.length;
+	}
+}
@@ -0,0 +1,132 @@
+package fwcd.sc18.packed;
+
+import static fwcd.sc18.packed.PackedPlayer.carrots;
+import static fwcd.sc18.packed.PackedPlayer.index;
+import static fwcd.sc18.packed.PackedPlayer.mustPlayCard;
+import static fwcd.sc18.packed.PackedPlayer.salads;
+
+/**
+ * An allocation-free move generator that writes packed moves
+ * (see {@link PackedMoves}) into a caller-provided buffer.
+ *
+ * <p>Generates exactly the moves of {@code GameState.getPossibleMoves()}
+ * in the same order.</p>
+ */
+public final class PackedMoveGenerator {
+	/** An upper bound for the number of moves in any position. */
+	public static final int MAX_MOVES = 256;
+
+	private PackedMoveGenerator() {}
+
+	/**
+	 * Writes the possible moves of the current player
+	 * into the given buffer, starting at the given offset.
+	 *
+	 * @return The number of generated moves
+	 */
+	public static int generate(PackedState state, int[] moves, int offset) {
+		PackedBoard board = state.getBoard();
+		long me = state.getCurrentPlayer();
+		long other = state.getOtherPlayer();
+		int count = offset;
+
+		if (PackedRules.isValidToEat(board, me)) {
+			moves[count] = PackedPlayer.EAT_SALAD;
+			return 1;
+		}
+
+		if (PackedRules.isValidToExchangeCarrots(board, me, 10)) {
+			moves[count++] = PackedPlayer.TAKE_TEN_CARROTS;
+		}
+		if (PackedRules.isValidToExchangeCarrots(board, me, -10)) {
+			moves[count++] = PackedPlayer.DROP_TEN_CARROTS;
+		}
+		if (PackedRules.isValidToFallBack(board, me, other)) {
+			moves[count++] = PackedPlayer.FALL_BACK;
+		}
+
+		if (!PackedRules.mustEatSalad(board, me)) {
+			// Only visit the fields that are not ruled out by the bitboard masks
+			int index = index(me);
+			int maxDistance = PackedRules.calculateMoveableFields(carrots(me));
+			long candidates = board.getBitBoard().getAdvanceCandidates(index, index(other), maxDistance, salads(me) > 0);
+
+			while (candidates != 0) {
+				int target = Long.numberOfTrailingZeros(candidates);
+				candidates &= candidates - 1;
+				count = addAdvance(board, me, other, target - index, moves, count);
+			}
+
+			if (index + maxDistance >= PackedState.GOAL_INDEX) {
+				count = addAdvance(board, me, other, PackedState.GOAL_INDEX - index, moves, count);
+			}
+		}
+
+		if (count == offset) {
+			moves[count++] = PackedMoves.SKIP;
+		}
+
+		return count - offset;
+	}
+
+	private static int addAdvance(PackedBoard board, long me, long other, int distance, int[] moves, int count) {
+		if (PackedRules.isValidToAdvance(board, me, other, distance)) {
+			long advanced = PackedRules.performAdvance(board, me, distance);
+			int move = PackedMoves.advance(distance);
+
+			if (mustPlayCard(advanced)) {
+				return addCardMoves(board, advanced, other, move, 0, moves, count);
+			} else {
+				moves[count] = move;
+				return count + 1;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Appends every valid card continuation of a move
+	 * (mirrors {@code GameState.checkForPlayableCards}).
+	 *
+	 * @return The new end of the buffer
+	 */
+	private static int addCardMoves(PackedBoard board, long me, long other, int move, int slot, int[] moves, int count) {
+		if (!mustPlayCard(me) || slot >= PackedMoves.MAX_CARDS) {
+			return count;
+		}
+
+		if (PackedRules.isValidToPlayEatSalad(board, me)) {
+			moves[count++] = PackedMoves.withCard(move, slot, PackedPlayer.CARD_EAT_SALAD);
+		}
+		if (PackedRules.isValidToPlayTakeOrDropCarrots(board, me, 20)) {
+			moves[count++] = PackedMoves.withCard(move, slot, PackedPlayer.CARD_TAKE_CARROTS);
+		}
+		if (PackedRules.isValidToPlayTakeOrDropCarrots(board, me, -20)) {
+			moves[count++] = PackedMoves.withCard(move, slot, PackedPlayer.CARD_DROP_CARROTS);
+		}
+		if (PackedRules.isValidToPlayTakeOrDropCarrots(board, me, 0)) {
+			moves[count++] = PackedMoves.withCard(move, slot, PackedPlayer.CARD_KEEP_CARROTS);
+		}
+		if (PackedRules.isValidToPlayHurryAhead(board, me, other)) {
+			count = addMovingCard(board, me, other, move, slot, PackedPlayer.CARD_HURRY_AHEAD, moves, count);
+		}
+		if (PackedRules.isValidToPlayFallBack(board, me, other)) {
+			count = addMovingCard(board, me, other, move, slot, PackedPlayer.CARD_FALL_BACK, moves, count);
+		}
+
+		return count;
+	}
+
+	private static int addMovingCard(PackedBoard board, long me, long other, int move, int slot, int card, int[] moves, int count) {
+		long played = PackedRules.performCard(board, me, other, card);
+		int withCard = PackedMoves.withCard(move, slot, card);
+
+		if (mustPlayCard(played)) {
+			return addCardMoves(board, played, other, withCard, slot + 1, moves, count);
+		} else {
+			moves[count] = withCard;
+			return count + 1;
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package fwcd.sc18.packed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sc.plugin2018.Action;
+import sc.plugin2018.Advance;
+import sc.plugin2018.Card;
+import sc.plugin2018.CardType;
+import sc.plugin2018.EatSalad;
+import sc.plugin2018.ExchangeCarrots;
+import sc.plugin2018.FallBack;
+import sc.plugin2018.Move;
+import sc.plugin2018.Skip;
+
+/**
+ * Static helpers for moves encoded as ints:
+ *
+ * <pre>
+ * bits  0 -  3: first action code (see {@link PackedPlayer})
+ * bits  4 -  9: advance distance
+ * bits 10 - 25: up to four card action codes (4 bits each, 0 terminates)
+ * </pre>
+ */
+public final class PackedMoves {
+	/** The action code of a skip (which is never stored as a last action). */
+	public static final int SKIP = 12;
+	public static final int MAX_CARDS = 4;
+
+	private static final int DISTANCE_SHIFT = 4;
+	private static final int CARDS_SHIFT = 10;
+	private static final int CODE_MASK = 0xF;
+	private static final int DISTANCE_MASK = 0x3F;
+
+	private PackedMoves() {}
+
+	public static int advance(int distance) {
+		return PackedPlayer.ADVANCE | (distance << DISTANCE_SHIFT);
+	}
+
+	public static int withCard(int move, int slot, int cardActionCode) {
+		return move | (cardActionCode << (CARDS_SHIFT + (slot * 4)));
+	}
+
+	public static int firstAction(int move) { return move & CODE_MASK; }
+
+	public static int distance(int move) { return (move >>> DISTANCE_SHIFT) & DISTANCE_MASK; }
+
+	/**
+	 * @return The card action code in the given slot or {@link PackedPlayer#NO_ACTION}
+	 */
+	public static int card(int move, int slot) { return (move >>> (CARDS_SHIFT + (slot * 4))) & CODE_MASK; }
+
+	/**
+	 * Converts a packed move into a plugin move.
+	 */
+	public static Move toMove(int move) {
+		List<Action> actions = new ArrayList<>();
+		int first = firstAction(move);
+
+		switch (first) {
+			case PackedPlayer.ADVANCE: actions.add(new Advance(distance(move), 0)); break;
+			case PackedPlayer.EAT_SALAD: actions.add(new EatSalad(0)); break;
+			case PackedPlayer.TAKE_TEN_CARROTS: actions.add(new ExchangeCarrots(10, 0)); break;
+			case PackedPlayer.DROP_TEN_CARROTS: actions.add(new ExchangeCarrots(-10, 0)); break;
+			case PackedPlayer.FALL_BACK: actions.add(new FallBack(0)); break;
+			case SKIP: actions.add(new Skip(0)); break;
+			default: throw new IllegalArgumentException("Invalid first action code " + first + " in move " + Integer.toHexString(move));
+		}
+
+		for (int slot=0; slot<MAX_CARDS; slot++) {
+			int card = card(move, slot);
+			if (card == PackedPlayer.NO_ACTION) {
+				break;
+			}
+
+			int order = actions.size();
+			switch (card) {
+				case PackedPlayer.CARD_EAT_SALAD: actions.add(new Card(CardType.EAT_SALAD, order)); break;
+				case PackedPlayer.CARD_FALL_BACK: actions.add(new Card(CardType.FALL_BACK, order)); break;
+				case PackedPlayer.CARD_HURRY_AHEAD: actions.add(new Card(CardType.HURRY_AHEAD, order)); break;
+				default: actions.add(new Card(CardType.TAKE_OR_DROP_CARROTS, PackedPlayer.carrotsOf(card), order)); break;
+			}
+		}
+
+		return new Move(actions);
+	}
+
+	/**
+	 * Converts a plugin move into a packed move.
+	 */
+	public static int of(Move move) {
+		List<Action> actions = new ArrayList<>(move.actions);
+		actions.sort(null);
+
+		int packed = 0;
+		for (int i=0; i<actions.size(); i++) {
+			Action action = actions.get(i);
+
+			if (i == 0) {
+				if (action instanceof Skip) {
+					packed = SKIP;
+				} else if (action instanceof Advance) {
+					packed = advance(((Advance) action).getDistance());
+				} else {
+					packed = PackedPlayer.actionCodeOf(action);
+				}
+			} else {
+				packed = withCard(packed, i - 1, PackedPlayer.actionCodeOf(action));
+			}
+		}
+
+		return packed;
+	}
+
+	public static String toString(int move) {
+		return toMove(move).toString();
+	}
+}
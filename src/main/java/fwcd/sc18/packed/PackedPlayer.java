@@ -0,0 +1,216 @@
+package fwcd.sc18.packed;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fwcd.sc18.utils.PluginAccess;
+
+import sc.plugin2018.Action;
+import sc.plugin2018.Advance;
+import sc.plugin2018.Card;
+import sc.plugin2018.CardType;
+import sc.plugin2018.EatSalad;
+import sc.plugin2018.ExchangeCarrots;
+import sc.plugin2018.FallBack;
+import sc.plugin2018.Player;
+
+/**
+ * Static helpers for players packed into a single long:
+ *
+ * <pre>
+ * bits  0 -  6: field index
+ * bits  7 - 22: carrots
+ * bits 23 - 25: salads
+ * bits 26 - 29: cards (one bit per {@link CardType} ordinal)
+ * bits 30 - 33: last non-skip action code
+ * bits 34 - 39: last advance distance
+ * bit       40: must play card
+ * </pre>
+ */
+public final class PackedPlayer {
+	// Action codes (shared with PackedMoves, numbered like the codes in ZobristHashing)
+	public static final int NO_ACTION = 0;
+	public static final int ADVANCE = 1;
+	public static final int EAT_SALAD = 2;
+	public static final int TAKE_TEN_CARROTS = 3;
+	public static final int DROP_TEN_CARROTS = 4;
+	public static final int FALL_BACK = 5;
+	public static final int CARD_TAKE_CARROTS = 6;
+	public static final int CARD_EAT_SALAD = 7;
+	public static final int CARD_FALL_BACK = 8;
+	public static final int CARD_HURRY_AHEAD = 9;
+	public static final int CARD_DROP_CARROTS = 10;
+	public static final int CARD_KEEP_CARROTS = 11;
+
+	private static final int INDEX_SHIFT = 0;
+	private static final int CARROTS_SHIFT = 7;
+	private static final int SALADS_SHIFT = 23;
+	private static final int CARDS_SHIFT = 26;
+	private static final int LAST_ACTION_SHIFT = 30;
+	private static final int DISTANCE_SHIFT = 34;
+	private static final int MUST_PLAY_CARD_SHIFT = 40;
+
+	private static final long INDEX_MASK = 0x7FL;
+	private static final long CARROTS_MASK = 0xFFFFL;
+	private static final long SALADS_MASK = 0x7L;
+	private static final long CARDS_MASK = 0xFL;
+	private static final long LAST_ACTION_MASK = 0xFL;
+	private static final long DISTANCE_MASK = 0x3FL;
+
+	private static final CardType[] CARD_TYPES = CardType.values();
+
+	private PackedPlayer() {}
+
+	public static long of(Player player) {
+		long packed = 0;
+		packed = withIndex(packed, player.getFieldIndex());
+		packed = withCarrots(packed, player.getCarrots());
+		packed = withSalads(packed, player.getSalads());
+
+		for (CardType card : player.getCards()) {
+			packed = withCards(packed, cards(packed) | cardBit(card));
+		}
+
+		Action lastAction = player.getLastNonSkipAction();
+		packed = withLastAction(packed, actionCodeOf(lastAction), (lastAction instanceof Advance) ? ((Advance) lastAction).getDistance() : 0);
+		return withMustPlayCard(packed, player.mustPlayCard());
+	}
+
+	/**
+	 * Writes a packed player into an existing plugin player.
+	 */
+	public static void writeTo(long packed, Player player) {
+		player.setFieldIndex(index(packed));
+		PluginAccess.setCarrots(player, carrots(packed));
+		PluginAccess.setSalads(player, salads(packed));
+
+		List<CardType> cards = new ArrayList<>();
+		for (CardType card : CARD_TYPES) {
+			if (ownsCard(packed, card.ordinal())) {
+				cards.add(card);
+			}
+		}
+
+		PluginAccess.setCards(player, cards);
+		player.setLastNonSkipAction(actionOf(lastAction(packed), lastDistance(packed)));
+		player.setMustPlayCard(mustPlayCard(packed));
+	}
+
+	public static int index(long packed) { return (int) ((packed >>> INDEX_SHIFT) & INDEX_MASK); }
+
+	public static int carrots(long packed) { return (int) ((packed >>> CARROTS_SHIFT) & CARROTS_MASK); }
+
+	public static int salads(long packed) { return (int) ((packed >>> SALADS_SHIFT) & SALADS_MASK); }
+
+	/**
+	 * @return A bit mask of the owned card types (indexed by ordinal)
+	 */
+	public static int cards(long packed) { return (int) ((packed >>> CARDS_SHIFT) & CARDS_MASK); }
+
+	public static boolean ownsCard(long packed, int cardOrdinal) { return (cards(packed) & (1 << cardOrdinal)) != 0; }
+
+	public static int lastAction(long packed) { return (int) ((packed >>> LAST_ACTION_SHIFT) & LAST_ACTION_MASK); }
+
+	public static int lastDistance(long packed) { return (int) ((packed >>> DISTANCE_SHIFT) & DISTANCE_MASK); }
+
+	public static boolean mustPlayCard(long packed) { return ((packed >>> MUST_PLAY_CARD_SHIFT) & 1L) != 0; }
+
+	public static boolean inGoal(long packed) { return index(packed) == PackedState.GOAL_INDEX; }
+
+	public static long withIndex(long packed, int index) { return with(packed, INDEX_SHIFT, INDEX_MASK, index); }
+
+	public static long withCarrots(long packed, int carrots) { return with(packed, CARROTS_SHIFT, CARROTS_MASK, carrots); }
+
+	public static long withSalads(long packed, int salads) { return with(packed, SALADS_SHIFT, SALADS_MASK, salads); }
+
+	public static long withCards(long packed, int cards) { return with(packed, CARDS_SHIFT, CARDS_MASK, cards); }
+
+	public static long withLastAction(long packed, int actionCode, int distance) {
+		return with(with(packed, LAST_ACTION_SHIFT, LAST_ACTION_MASK, actionCode), DISTANCE_SHIFT, DISTANCE_MASK, distance);
+	}
+
+	public static long withMustPlayCard(long packed, boolean mustPlayCard) {
+		return mustPlayCard ? (packed | (1L << MUST_PLAY_CARD_SHIFT)) : (packed & ~(1L << MUST_PLAY_CARD_SHIFT));
+	}
+
+	private static long with(long packed, int shift, long mask, int value) {
+		return (packed & ~(mask << shift)) | ((value & mask) << shift);
+	}
+
+	private static int cardBit(CardType card) {
+		return 1 << card.ordinal();
+	}
+
+	/**
+	 * @return The ordinal of the card type played by a card action code
+	 */
+	public static int cardOrdinalOf(int actionCode) {
+		switch (actionCode) {
+			case CARD_EAT_SALAD: return CardType.EAT_SALAD.ordinal();
+			case CARD_FALL_BACK: return CardType.FALL_BACK.ordinal();
+			case CARD_HURRY_AHEAD: return CardType.HURRY_AHEAD.ordinal();
+			default: return CardType.TAKE_OR_DROP_CARROTS.ordinal();
+		}
+	}
+
+	/**
+	 * @return The carrots gained by a take-or-drop card action code
+	 */
+	public static int carrotsOf(int actionCode) {
+		switch (actionCode) {
+			case CARD_TAKE_CARROTS: return 20;
+			case CARD_DROP_CARROTS: return -20;
+			default: return 0;
+		}
+	}
+
+	/**
+	 * Encodes the (rule-relevant) type of an action as a small integer.
+	 */
+	public static int actionCodeOf(Action action) {
+		if (action == null) {
+			return NO_ACTION;
+		} else if (action instanceof Advance) {
+			return ADVANCE;
+		} else if (action instanceof EatSalad) {
+			return EAT_SALAD;
+		} else if (action instanceof ExchangeCarrots) {
+			return ((ExchangeCarrots) action).getValue() > 0 ? TAKE_TEN_CARROTS : DROP_TEN_CARROTS;
+		} else if (action instanceof FallBack) {
+			return FALL_BACK;
+		} else if (action instanceof Card) {
+			Card card = (Card) action;
+
+			switch (card.getType()) {
+				case EAT_SALAD: return CARD_EAT_SALAD;
+				case FALL_BACK: return CARD_FALL_BACK;
+				case HURRY_AHEAD: return CARD_HURRY_AHEAD;
+				default:
+					int value = card.getValue();
+					return value > 0 ? CARD_TAKE_CARROTS : (value < 0 ? CARD_DROP_CARROTS : CARD_KEEP_CARROTS);
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown action type: " + action.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * Creates a plugin action from an action code.
+	 *
+	 * @return The action or null if the code is {@link #NO_ACTION}
+	 */
+	public static Action actionOf(int actionCode, int distance) {
+		switch (actionCode) {
+			case NO_ACTION: return null;
+			case ADVANCE: return new Advance(distance);
+			case EAT_SALAD: return new EatSalad();
+			case TAKE_TEN_CARROTS: return new ExchangeCarrots(10);
+			case DROP_TEN_CARROTS: return new ExchangeCarrots(-10);
+			case FALL_BACK: return new FallBack();
+			case CARD_EAT_SALAD: return new Card(CardType.EAT_SALAD);
+			case CARD_FALL_BACK: return new Card(CardType.FALL_BACK);
+			case CARD_HURRY_AHEAD: return new Card(CardType.HURRY_AHEAD);
+			default: return new Card(CardType.TAKE_OR_DROP_CARROTS, carrotsOf(actionCode), 0);
+		}
+	}
+}
@@ -0,0 +1,272 @@
+package fwcd.sc18.packed;
+
+import static fwcd.sc18.packed.PackedPlayer.carrots;
+import static fwcd.sc18.packed.PackedPlayer.index;
+import static fwcd.sc18.packed.PackedPlayer.lastAction;
+import static fwcd.sc18.packed.PackedPlayer.ownsCard;
+import static fwcd.sc18.packed.PackedPlayer.salads;
+
+import sc.plugin2018.CardType;
+import sc.plugin2018.util.GameRuleLogic;
+
+/**
+ * The game rules operating on packed players. Mirrors
+ * {@link GameRuleLogic} and the perform methods of the
+ * plugin actions (including their quirks), but never allocates.
+ *
+ * <p>"me" always refers to the current player and "other"
+ * to it's opponent.</p>
+ */
+public final class PackedRules {
+	private static final int TAKE_OR_DROP_CARROTS = CardType.TAKE_OR_DROP_CARROTS.ordinal();
+	private static final int EAT_SALAD = CardType.EAT_SALAD.ordinal();
+	private static final int FALL_BACK = CardType.FALL_BACK.ordinal();
+	private static final int HURRY_AHEAD = CardType.HURRY_AHEAD.ordinal();
+
+	private PackedRules() {}
+
+	public static int calculateCarrots(int distance) {
+		return (distance * (distance + 1)) / 2;
+	}
+
+	public static int calculateMoveableFields(int carrots) {
+		if (carrots >= 990) {
+			return 44;
+		} else if (carrots < 1) {
+			return 0;
+		} else {
+			return (int) (Math.sqrt((2.0 * carrots) + 0.25) - 0.48);
+		}
+	}
+
+	public static boolean isOccupied(int field, long me, long other) {
+		return (index(me) == field || index(other) == field) && field != PackedState.GOAL_INDEX;
+	}
+
+	public static boolean isFirst(long me, long other) {
+		boolean first = index(other) <= index(me);
+
+		if (PackedPlayer.inGoal(me) && index(other) == index(me)) {
+			first = first && carrots(me) < carrots(other);
+		}
+
+		return first;
+	}
+
+	public static boolean canEnterGoal(long me) {
+		return carrots(me) <= 10 && salads(me) == 0;
+	}
+
+	public static boolean mustEatSalad(PackedBoard board, long me) {
+		if (board.typeAt(index(me)) == PackedBoard.SALAD) {
+			int last = lastAction(me);
+			return last == PackedPlayer.ADVANCE
+					|| last == PackedPlayer.CARD_FALL_BACK
+					|| last == PackedPlayer.CARD_HURRY_AHEAD;
+		}
+
+		return false;
+	}
+
+	public static boolean playerMustAdvance(PackedBoard board, long me) {
+		int type = board.typeAt(index(me));
+		if (type == PackedBoard.HEDGEHOG || type == PackedBoard.START) {
+			return true;
+		}
+
+		int last = lastAction(me);
+		return last == PackedPlayer.EAT_SALAD
+				|| last == PackedPlayer.CARD_EAT_SALAD
+				|| last == PackedPlayer.CARD_TAKE_CARROTS
+				|| last == PackedPlayer.CARD_DROP_CARROTS
+				|| last == PackedPlayer.CARD_KEEP_CARROTS;
+	}
+
+	public static boolean isValidToAdvance(PackedBoard board, long me, long other, int distance) {
+		if (distance <= 0 || mustEatSalad(board, me)) {
+			return false;
+		}
+
+		int cost = calculateCarrots(distance);
+		int target = index(me) + distance;
+		boolean valid = cost <= carrots(me) && !isOccupied(target, me, other);
+		int type = board.typeAt(target);
+
+		if (type == PackedBoard.INVALID || type == PackedBoard.HEDGEHOG) {
+			return false;
+		} else if (type == PackedBoard.SALAD) {
+			return valid && salads(me) > 0;
+		} else if (type == PackedBoard.HARE) {
+			long advanced = PackedPlayer.withLastAction(me, PackedPlayer.ADVANCE, distance);
+			advanced = PackedPlayer.withIndex(advanced, target);
+			advanced = PackedPlayer.withCarrots(advanced, carrots(me) - cost);
+			return valid && canPlayAnyCard(board, advanced, other);
+		} else if (type == PackedBoard.GOAL) {
+			return valid && (carrots(me) - cost) <= 10 && salads(me) == 0;
+		} else {
+			return valid;
+		}
+	}
+
+	public static boolean isValidToEat(PackedBoard board, long me) {
+		return board.typeAt(index(me)) == PackedBoard.SALAD
+				&& salads(me) > 0
+				&& !playerMustAdvance(board, me);
+	}
+
+	public static boolean isValidToExchangeCarrots(PackedBoard board, long me, int carrots) {
+		boolean onCarrotField = board.typeAt(index(me)) == PackedBoard.CARROT;
+
+		if (carrots == 10) {
+			return onCarrotField;
+		} else if (carrots == -10) {
+			return carrots(me) >= 10 && onCarrotField;
+		} else {
+			return false;
+		}
+	}
+
+	public static boolean isValidToFallBack(PackedBoard board, long me, long other) {
+		if (mustEatSalad(board, me)) {
+			return false;
+		}
+
+		int target = board.previousHedgehog(index(me));
+		return target != -1 && !isOccupied(target, me, other);
+	}
+
+	private static boolean mayPlayCard(PackedBoard board, long me, int cardOrdinal) {
+		return !playerMustAdvance(board, me)
+				&& board.typeAt(index(me)) == PackedBoard.HARE
+				&& ownsCard(me, cardOrdinal);
+	}
+
+	public static boolean isValidToPlayEatSalad(PackedBoard board, long me) {
+		return mayPlayCard(board, me, EAT_SALAD) && salads(me) > 0;
+	}
+
+	public static boolean isValidToPlayTakeOrDropCarrots(PackedBoard board, long me, int carrots) {
+		boolean valid = mayPlayCard(board, me, TAKE_OR_DROP_CARROTS) && (carrots == 20 || carrots == -20 || carrots == 0);
+
+		if (carrots < 0) {
+			valid = valid && (carrots(me) + carrots) >= 0;
+		}
+
+		return valid;
+	}
+
+	public static boolean isValidToPlayFallBack(PackedBoard board, long me, long other) {
+		boolean valid = mayPlayCard(board, me, FALL_BACK) && isFirst(me, other);
+		int target = index(other) - 1;
+
+		if (target == 0) {
+			return false;
+		}
+
+		int type = board.typeAt(target);
+
+		if (type == PackedBoard.INVALID || type == PackedBoard.HEDGEHOG) {
+			return false;
+		} else if (type == PackedBoard.SALAD) {
+			return valid && salads(me) > 0;
+		} else if (type == PackedBoard.HARE) {
+			// The plugin checks the follow-up cards without moving the player
+			return valid && canPlayAnyCard(board, playedCard(me, PackedPlayer.CARD_FALL_BACK), other);
+		} else if (type == PackedBoard.GOAL) {
+			throw new IllegalStateException("Unknown Type GOAL");
+		} else {
+			return valid;
+		}
+	}
+
+	public static boolean isValidToPlayHurryAhead(PackedBoard board, long me, long other) {
+		boolean valid = mayPlayCard(board, me, HURRY_AHEAD) && !isFirst(me, other);
+		int type = board.typeAt(index(other) + 1);
+
+		if (type == PackedBoard.INVALID || type == PackedBoard.HEDGEHOG) {
+			return false;
+		} else if (type == PackedBoard.SALAD) {
+			return valid && salads(me) > 0;
+		} else if (type == PackedBoard.HARE) {
+			// The plugin checks the follow-up cards without moving the player
+			return valid && canPlayAnyCard(board, playedCard(me, PackedPlayer.CARD_HURRY_AHEAD), other);
+		} else if (type == PackedBoard.GOAL) {
+			return valid && canEnterGoal(me);
+		} else {
+			return valid;
+		}
+	}
+
+	public static boolean canPlayAnyCard(PackedBoard board, long me, long other) {
+		return (ownsCard(me, EAT_SALAD) && isValidToPlayEatSalad(board, me))
+				|| (ownsCard(me, FALL_BACK) && isValidToPlayFallBack(board, me, other))
+				|| (ownsCard(me, HURRY_AHEAD) && isValidToPlayHurryAhead(board, me, other))
+				|| (ownsCard(me, TAKE_OR_DROP_CARROTS) && isValidToPlayTakeOrDropCarrots(board, me, 20));
+	}
+
+	/**
+	 * Marks a card as played (without applying it's effect).
+	 */
+	private static long playedCard(long me, int cardActionCode) {
+		int cards = PackedPlayer.cards(me) & ~(1 << PackedPlayer.cardOrdinalOf(cardActionCode));
+		return PackedPlayer.withLastAction(PackedPlayer.withCards(me, cards), cardActionCode, 0);
+	}
+
+	public static long performAdvance(PackedBoard board, long me, int distance) {
+		int target = index(me) + distance;
+		long advanced = PackedPlayer.withCarrots(me, carrots(me) - calculateCarrots(distance));
+		advanced = PackedPlayer.withIndex(advanced, target);
+
+		if (board.typeAt(target) == PackedBoard.HARE) {
+			advanced = PackedPlayer.withMustPlayCard(advanced, true);
+		}
+
+		return PackedPlayer.withLastAction(advanced, PackedPlayer.ADVANCE, distance);
+	}
+
+	public static long performEatSalad(long me, long other) {
+		long fed = PackedPlayer.withSalads(me, salads(me) - 1);
+		fed = PackedPlayer.withCarrots(fed, carrots(fed) + ((index(me) > index(other)) ? 10 : 30));
+		return PackedPlayer.withLastAction(fed, PackedPlayer.EAT_SALAD, 0);
+	}
+
+	public static long performExchangeCarrots(long me, int actionCode) {
+		int carrots = (actionCode == PackedPlayer.TAKE_TEN_CARROTS) ? 10 : -10;
+		return PackedPlayer.withLastAction(PackedPlayer.withCarrots(me, carrots(me) + carrots), actionCode, 0);
+	}
+
+	public static long performFallBack(PackedBoard board, long me) {
+		int from = index(me);
+		int target = board.previousHedgehog(from);
+		long fallen = PackedPlayer.withIndex(me, target);
+		fallen = PackedPlayer.withCarrots(fallen, carrots(me) + (10 * (from - target)));
+		return PackedPlayer.withLastAction(fallen, PackedPlayer.FALL_BACK, 0);
+	}
+
+	public static long performCard(PackedBoard board, long me, long other, int cardActionCode) {
+		long played = PackedPlayer.withMustPlayCard(me, false);
+
+		switch (cardActionCode) {
+			case PackedPlayer.CARD_EAT_SALAD:
+				played = PackedPlayer.withSalads(played, salads(played) - 1);
+				played = PackedPlayer.withCarrots(played, carrots(played) + (isFirst(played, other) ? 10 : 30));
+				break;
+			case PackedPlayer.CARD_FALL_BACK:
+				played = moveToCardTarget(board, played, index(other) - 1);
+				break;
+			case PackedPlayer.CARD_HURRY_AHEAD:
+				played = moveToCardTarget(board, played, index(other) + 1);
+				break;
+			default:
+				played = PackedPlayer.withCarrots(played, carrots(played) + PackedPlayer.carrotsOf(cardActionCode));
+				break;
+		}
+
+		return playedCard(played, cardActionCode);
+	}
+
+	private static long moveToCardTarget(PackedBoard board, long me, int target) {
+		long moved = PackedPlayer.withIndex(me, target);
+		return (board.typeAt(target) == PackedBoard.HARE) ? PackedPlayer.withMustPlayCard(moved, true) : moved;
+	}
+}
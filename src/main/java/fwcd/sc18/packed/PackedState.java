@@ -0,0 +1,202 @@
+package fwcd.sc18.packed;
+
+import fwcd.sc18.utils.HUIException;
+import fwcd.sc18.utils.PluginAccess;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.plugin2018.util.Constants;
+import sc.shared.PlayerColor;
+
+/**
+ * A compact, mutable game state consisting of two packed
+ * players (see {@link PackedPlayer}), the turn and the current
+ * player packed into a third long and a shared, immutable board.
+ *
+ * <p>Copying a state only copies three longs and a reference,
+ * thus searches can cheaply save and restore states.</p>
+ */
+public final class PackedState {
+	public static final int GOAL_INDEX = Constants.NUM_FIELDS - 1;
+	public static final int MAX_TURN = Constants.ROUND_LIMIT * 2;
+
+	private static final long TURN_MASK = 0xFFL;
+	private static final long BLUE_TO_MOVE_BIT = 1L << 8;
+
+	private final PackedBoard board;
+	private long red;
+	private long blue;
+	private long status;
+
+	public PackedState(PackedBoard board, long red, long blue, int turn, boolean blueToMove) {
+		this.board = board;
+		this.red = red;
+		this.blue = blue;
+		status = turn | (blueToMove ? BLUE_TO_MOVE_BIT : 0);
+	}
+
+	/**
+	 * Copy constructor (sharing the board).
+	 */
+	public PackedState(PackedState other) {
+		board = other.board;
+		red = other.red;
+		blue = other.blue;
+		status = other.status;
+	}
+
+	public static PackedState of(GameState state) {
+		return new PackedState(
+				PackedBoard.of(state.getBoard()),
+				PackedPlayer.of(state.getPlayer(PlayerColor.RED)),
+				PackedPlayer.of(state.getPlayer(PlayerColor.BLUE)),
+				state.getTurn(),
+				state.getCurrentPlayerColor() == PlayerColor.BLUE
+		);
+	}
+
+	/**
+	 * Converts this state back into a plugin state by
+	 * writing it into a copy of the given state, which should
+	 * use the same board. The last move is taken from the template.
+	 */
+	public GameState toGameState(GameState template) {
+		GameState state;
+		try {
+			state = template.clone();
+		} catch (CloneNotSupportedException e) {
+			throw new HUIException(e);
+		}
+
+		PluginAccess.setTurn(state, getTurn());
+		PluginAccess.setCurrentPlayer(state, getCurrentPlayerColor());
+		PackedPlayer.writeTo(red, state.getPlayer(PlayerColor.RED));
+		PackedPlayer.writeTo(blue, state.getPlayer(PlayerColor.BLUE));
+		return state;
+	}
+
+	public void copyFrom(PackedState other) {
+		if (other.board != board) {
+			throw new IllegalArgumentException("Can not copy a state with a different board");
+		}
+
+		red = other.red;
+		blue = other.blue;
+		status = other.status;
+	}
+
+	public PackedBoard getBoard() { return board; }
+
+	public long getRed() { return red; }
+
+	public long getBlue() { return blue; }
+
+	public int getTurn() { return (int) (status & TURN_MASK); }
+
+	public int getRound() { return getTurn() / 2; }
+
+	public boolean isBlueToMove() { return (status & BLUE_TO_MOVE_BIT) != 0; }
+
+	public PlayerColor getCurrentPlayerColor() { return isBlueToMove() ? PlayerColor.BLUE : PlayerColor.RED; }
+
+	public long getPlayer(PlayerColor color) { return (color == PlayerColor.RED) ? red : blue; }
+
+	public long getCurrentPlayer() { return isBlueToMove() ? blue : red; }
+
+	public long getOtherPlayer() { return isBlueToMove() ? red : blue; }
+
+	public boolean isGameOver() {
+		return getRound() >= Constants.ROUND_LIMIT || PackedPlayer.inGoal(red) || PackedPlayer.inGoal(blue);
+	}
+
+	/**
+	 * Determines the winner like {@code HUIUtils.getWinnerOrNull}.
+	 */
+	public PlayerColor getWinnerOrNull() {
+		if (getRound() >= Constants.ROUND_LIMIT) {
+			return PackedPlayer.index(red) > PackedPlayer.index(blue) ? PlayerColor.RED : PlayerColor.BLUE;
+		} else if (PackedPlayer.inGoal(red)) {
+			return PlayerColor.RED;
+		} else if (PackedPlayer.inGoal(blue)) {
+			return PlayerColor.BLUE;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Performs a move that has been generated for this
+	 * state by {@link PackedMoveGenerator} (the move itself is
+	 * not validated).
+	 *
+	 * @return Whether the move could be performed (false if the turn limit is reached)
+	 */
+	public boolean apply(int move) {
+		int turn = getTurn();
+		if (turn >= MAX_TURN) {
+			return false;
+		}
+
+		long me = getCurrentPlayer();
+		long other = getOtherPlayer();
+
+		switch (PackedMoves.firstAction(move)) {
+			case PackedPlayer.ADVANCE: me = PackedRules.performAdvance(board, me, PackedMoves.distance(move)); break;
+			case PackedPlayer.EAT_SALAD: me = PackedRules.performEatSalad(me, other); break;
+			case PackedPlayer.TAKE_TEN_CARROTS: me = PackedRules.performExchangeCarrots(me, PackedPlayer.TAKE_TEN_CARROTS); break;
+			case PackedPlayer.DROP_TEN_CARROTS: me = PackedRules.performExchangeCarrots(me, PackedPlayer.DROP_TEN_CARROTS); break;
+			case PackedPlayer.FALL_BACK: me = PackedRules.performFallBack(board, me); break;
+			default: break; // Skip
+		}
+
+		for (int slot=0; slot<PackedMoves.MAX_CARDS; slot++) {
+			int card = PackedMoves.card(move, slot);
+			if (card == PackedPlayer.NO_ACTION) {
+				break;
+			}
+			me = PackedRules.performCard(board, me, other, card);
+		}
+
+		// Switch the current player and award the position bonus to it
+		int nextType = board.typeAt(PackedPlayer.index(other));
+
+		if (PackedRules.isFirst(other, me) && nextType == PackedBoard.POSITION_1) {
+			other = PackedPlayer.withCarrots(other, PackedPlayer.carrots(other) + 10);
+		} else if (PackedRules.isFirst(me, other) && nextType == PackedBoard.POSITION_2) {
+			other = PackedPlayer.withCarrots(other, PackedPlayer.carrots(other) + 30);
+		}
+
+		if (isBlueToMove()) {
+			blue = me;
+			red = other;
+		} else {
+			red = me;
+			blue = other;
+		}
+
+		turn++;
+		status = turn | (((turn % 2) != 0) ? BLUE_TO_MOVE_BIT : 0);
+		return true;
+	}
+
+	/**
+	 * Performs a plugin move (converting it first).
+	 */
+	public boolean apply(Move move) {
+		return apply(PackedMoves.of(move));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PackedState)) {
+			return false;
+		}
+		PackedState other = (PackedState) obj;
+		return red == other.red && blue == other.blue && status == other.status;
+	}
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(red * 31 + blue) * 31 + Long.hashCode(status);
+	}
+}
@@ -0,0 +1,112 @@
+package fwcd.sc18.trainer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import fwcd.sc18.geneticneural.GeneticNeuralLogic;
+import fwcd.sc18.geneticneural.GeneticStrategy;
+import fwcd.sc18.geneticneural.Population;
+import fwcd.sc18.geneticneural.SoloStreakStrategy;
+import fwcd.sc18.geneticneural.TelemetryChannel;
+import fwcd.sc18.trainer.distributed.TrainingCoordinator;
+import fwcd.sc18.trainer.distributed.TrainingWorker;
+
+/**
+ * Trains the population of the current folder using workers
+ * that may run on other machines. Usage:
+ *
+ * <ul>
+ * <li>{@code coordinator <port>} - Owns the population and waits for workers</li>
+ * <li>{@code worker <host> <port> [slots]} - Evaluates individuals (one connection per slot)</li>
+ * <li>{@code local <workers> [port]} - Runs a coordinator and the given number of worker processes on this machine</li>
+ * </ul>
+ */
+public class DistributedTrainerMain {
+	public static void main(String[] args) throws IOException {
+		String mode = (args.length > 0) ? args[0] : "";
+
+		switch (mode) {
+			case "coordinator":
+				runCoordinator(Integer.parseInt(args[1]), 0);
+				break;
+			case "worker":
+				runWorkers(args[1], Integer.parseInt(args[2]), (args.length > 3) ? Integer.parseInt(args[3]) : 1);
+				break;
+			case "local":
+				runCoordinator((args.length > 2) ? Integer.parseInt(args[2]) : 0, Integer.parseInt(args[1]));
+				break;
+			default:
+				System.out.println("Usage: coordinator <port> | worker <host> <port> [slots] | local <workers> [port]");
+				break;
+		}
+	}
+
+	private static void runCoordinator(int port, int localWorkers) throws IOException {
+		GeneticStrategy strategy = new SoloStreakStrategy();
+		Population population = GeneticNeuralLogic.newSharedPopulation(strategy, 0);
+		population.setTelemetry(TelemetryChannel.create(Paths.get(".", "Telemetry.bin")));
+		TrainingCoordinator coordinator = new TrainingCoordinator(population, strategy, port);
+		List<Process> processes = new ArrayList<>();
+		Thread coordinatorThread = new Thread(coordinator::run, "Coordinator");
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			try {
+				System.out.println("Waiting for shutdown...");
+				coordinator.close();
+				coordinatorThread.join();
+				coordinator.getPopulation().flush();
+
+				for (Process process : processes) {
+					if (!process.waitFor(10, TimeUnit.SECONDS)) {
+						process.destroy();
+					}
+				}
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}));
+
+		coordinatorThread.start();
+
+		for (int i=0; i<localWorkers; i++) {
+			processes.add(startWorkerProcess(coordinator.getPort()));
+		}
+	}
+
+	private static Process startWorkerProcess(int port) {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		ProcessBuilder builder = new ProcessBuilder(
+				java,
+				"-cp", System.getProperty("java.class.path"),
+				DistributedTrainerMain.class.getName(),
+				"worker", "localhost", Integer.toString(port)
+		);
+
+		try {
+			return builder.inheritIO().start();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void runWorkers(String host, int port, int slots) {
+		List<TrainingWorker> workers = new ArrayList<>();
+
+		for (int i=0; i<slots; i++) {
+			TrainingWorker worker = new TrainingWorker(host, port);
+			workers.add(worker);
+			new Thread(worker::run, "Worker-" + i).start();
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			for (TrainingWorker worker : workers) {
+				worker.stop();
+			}
+		}));
+	}
+}
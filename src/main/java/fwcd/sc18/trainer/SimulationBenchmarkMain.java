@@ -0,0 +1,57 @@
+package fwcd.sc18.trainer;
+
+import fwcd.sc18.geneticneural.GeneticNeuralLogic;
+import fwcd.sc18.trainer.core.GameSimulator;
+import fwcd.sc18.trainer.core.SimulationStats;
+import fwcd.sc18.utils.HUIUtils;
+
+import sc.player2018.SimpleLogic;
+
+/**
+ * Compares the games per second of the regular and the
+ * lean simulation mode (see {@link GameSimulator#setLean(boolean)}).
+ */
+public class SimulationBenchmarkMain {
+	/**
+	 * @param args - Optionally the number of matches per measurement (defaults to 500)
+	 */
+	public static void main(String[] args) {
+		int matches = (args.length > 0) ? Integer.parseInt(args[0]) : 500;
+		float[] weights = HUIUtils.generateWeights(GeneticNeuralLogic.getLayerSizes());
+
+		GameSimulator.LogicConstructor simple = SimpleLogic::new;
+		GameSimulator.LogicConstructor neural = client -> new GeneticNeuralLogic(client, weights);
+
+		System.out.println("SimpleLogic vs SimpleLogic");
+		compare(simple, simple, matches);
+		System.out.println("GeneticNeuralLogic vs SimpleLogic");
+		compare(neural, simple, matches);
+	}
+
+	private static void compare(GameSimulator.LogicConstructor a, GameSimulator.LogicConstructor b, int matches) {
+		// Warm up both paths before measuring
+		measure(a, b, matches / 5, false);
+		measure(a, b, matches / 5, true);
+
+		float regular = measure(a, b, matches, false);
+		float lean = measure(a, b, matches, true);
+
+		System.out.printf("  Regular: %.2f games/s%n", regular);
+		System.out.printf("  Lean:    %.2f games/s (%.2fx)%n", lean, lean / regular);
+	}
+
+	/**
+	 * @return The games per second
+	 */
+	private static float measure(GameSimulator.LogicConstructor a, GameSimulator.LogicConstructor b, int matches, boolean lean) {
+		GameSimulator simulator = new GameSimulator(a, b, matches);
+		SimulationStats stats = new SimulationStats();
+
+		simulator.setLean(lean);
+		simulator.addMatchListener(stats);
+		stats.reset();
+		simulator.run();
+
+		return stats.getGamesPerSecond();
+	}
+}
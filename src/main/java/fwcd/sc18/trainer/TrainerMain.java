@@ -7,18 +7,40 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import fwcd.sc18.geneticneural.GeneticNeuralLogic;
-import fwcd.sc18.trainer.core.GameSimulator;
+import fwcd.sc18.geneticneural.GeneticStrategy;
+import fwcd.sc18.geneticneural.Population;
+import fwcd.sc18.geneticneural.SoloStreakStrategy;
+import fwcd.sc18.geneticneural.TelemetryChannel;
+import fwcd.sc18.trainer.core.ParallelGameSimulator;
+import fwcd.sc18.trainer.core.SimulationStats;
 
 import sc.player2018.SimpleLogic;
 
 public class TrainerMain {
-	public static void main(String[] args) {
-		GameSimulator simulator = new GameSimulator(
-				GeneticNeuralLogic::new,
+	/**
+	 * @param args - Optionally the number of matches to run concurrently (defaults to the number of processors)
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		// Concurrent matches evaluate the individuals of a shared population in parallel
+		GeneticStrategy strategy = new SoloStreakStrategy();
+		Population population = GeneticNeuralLogic.newSharedPopulation(strategy, 0);
+		ParallelGameSimulator simulator = new ParallelGameSimulator(
+				client -> new GeneticNeuralLogic(client, strategy, 0, population),
 				SimpleLogic::new,
-				Long.MAX_VALUE
+				Long.MAX_VALUE,
+				threads
 		);
 		Path stopFile = Paths.get(".", "StopTraining");
+		// Live metrics for viewers such as the PopulationPanel
+		TelemetryChannel telemetry = TelemetryChannel.create(Paths.get(".", "Telemetry.bin"));
+		SimulationStats stats = simulator.getStats();
+		population.setTelemetry(telemetry);
+		simulator.addMatchListener((logicAWon, finalState) -> telemetry.publishSimulation(
+				stats.getMatches(),
+				stats.getGamesPerSecond(),
+				stats.getAverageMoveMicros()
+		));
 		Thread simThread = new Thread(simulator::run);
 		
 		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
@@ -27,8 +49,10 @@ public class TrainerMain {
 				long start = System.currentTimeMillis();
 				
 				simulator.stop();
+				population.close();
 				Files.deleteIfExists(stopFile);
 				simThread.join();
+				population.flush();
 				
 				long delta = System.currentTimeMillis() - start;
 				System.out.println("Finished shutdown in " + delta + " ms");
@@ -40,6 +64,8 @@ public class TrainerMain {
 		}));
 		
 		simulator.setStopCondition(() -> Files.exists(stopFile));
+		simulator.setReportInterval(100);
+		simulator.setLean(true);
 		simThread.start();
 	}
 }
@@ -0,0 +1,17 @@
+package fwcd.sc18.trainer.core;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+
+/**
+ * A logic that can be driven directly by a {@link GameSimulator}
+ * in lean mode, receiving the state only when a move is requested
+ * instead of being notified after every move.
+ */
+@FunctionalInterface
+public interface DirectLogic {
+	/**
+	 * Selects the move of the current player (without sending it).
+	 */
+	Move requestMove(GameState state);
+}
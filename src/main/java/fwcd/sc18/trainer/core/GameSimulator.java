@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BooleanSupplier;
 
@@ -31,9 +32,13 @@ public class GameSimulator {
 	private final VirtualClient clientB;
 	private final long matches;
 	private final List<Runnable> gameEndListeners;
+	private final List<MatchListener> matchListeners = new CopyOnWriteArrayList<>();
 
 	private BooleanSupplier stopCondition = null;
 	private GameState state = new GameState();
+	private boolean lean = false;
+	private long matchMoves = 0;
+	private long matchMoveNanos = 0;
 	private boolean started = false;
 	private boolean stopped = false;
 	
@@ -42,6 +47,17 @@ public class GameSimulator {
 		IGameHandler createLogic(VirtualClient client);
 	}
 	
+	@FunctionalInterface
+	public static interface MatchListener {
+		/**
+		 * Called after every match.
+		 *
+		 * @param logicAWon - Whether the first logic won the match
+		 * @param finalState - The state at the end of the match
+		 */
+		void onMatchEnd(boolean logicAWon, GameState finalState);
+	}
+	
 	public GameSimulator(LogicConstructor a, LogicConstructor b, long matches) {
 		this.matches = matches;
 		view = Optional.empty();
@@ -75,6 +91,20 @@ public class GameSimulator {
 		this.stopCondition = stopCondition;
 	}
 	
+	public void addMatchListener(MatchListener listener) {
+		matchListeners.add(listener);
+	}
+	
+	/**
+	 * Enables the lean mode, in which the state is only passed to
+	 * a logic when a move is requested from it (directly if it is a
+	 * {@link DirectLogic}) and to both logics once the game has ended,
+	 * instead of updating the view and both logics after every move.
+	 */
+	public void setLean(boolean lean) {
+		this.lean = lean;
+	}
+	
 	public void run() {
 		if (started) {
 			throw new IllegalStateException("GameSimulator already started.");
@@ -89,7 +119,11 @@ public class GameSimulator {
 		long match = 0;
 		while (match < matches && !shouldStop()) {
 			state = new GameState();
-			updateState();
+			matchMoves = 0;
+			matchMoveNanos = 0;
+			if (!lean) {
+				updateState();
+			}
 			
 			IGameHandler redLogic;
 			IGameHandler blueLogic;
@@ -113,14 +147,12 @@ public class GameSimulator {
 			
 			int round = 0;
 			while (round < Constants.ROUND_LIMIT && getWinner() == null) {
-				redLogic.onRequestAction();
-				boolean success1 = perform(redClient.getLastMove());
+				boolean success1 = perform(requestMove(redLogic, redClient));
 				if (!success1) {
 					break;
 				}
 				
-				blueLogic.onRequestAction();
-				boolean success2 = perform(blueClient.getLastMove());
+				boolean success2 = perform(requestMove(blueLogic, blueClient));
 				if (!success2) {
 					break;
 				}
@@ -128,6 +160,10 @@ public class GameSimulator {
 				round++;
 			}
 			
+			if (lean) {
+				updateState();
+			}
+			
 			PlayerColor winner = getWinner();
 			
 			ScoreDefinition scoreDef = new ScoreDefinition();
@@ -149,6 +185,11 @@ public class GameSimulator {
 				listener.run();
 			}
 			
+			boolean logicAWon = (winner != null) && ((winner == PlayerColor.RED) == (redLogic == logicA));
+			for (MatchListener listener : matchListeners) {
+				listener.onMatchEnd(logicAWon, state);
+			}
+			
 			match++;
 		}
 	}
@@ -174,10 +215,38 @@ public class GameSimulator {
 		}
 	}
 
+	private Move requestMove(IGameHandler logic, VirtualClient client) {
+		if (logic == logicA) {
+			long start = System.nanoTime();
+			Move move = nextMove(logic, client);
+			matchMoveNanos += System.nanoTime() - start;
+			matchMoves++;
+			return move;
+		} else {
+			return nextMove(logic, client);
+		}
+	}
+	
+	private Move nextMove(IGameHandler logic, VirtualClient client) {
+		if (!lean) {
+			logic.onRequestAction();
+		} else if (logic instanceof DirectLogic) {
+			return ((DirectLogic) logic).requestMove(state);
+		} else {
+			logic.onUpdate(state);
+			logic.onUpdate(state.getCurrentPlayer(), state.getOtherPlayer());
+			logic.onRequestAction();
+		}
+		
+		return client.getLastMove();
+	}
+
 	private boolean perform(Move move) {
 		try {
 			move.perform(state);
-			updateState();
+			if (!lean) {
+				updateState();
+			}
 			return true;
 		} catch (InvalidMoveException | InvalidGameStateException e) {
 			return false;
@@ -192,6 +261,16 @@ public class GameSimulator {
 		logicB.onUpdate(state.getCurrentPlayer(), state.getOtherPlayer());
 	}
 
+	/**
+	 * @return The number of moves logic A made in the current (or just ended) match
+	 */
+	public long getMatchMoves() { return matchMoves; }
+	
+	/**
+	 * @return The time logic A spent on it's moves in the current (or just ended) match
+	 */
+	public long getMatchMoveNanos() { return matchMoveNanos; }
+
 	public synchronized void stop() {
 		stopped = true;
 	}
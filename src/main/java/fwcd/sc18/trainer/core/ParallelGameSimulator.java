@@ -0,0 +1,179 @@
+package fwcd.sc18.trainer.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs independent matches concurrently, each thread using
+ * it's own {@link GameSimulator} with it's own pair of
+ * clients and logics (created on that thread).
+ *
+ * <p>The matches are distributed dynamically: every thread
+ * claims the next match from a shared counter until the
+ * total number of matches has been played or the simulation
+ * is stopped.</p>
+ */
+public class ParallelGameSimulator {
+	private static final Logger SIM_LOG = LoggerFactory.getLogger("simlog");
+
+	private final GameSimulator.LogicConstructor logicA;
+	private final GameSimulator.LogicConstructor logicB;
+	private final long matches;
+	private final int threadCount;
+	private final AtomicLong claimedMatches = new AtomicLong();
+	private final SimulationStats stats = new SimulationStats();
+	private final List<GameSimulator.MatchListener> matchListeners = new CopyOnWriteArrayList<>();
+	private final List<GameSimulator> simulators = new CopyOnWriteArrayList<>();
+
+	private BooleanSupplier stopCondition = null;
+	private long reportInterval = 0;
+	private boolean lean = false;
+	private boolean started = false;
+	private volatile boolean stopped = false;
+
+	public ParallelGameSimulator(GameSimulator.LogicConstructor logicA, GameSimulator.LogicConstructor logicB, long matches) {
+		this(logicA, logicB, matches, Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelGameSimulator(GameSimulator.LogicConstructor logicA, GameSimulator.LogicConstructor logicB, long matches, int threadCount) {
+		if (threadCount < 1) {
+			throw new IllegalArgumentException("Thread count has to be positive: " + threadCount);
+		}
+
+		this.logicA = logicA;
+		this.logicB = logicB;
+		this.matches = matches;
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Sets a condition that is checked (by every thread) before
+	 * each match, e.g. whether a stop file exists.
+	 */
+	public void setStopCondition(BooleanSupplier stopCondition) {
+		this.stopCondition = stopCondition;
+	}
+
+	/**
+	 * Adds a listener that is called after every match. Since
+	 * the matches run concurrently, listeners have to be thread-safe.
+	 */
+	public void addMatchListener(GameSimulator.MatchListener listener) {
+		matchListeners.add(listener);
+	}
+
+	/**
+	 * Runs the simulators in lean mode (see {@link GameSimulator#setLean(boolean)}).
+	 */
+	public void setLean(boolean lean) {
+		this.lean = lean;
+	}
+
+	/**
+	 * Logs the statistics every given number of matches (0 to disable).
+	 */
+	public void setReportInterval(long reportInterval) {
+		this.reportInterval = reportInterval;
+	}
+
+	/**
+	 * Runs the matches and blocks until all of them
+	 * have finished or the simulation has been stopped.
+	 */
+	public void run() {
+		synchronized (this) {
+			if (started) {
+				throw new IllegalStateException("ParallelGameSimulator already started.");
+			} else if (stopped) {
+				throw new IllegalStateException("ParallelGameSimulator already stopped.");
+			} else {
+				started = true;
+			}
+		}
+
+		stats.reset();
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		List<Thread> threads = new ArrayList<>(threadCount);
+
+		for (int i=0; i<threadCount; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					runSimulator();
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+					stop();
+				}
+			}, "Simulator-" + i);
+			threads.add(thread);
+			thread.start();
+		}
+
+		try {
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			stop();
+			Thread.currentThread().interrupt();
+		}
+
+		SIM_LOG.info("Finished simulation: {}", stats);
+
+		RuntimeException e = failure.get();
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	private void runSimulator() {
+		GameSimulator simulator = new GameSimulator(logicA, logicB, Long.MAX_VALUE);
+		simulator.setLean(lean);
+		simulators.add(simulator);
+
+		if (stopped) {
+			return;
+		}
+
+		// The stop condition is checked exactly once before each match, thus it is used to claim the match
+		simulator.setStopCondition(() -> stopped
+				|| (stopCondition != null && stopCondition.getAsBoolean())
+				|| claimedMatches.getAndIncrement() >= matches);
+		simulator.addMatchListener(stats);
+		simulator.addMatchListener((logicAWon, finalState) -> {
+			stats.recordMoves(simulator.getMatchMoves(), simulator.getMatchMoveNanos());
+
+			for (GameSimulator.MatchListener listener : matchListeners) {
+				listener.onMatchEnd(logicAWon, finalState);
+			}
+
+			long played = stats.getMatches();
+			if (reportInterval > 0 && (played % reportInterval) == 0) {
+				SIM_LOG.info("{}", stats);
+			}
+		});
+
+		simulator.run();
+	}
+
+	/**
+	 * Stops all simulators after their current match.
+	 */
+	public void stop() {
+		stopped = true;
+
+		for (GameSimulator simulator : simulators) {
+			simulator.stop();
+		}
+	}
+
+	public SimulationStats getStats() { return stats; }
+
+	public int getThreadCount() { return threadCount; }
+}
@@ -0,0 +1,86 @@
+package fwcd.sc18.trainer.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import sc.plugin2018.GameState;
+
+/**
+ * Thread-safe statistics of simulated matches
+ * that may be shared by multiple simulators.
+ */
+public class SimulationStats implements GameSimulator.MatchListener {
+	private final LongAdder matches = new LongAdder();
+	private final LongAdder winsA = new LongAdder();
+	private final LongAdder rounds = new LongAdder();
+	private final LongAdder moves = new LongAdder();
+	private final LongAdder moveNanos = new LongAdder();
+	private volatile long startTime = System.currentTimeMillis();
+
+	@Override
+	public void onMatchEnd(boolean logicAWon, GameState finalState) {
+		record(logicAWon, finalState.getRound());
+	}
+
+	/**
+	 * Records a match that was not played by a local simulator.
+	 */
+	public void record(boolean logicAWon, int rounds) {
+		matches.increment();
+		this.rounds.add(rounds);
+		if (logicAWon) {
+			winsA.increment();
+		}
+	}
+
+	/**
+	 * Records the moves of logic A during a match.
+	 */
+	public void recordMoves(long moves, long nanos) {
+		this.moves.add(moves);
+		moveNanos.add(nanos);
+	}
+
+	/**
+	 * Resets the statistics and restarts the clock.
+	 */
+	public void reset() {
+		matches.reset();
+		winsA.reset();
+		rounds.reset();
+		moves.reset();
+		moveNanos.reset();
+		startTime = System.currentTimeMillis();
+	}
+
+	public long getMatches() { return matches.sum(); }
+
+	public long getWinsA() { return winsA.sum(); }
+
+	public long getWinsB() { return getMatches() - getWinsA(); }
+
+	public long getElapsedMs() { return System.currentTimeMillis() - startTime; }
+
+	public float getAverageRounds() {
+		long total = getMatches();
+		return total == 0 ? 0 : rounds.sum() / (float) total;
+	}
+
+	/**
+	 * @return The average time a move of logic A took (or 0 if no moves have been recorded)
+	 */
+	public float getAverageMoveMicros() {
+		long total = moves.sum();
+		return total == 0 ? 0 : moveNanos.sum() / (total * 1000F);
+	}
+
+	public float getGamesPerSecond() {
+		long ms = getElapsedMs();
+		return ms == 0 ? 0 : (getMatches() * 1000F) / ms;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d matches in %d ms (%.2f games/s), A won %d, B won %d, %.1f rounds on average, %.1f us per move of A",
+				getMatches(), getElapsedMs(), getGamesPerSecond(), getWinsA(), getWinsB(), getAverageRounds(), getAverageMoveMicros());
+	}
+}
@@ -0,0 +1,58 @@
+package fwcd.sc18.trainer.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+
+/**
+ * A request to play a number of games using
+ * the given genes against the given opponent.
+ */
+public class EvaluationJob {
+	private final long id;
+	private final float[] genes;
+	private final Opponent opponent;
+	private final int games;
+
+	public EvaluationJob(long id, float[] genes, Opponent opponent, int games) {
+		this.id = id;
+		this.genes = genes;
+		this.opponent = opponent;
+		this.games = games;
+	}
+
+	/**
+	 * Writes this job (without the leading message type).
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeLong(id);
+		out.writeByte(opponent.ordinal());
+		out.writeInt(games);
+		TrainingProtocol.writeFloats(out, genes);
+	}
+
+	public static EvaluationJob read(DataInputStream in) throws IOException {
+		long id = in.readLong();
+		int ordinal = in.readUnsignedByte();
+		int games = in.readInt();
+		float[] genes = TrainingProtocol.readFloats(in);
+		Opponent opponent = Opponent.byOrdinal(ordinal);
+
+		if (opponent == null) {
+			throw new ProtocolException("Unknown opponent " + ordinal);
+		} else if (games < 1) {
+			throw new ProtocolException("Invalid game count " + games);
+		}
+
+		return new EvaluationJob(id, genes, opponent, games);
+	}
+
+	public long getId() { return id; }
+
+	public float[] getGenes() { return genes; }
+
+	public Opponent getOpponent() { return opponent; }
+
+	public int getGames() { return games; }
+}
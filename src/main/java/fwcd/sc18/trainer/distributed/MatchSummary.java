@@ -0,0 +1,103 @@
+package fwcd.sc18.trainer.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import fwcd.sc18.utils.MatchResult;
+import fwcd.sc18.utils.PluginAccess;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Player;
+import sc.shared.PlayerColor;
+
+/**
+ * The compact outcome of a game as sent from a worker
+ * to the coordinator: The players' final stats, but
+ * neither the board nor the move history.
+ */
+public class MatchSummary {
+	private final PlayerColor myColor;
+	private final boolean won;
+	private final int turn;
+	private final int[] myStats;
+	private final int[] opponentStats;
+
+	private MatchSummary(PlayerColor myColor, boolean won, int turn, int[] myStats, int[] opponentStats) {
+		this.myColor = myColor;
+		this.won = won;
+		this.turn = turn;
+		this.myStats = myStats;
+		this.opponentStats = opponentStats;
+	}
+
+	public static MatchSummary of(GameState finalState, PlayerColor myColor, boolean won) {
+		return new MatchSummary(
+				myColor,
+				won,
+				finalState.getTurn(),
+				statsOf(finalState.getPlayer(myColor)),
+				statsOf(finalState.getPlayer(myColor.opponent()))
+		);
+	}
+
+	/**
+	 * Rebuilds a match result on a fresh state. Only the turn and
+	 * the players' carrots, salads and fields are restored.
+	 */
+	public MatchResult toMatchResult(float[] genes) {
+		GameState state = new GameState();
+		PluginAccess.setTurn(state, turn);
+		restore(state.getPlayer(myColor), myStats);
+		restore(state.getPlayer(myColor.opponent()), opponentStats);
+		return new MatchResult(state, myColor, won, null, null, genes);
+	}
+
+	/**
+	 * Writes this summary (without the leading message type).
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeBoolean(myColor == PlayerColor.RED);
+		out.writeBoolean(won);
+		out.writeInt(turn);
+		writeStats(out, myStats);
+		writeStats(out, opponentStats);
+	}
+
+	public static MatchSummary read(DataInputStream in) throws IOException {
+		PlayerColor myColor = in.readBoolean() ? PlayerColor.RED : PlayerColor.BLUE;
+		boolean won = in.readBoolean();
+		int turn = in.readInt();
+		int[] myStats = readStats(in);
+		int[] opponentStats = readStats(in);
+		return new MatchSummary(myColor, won, turn, myStats, opponentStats);
+	}
+
+	private static int[] statsOf(Player player) {
+		return new int[] {player.getCarrots(), player.getSalads(), player.getFieldIndex()};
+	}
+
+	private static void restore(Player player, int[] stats) {
+		PluginAccess.setCarrots(player, stats[0]);
+		PluginAccess.setSalads(player, stats[1]);
+		player.setFieldIndex(stats[2]);
+	}
+
+	private static void writeStats(DataOutputStream out, int[] stats) throws IOException {
+		for (int i=0; i<stats.length; i++) {
+			out.writeInt(stats[i]);
+		}
+	}
+
+	private static int[] readStats(DataInputStream in) throws IOException {
+		return new int[] {in.readInt(), in.readInt(), in.readInt()};
+	}
+
+	public PlayerColor getMyColor() { return myColor; }
+
+	public boolean isWon() { return won; }
+
+	public int getTurn() { return turn; }
+
+	public int getRound() { return turn / 2; }
+}
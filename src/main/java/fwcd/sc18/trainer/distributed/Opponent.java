@@ -0,0 +1,32 @@
+package fwcd.sc18.trainer.distributed;
+
+import fwcd.sc18.alphabeta.AlphaBetaLogic;
+import fwcd.sc18.trainer.core.GameSimulator;
+
+import sc.player2018.SimpleLogic;
+
+/**
+ * The opponents an individual can be evaluated against
+ * (transmitted by their ordinal).
+ */
+public enum Opponent {
+	SIMPLE(SimpleLogic::new),
+	ALPHA_BETA(AlphaBetaLogic::new);
+
+	private static final Opponent[] VALUES = values();
+
+	private final GameSimulator.LogicConstructor constructor;
+
+	private Opponent(GameSimulator.LogicConstructor constructor) {
+		this.constructor = constructor;
+	}
+
+	public GameSimulator.LogicConstructor getConstructor() { return constructor; }
+
+	/**
+	 * @return The opponent with the given ordinal or null if there is none
+	 */
+	public static Opponent byOrdinal(int ordinal) {
+		return (ordinal >= 0 && ordinal < VALUES.length) ? VALUES[ordinal] : null;
+	}
+}
@@ -0,0 +1,225 @@
+package fwcd.sc18.trainer.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fwcd.sc18.geneticneural.EvaluationResult;
+import fwcd.sc18.geneticneural.GeneticStrategy;
+import fwcd.sc18.geneticneural.Population;
+import fwcd.sc18.trainer.core.SimulationStats;
+import fwcd.sc18.utils.MatchResult;
+
+/**
+ * Owns a population and distributes the evaluation of it's
+ * individuals to {@link TrainingWorker}s connecting over TCP
+ * (see {@link TrainingProtocol}).
+ *
+ * <p>Every connection is served by it's own thread, which acquires
+ * an individual from the (concurrently evaluated) population and
+ * keeps sending jobs for it until the strategy moves on. If a worker
+ * fails, it's individual is released and evaluated by another worker.
+ * Workers may (re)join at any time.</p>
+ */
+public class TrainingCoordinator {
+	private static final Logger DIST_LOG = LoggerFactory.getLogger("distlog");
+
+	private final Population population;
+	private final GeneticStrategy strategy;
+	private final ServerSocket serverSocket;
+	private final AtomicLong jobIds = new AtomicLong();
+	private final AtomicInteger workerIds = new AtomicInteger();
+	private final SimulationStats stats = new SimulationStats();
+	private final List<Socket> workers = new CopyOnWriteArrayList<>();
+	private final List<Thread> handlers = new CopyOnWriteArrayList<>();
+
+	private Opponent opponent = Opponent.SIMPLE;
+	private int gamesPerJob = 2;
+	private int workerTimeoutMs = 10 * 60 * 1000;
+	private volatile boolean closed = false;
+
+	/**
+	 * Binds the coordinator to the given port (0 to pick a free one)
+	 * and enables the concurrent evaluation of the population.
+	 *
+	 * @param population - A population in training mode
+	 * @param strategy - The strategy the population was created with
+	 */
+	public TrainingCoordinator(Population population, GeneticStrategy strategy, int port) throws IOException {
+		this.population = population;
+		this.strategy = strategy;
+		population.setConcurrentEvaluation(true);
+		serverSocket = new ServerSocket(port);
+	}
+
+	public void setOpponent(Opponent opponent) {
+		this.opponent = opponent;
+	}
+
+	/**
+	 * Sets the number of games per job. Results arriving
+	 * after the strategy has moved on are discarded.
+	 */
+	public void setGamesPerJob(int gamesPerJob) {
+		this.gamesPerJob = gamesPerJob;
+	}
+
+	/**
+	 * Sets the time after which a silent worker is considered failed.
+	 */
+	public void setWorkerTimeoutMs(int workerTimeoutMs) {
+		this.workerTimeoutMs = workerTimeoutMs;
+	}
+
+	/**
+	 * Accepts workers until the coordinator is closed and then
+	 * blocks until every worker has finished it's current job.
+	 */
+	public void run() {
+		DIST_LOG.info("Waiting for workers on port {}", getPort());
+
+		while (!closed) {
+			try {
+				Socket socket = serverSocket.accept();
+				int workerId = workerIds.incrementAndGet();
+				Thread handler = new Thread(() -> serve(socket, workerId), "Worker-" + workerId);
+
+				workers.add(socket);
+				handlers.add(handler);
+				handler.start();
+			} catch (IOException e) {
+				if (!closed) {
+					DIST_LOG.warn("Could not accept worker: {}", e.getMessage());
+				}
+			}
+		}
+
+		try {
+			for (Thread handler : handlers) {
+				handler.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		DIST_LOG.info("Finished training: {}", stats);
+	}
+
+	private void serve(Socket socket, int workerId) {
+		float[] genes = null;
+
+		try (Socket s = socket) {
+			s.setSoTimeout(workerTimeoutMs);
+			s.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+			TrainingProtocol.readHandshake(in);
+			DIST_LOG.info("Worker {} joined from {}", workerId, s.getRemoteSocketAddress());
+
+			while (!closed) {
+				genes = population.sample(genes);
+				if (closed) {
+					break;
+				}
+
+				EvaluationJob job = new EvaluationJob(jobIds.incrementAndGet(), genes, opponent, gamesPerJob);
+				out.writeByte(TrainingProtocol.JOB);
+				job.write(out);
+				out.flush();
+
+				boolean nextIndividual = false;
+				for (int i=0; i<job.getGames(); i++) {
+					MatchSummary summary = readResult(in, job);
+					stats.record(summary.isWon(), summary.getRound());
+
+					if (!nextIndividual) {
+						nextIndividual = evaluate(genes, summary);
+					}
+				}
+			}
+
+			out.writeByte(TrainingProtocol.SHUTDOWN);
+			out.flush();
+			DIST_LOG.info("Worker {} shut down", workerId);
+		} catch (IOException e) {
+			DIST_LOG.warn("Worker {} failed: {}", workerId, e.toString());
+		} finally {
+			workers.remove(socket);
+			if (genes != null) {
+				population.release(genes);
+			}
+		}
+	}
+
+	private MatchSummary readResult(DataInputStream in, EvaluationJob job) throws IOException {
+		byte type = in.readByte();
+		if (type != TrainingProtocol.RESULT) {
+			throw new ProtocolException("Expected a result, but got message " + type);
+		}
+
+		long jobId = in.readLong();
+		if (jobId != job.getId()) {
+			throw new ProtocolException("Expected a result of job " + job.getId() + ", but got " + jobId);
+		}
+
+		return MatchSummary.read(in);
+	}
+
+	/**
+	 * @return Whether the strategy moved on to another individual
+	 */
+	private boolean evaluate(float[] genes, MatchSummary summary) {
+		MatchResult result = summary.toMatchResult(genes);
+		EvaluationResult evaluation = strategy.evaluate(result, population.getFitness(genes), population);
+		return population.evolve(result, evaluation);
+	}
+
+	/**
+	 * Stops accepting workers and tells the connected ones
+	 * to shut down after their current job.
+	 */
+	public void close() {
+		closed = true;
+		population.close();
+
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			DIST_LOG.warn("Could not close server socket: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Disconnects all workers immediately (without waiting for their jobs).
+	 */
+	public void disconnectWorkers() {
+		for (Socket socket : workers) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Ignore, the worker is gone anyway
+			}
+		}
+	}
+
+	public int getPort() { return serverSocket.getLocalPort(); }
+
+	public int getWorkerCount() { return workers.size(); }
+
+	public SimulationStats getStats() { return stats; }
+
+	public Population getPopulation() { return population; }
+}
@@ -0,0 +1,70 @@
+package fwcd.sc18.trainer.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+
+/**
+ * The binary protocol spoken between a {@link TrainingCoordinator}
+ * and it's {@link TrainingWorker}s over plain TCP sockets.
+ *
+ * <p>After connecting, a worker sends {@link #MAGIC} and {@link #VERSION}.
+ * The coordinator then repeatedly sends a {@link #JOB} message (see
+ * {@link EvaluationJob}), which the worker answers with one {@link #RESULT}
+ * message (the job id followed by a {@link MatchSummary}) per played game.
+ * A {@link #SHUTDOWN} message tells the worker to exit.</p>
+ */
+public final class TrainingProtocol {
+	public static final int MAGIC = 0x48554954;
+	public static final int VERSION = 1;
+
+	/** Coordinator to worker: An evaluation job follows. */
+	public static final byte JOB = 1;
+	/** Coordinator to worker: The worker should exit. */
+	public static final byte SHUTDOWN = 2;
+	/** Worker to coordinator: The result of a game follows. */
+	public static final byte RESULT = 3;
+
+	/** The maximum number of floats accepted in a single array. */
+	private static final int MAX_FLOATS = 1 << 24;
+
+	private TrainingProtocol() {}
+
+	public static void writeHandshake(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	public static void readHandshake(DataInputStream in) throws IOException {
+		int magic = in.readInt();
+		int version = in.readInt();
+
+		if (magic != MAGIC) {
+			throw new ProtocolException("Not a training worker (magic " + Integer.toHexString(magic) + ")");
+		} else if (version != VERSION) {
+			throw new ProtocolException("Unsupported protocol version " + version + " (expected " + VERSION + ")");
+		}
+	}
+
+	public static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+		out.writeInt(values.length);
+		for (int i=0; i<values.length; i++) {
+			out.writeFloat(values[i]);
+		}
+	}
+
+	public static float[] readFloats(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > MAX_FLOATS) {
+			throw new ProtocolException("Invalid array length " + length);
+		}
+
+		float[] values = new float[length];
+		for (int i=0; i<length; i++) {
+			values[i] = in.readFloat();
+		}
+
+		return values;
+	}
+}
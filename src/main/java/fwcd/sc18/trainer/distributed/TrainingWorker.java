@@ -0,0 +1,167 @@
+package fwcd.sc18.trainer.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fwcd.sc18.geneticneural.GeneticNeuralLogic;
+import fwcd.sc18.trainer.core.GameSimulator;
+import fwcd.sc18.trainer.core.VirtualClient;
+
+import sc.plugin2018.IGameHandler;
+import sc.shared.PlayerColor;
+
+/**
+ * Connects to a {@link TrainingCoordinator} and plays the
+ * games of the received jobs using a {@link GameSimulator},
+ * streaming back a {@link MatchSummary} after every game.
+ *
+ * <p>If the connection fails (or can not be established),
+ * the worker keeps trying to (re)join the coordinator until
+ * it is stopped or told to shut down.</p>
+ */
+public class TrainingWorker {
+	private static final Logger DIST_LOG = LoggerFactory.getLogger("distlog");
+	private static final int CONNECT_TIMEOUT_MS = 5000;
+
+	private final String host;
+	private final int port;
+	/** The opponents are reused across jobs, since creating them is expensive (e.g. their tables). */
+	private final Map<Opponent, IGameHandler> opponentLogics = new EnumMap<>(Opponent.class);
+	private final Map<Opponent, VirtualClient> opponentClients = new EnumMap<>(Opponent.class);
+	private long retryDelayMs = 1000;
+	private volatile boolean stopped = false;
+	private volatile Socket socket = null;
+
+	public TrainingWorker(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	public void setRetryDelayMs(long retryDelayMs) {
+		this.retryDelayMs = retryDelayMs;
+	}
+
+	/**
+	 * Processes jobs until the worker is stopped or
+	 * the coordinator sends a shutdown message.
+	 */
+	public void run() {
+		while (!stopped) {
+			try {
+				runSession();
+			} catch (IOException | UncheckedIOException e) {
+				if (!stopped) {
+					DIST_LOG.warn("Lost connection to {}:{} ({}), retrying in {} ms", new Object[] {host, port, e, retryDelayMs});
+					sleepBeforeRetry();
+				}
+			}
+		}
+	}
+
+	private void runSession() throws IOException {
+		try (Socket s = new Socket()) {
+			socket = s;
+			s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+			s.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+			TrainingProtocol.writeHandshake(out);
+			out.flush();
+			DIST_LOG.info("Joined coordinator at {}:{}", host, port);
+
+			while (!stopped) {
+				byte type = in.readByte();
+
+				if (type == TrainingProtocol.JOB) {
+					play(EvaluationJob.read(in), out);
+				} else if (type == TrainingProtocol.SHUTDOWN) {
+					DIST_LOG.info("Coordinator requested shutdown");
+					stopped = true;
+				} else {
+					throw new ProtocolException("Unknown message " + type);
+				}
+			}
+		} finally {
+			socket = null;
+		}
+	}
+
+	private void play(EvaluationJob job, DataOutputStream out) {
+		Opponent opponent = job.getOpponent();
+		VirtualClient opponentClient = opponentClients.computeIfAbsent(opponent, o -> new VirtualClient(PlayerColor.BLUE));
+		IGameHandler opponentLogic = opponentLogics.computeIfAbsent(opponent, o -> o.getConstructor().createLogic(opponentClient));
+		// The color of the trained client changes between the games
+		VirtualClient trainedClient = new VirtualClient(PlayerColor.RED);
+		GameSimulator simulator = new GameSimulator(
+				Optional.empty(),
+				new GeneticNeuralLogic(trainedClient, job.getGenes()),
+				opponentLogic,
+				trainedClient,
+				opponentClient,
+				job.getGames(),
+				Collections.emptyList()
+		);
+		simulator.setLean(true);
+
+		simulator.addMatchListener((logicAWon, finalState) -> {
+			MatchSummary summary = MatchSummary.of(finalState, trainedClient.getColor(), logicAWon);
+
+			try {
+				out.writeByte(TrainingProtocol.RESULT);
+				out.writeLong(job.getId());
+				summary.write(out);
+				out.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+
+		try {
+			simulator.run();
+		} catch (RuntimeException e) {
+			// The opponent may have been aborted in the middle of a game
+			opponentLogics.remove(opponent);
+			throw e;
+		}
+	}
+
+	private void sleepBeforeRetry() {
+		try {
+			Thread.sleep(retryDelayMs);
+		} catch (InterruptedException e) {
+			stopped = true;
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops the worker, aborting the current job.
+	 */
+	public void stop() {
+		stopped = true;
+		Socket s = socket;
+
+		if (s != null) {
+			try {
+				s.close();
+			} catch (IOException e) {
+				// Ignore, since the worker is stopping anyway
+			}
+		}
+	}
+}
@@ -1,7 +1,6 @@
 package fwcd.sc18.trainer.ui;
 
 import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -11,23 +10,38 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.ArrayList;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import javax.swing.JOptionPane;
 
+import fwcd.sc18.geneticneural.PopulationCheckpoint;
 import fwcd.sc18.utils.EventListPoller;
 import fwcd.sc18.utils.MapTableModel;
 
+/**
+ * Displays a population folder in a table. When auto-updating,
+ * bursts of file system events are coalesced into a single
+ * reload that only re-reads the files that actually changed.
+ */
 public class PopulationMonitor implements AutoCloseable {
+	/** The names of the stats columns in the order they are stored. */
+	private static final String[] STATS_NAMES = {"wins", "goalWins", "maxFitness", "losses", "minGoalMoves", "maxGoalMoves", "maxStreak"};
+	private static final int WATCH_INTERVAL_MS = 1000;
+	private static final int WATCH_QUIET_PERIOD_MS = 200;
+	
 	private MapTableModel table;
 	
 	private Path folder;
+	private String checkpointName;
 	private String counterName;
 	private String statsName;
 	private String individualPrefix;
@@ -38,58 +52,54 @@ public class PopulationMonitor implements AutoCloseable {
 	private WatchService watcher;
 	private Thread watchPollThread;
 	
+	/** The modification times of the files when they were last read. */
+	private final Map<String, FileTime> readTimes = new HashMap<>();
+	private float[] shownFitness = null;
+	private float[][] shownGenes = null;
+	private StatsTail statsTail = null;
+	
 	private PopulationMonitor() {}
 	
+	/**
+	 * Reads the stats, only parsing the rows that have
+	 * been appended since the last call.
+	 */
 	public Map<String, int[]> readStats() {
 		return readStats(false);
 	}
 	
-	private Map<String, int[]> readStats(boolean silently) {
-		Map<String, List<Integer>> stats = new HashMap<>();
-		
-		List<Integer> wins = new ArrayList<>();
-		List<Integer> goalWins = new ArrayList<>();
-		List<Integer> maxFitness = new ArrayList<>();
-		List<Integer> losses = new ArrayList<>();
-		List<Integer> minGoalMoves = new ArrayList<>();
-		List<Integer> maxGoalMoves = new ArrayList<>();
-		List<Integer> maxStreak = new ArrayList<>();
-		
-		stats.put("wins", wins);
-		stats.put("goalWins", goalWins);
-		stats.put("maxFitness", maxFitness);
-		stats.put("losses", losses);
-		stats.put("minGoalMoves", minGoalMoves);
-		stats.put("maxGoalMoves", maxGoalMoves);
-		stats.put("maxStreak", maxStreak);
-		
-		try (InputStream fis = Files.newInputStream(folder.resolve(statsName)); DataInputStream dis = new DataInputStream(fis)) {
-			while (dis.available() > 0) {
-				wins.add(dis.readInt());
-				goalWins.add(dis.readInt());
-				maxFitness.add(dis.readInt());
-				losses.add(dis.readInt());
-				minGoalMoves.add(dis.readInt());
-				maxGoalMoves.add(dis.readInt());
-				maxStreak.add(dis.readInt());
+	private synchronized Map<String, int[]> readStats(boolean silently) {
+		Map<String, int[]> stats = new HashMap<>();
+		
+		if (statsTail == null) {
+			statsTail = new StatsTail(folder.resolve(statsName), STATS_NAMES.length);
+		}
+		
+		try {
+			int[][] columns = statsTail.read();
+			for (int i=0; i<STATS_NAMES.length; i++) {
+				stats.put(STATS_NAMES[i], columns[i]);
 			}
-		} catch (EOFException e) {
-			// Do nothing
 		} catch (IOException e) {
 			reject("Invalid stats file.", silently);
 		}
 		
-		return stats.entrySet().stream()
-				.collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().stream()
-						.mapToInt(Integer::intValue)
-						.toArray()));
+		return stats;
 	}
 	
+	/**
+	 * Reloads all files.
+	 */
 	public void reload() {
-		reload(false);
+		reload(null, false);
 	}
 	
-	private void reload(boolean silently) {
+	/**
+	 * Reloads the given files if they have been modified since they were last read.
+	 *
+	 * @param changed - The names of the changed files or null if all files should be reloaded
+	 */
+	private synchronized void reload(Set<String> changed, boolean silently) {
 		if (folder == null) {
 			reject("No folder selected", silently);
 		} else if (!Files.exists(folder)) {
@@ -97,27 +107,149 @@ public class PopulationMonitor implements AutoCloseable {
 		} else if (!Files.isDirectory(folder)) {
 			reject("Not a folder", silently);
 		} else {
-			loadCounter(silently);
-			loadIndividuals(silently);
-			onReload.run();
+			boolean modified;
+			
+			if (checkpointName != null && Files.exists(folder.resolve(checkpointName))) {
+				modified = (changed == null || changed.contains(checkpointName)) && loadCheckpoint(changed == null, silently);
+			} else {
+				modified = loadCounter(changed, silently) | loadIndividuals(changed, silently);
+			}
+			
+			// Writes to a mapped stats store do not necessarily cause file system events
+			boolean statsModified = changed != null && (changed.contains(statsName) || statsTail == null || statsTail.hasUpdates());
+			
+			if (changed == null || modified || statsModified) {
+				onReload.run();
+			}
+		}
+	}
+	
+	private void onEvents(List<WatchEvent<?>> events) {
+		Set<String> changed = new HashSet<>();
+		
+		for (WatchEvent<?> event : events) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed = null;
+				break;
+			}
+			
+			String name = event.context().toString();
+			changed.add(name);
+			
+			if (name.equals(statsName) && event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+				// The stats file has been replaced
+				resetStats();
+			}
+		}
+		
+		if (changed == null) {
+			resetStats();
+		}
+		
+		reload(changed, true);
+	}
+	
+	private synchronized void resetStats() {
+		if (statsTail != null) {
+			statsTail.reset();
+		}
+	}
+	
+	/**
+	 * Records the modification time of the file.
+	 *
+	 * @return Whether the file has been modified since it was last read
+	 */
+	private boolean isModified(Path file) {
+		try {
+			FileTime time = Files.getLastModifiedTime(file);
+			return !time.equals(readTimes.put(file.getFileName().toString(), time));
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Reads the checkpoint, only updating the individuals that changed.
+	 *
+	 * @return Whether the checkpoint has been read
+	 */
+	private boolean loadCheckpoint(boolean force, boolean silently) {
+		Path file = folder.resolve(checkpointName);
+		if (!isModified(file) && !force) {
+			return false;
+		}
+		
+		PopulationCheckpoint checkpoint;
+		try {
+			checkpoint = PopulationCheckpoint.read(file);
+		} catch (IOException e) {
+			reject("Invalid checkpoint file: " + e.getMessage(), silently);
+			return false;
+		}
+
+		int size = checkpoint.size();
+		if (force || shownFitness == null || shownFitness.length != size) {
+			shownFitness = new float[size];
+			shownGenes = new float[size][];
+			force = true;
+		}
+
+		int[] counters = checkpoint.getCounters();
+		table.put("Counter", "Index: " + counters[0], "Streak: " + counters[1], "Generation: " + counters[2]);
+
+		for (int i=0; i<size; i++) {
+			float fitness = checkpoint.getFitness(i);
+			float[] genes = checkpoint.getGenes(i);
+			
+			if (force || Float.compare(fitness, shownFitness[i]) != 0 || !Arrays.equals(genes, shownGenes[i])) {
+				shownFitness[i] = fitness;
+				shownGenes[i] = genes;
+
+				if (monitorWeights) {
+					table.put(individualPrefix + i, "Fitness: " + fitness, "Weights: " + Arrays.toString(genes));
+				} else {
+					table.put(individualPrefix + i, "Fitness: " + fitness);
+				}
+			}
 		}
+		
+		return true;
 	}
 
-	private void loadCounter(boolean silently) {
+	/**
+	 * @return Whether the counter has been read
+	 */
+	private boolean loadCounter(Set<String> changed, boolean silently) {
 		Path file = folder.resolve(counterName);
+		if (changed != null && !(changed.contains(counterName) && isModified(file))) {
+			return false;
+		}
+		
 		try (InputStream fis = Files.newInputStream(file); DataInputStream dis = new DataInputStream(fis)) {
 			String index = "Index: " + dis.readInt();
 			String streak = "Streak: " + dis.readInt();
 			String gen = "Generation: " + dis.readInt();
 			
 			table.put("Counter", index, streak, gen);
+			return true;
 		} catch (IOException e) {
 			reject("Invalid counter file", silently);
+			return false;
 		}
 	}
 	
-	private void loadIndividuals(boolean silently) {
+	/**
+	 * @return Whether an individual has been read
+	 */
+	private boolean loadIndividuals(Set<String> changed, boolean silently) {
+		boolean loaded = false;
+		
 		for (File file : folder.toFile().listFiles(file -> file.getName().startsWith(individualPrefix))) {
+			if (changed != null && !(changed.contains(file.getName()) && isModified(file.toPath()))) {
+				continue;
+			}
+			
 			try (FileInputStream fis = new FileInputStream(file); DataInputStream dis = new DataInputStream(fis)) {
 				String fitness = "Fitness: " + dis.readFloat();
 				
@@ -133,12 +265,15 @@ public class PopulationMonitor implements AutoCloseable {
 				} else {
 					table.put(file.getName(), fitness);
 				}
+				loaded = true;
 			} catch (IOException e) {
 				reject("Invalid individual/person file: " + file.getName(), silently);
 			} catch (NumberFormatException e) {
 				reject("Invalid individual/person file naming: " + file.getName(), silently);
 			}
 		}
+		
+		return loaded;
 	}
 
 	private void reject(String msg, boolean silently) {
@@ -171,6 +306,8 @@ public class PopulationMonitor implements AutoCloseable {
 		
 		public Builder folder(Path folder) { obj.folder = folder; return this; }
 		
+		public Builder checkpointName(String checkpointName) { obj.checkpointName = checkpointName; return this; }
+		
 		public Builder counterName(String counterName) { obj.counterName = counterName; return this; }
 		
 		public Builder personName(String personName) { obj.individualPrefix = personName; return this; }
@@ -192,7 +329,10 @@ public class PopulationMonitor implements AutoCloseable {
 							StandardWatchEventKinds.ENTRY_DELETE,
 							StandardWatchEventKinds.ENTRY_MODIFY
 					);
-					obj.watchPollThread = new Thread(new EventListPoller<>(key::pollEvents, e -> obj.reload(true)));
+					EventListPoller<WatchEvent<?>> poller = EventListPoller.coalescing(key::pollEvents, obj::onEvents);
+					poller.setRefreshInterval(WATCH_INTERVAL_MS);
+					poller.setQuietPeriod(WATCH_QUIET_PERIOD_MS);
+					obj.watchPollThread = new Thread(poller);
 					obj.watchPollThread.start();
 				} else {
 					obj.watcher = null;
@@ -2,30 +2,44 @@ package fwcd.sc18.trainer.ui;
 
 import java.awt.BorderLayout;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTable;
+import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
 
+import fwcd.sc18.geneticneural.TelemetryChannel;
 import fwcd.sc18.utils.MapTableModel;
 
 public class PopulationPanel {
+	private static final int TELEMETRY_INTERVAL_MS = 250;
+	
 	private final JSplitPane view;
 	private final JPanel populationView;
 	private final StatsMonitor statsMonitor;
 	private final ConfigPanel config;
 	private final MapTableModel tableModel;
+	private final JLabel telemetryLabel;
+	private final Timer telemetryTimer;
 	
 	private PopulationMonitor monitor;
+	private Path telemetryFile = null;
+	private TelemetryChannel telemetry = null;
 	private Supplier<File> file;
+	private Supplier<String> checkpointName;
 	private Supplier<String> counterName;
 	private Supplier<String> personName;
 	private Supplier<String> statsName;
+	private Supplier<String> telemetryName;
 	private BooleanSupplier monitorWeights;
 	private BooleanSupplier autoUpdate;
 	
@@ -40,9 +54,11 @@ public class PopulationPanel {
 		file = config.addFileOption("Choose population " + Integer.toString(index) + " folder", "", new File("."), true);
 		
 		ConfigPanel options = config.addSubPanel("Configuration");
+		checkpointName = options.addStringOption("Checkpoint file name", "Population.bin");
 		counterName = options.addStringOption("Counter file name", "Counter");
 		personName = options.addStringOption("Person file prefix", "Individual");
-		statsName = options.addStringOption("Stats file name", "Stats");
+		statsName = options.addStringOption("Stats file name", "Stats.bin");
+		telemetryName = options.addStringOption("Telemetry file name", "Telemetry.bin");
 		monitorWeights = options.addBoolOption("Monitor weights", false);
 		autoUpdate = options.addBoolOption("Auto-update", false);
 
@@ -51,6 +67,8 @@ public class PopulationPanel {
 		
 		populationView.add(config.getView(), BorderLayout.NORTH);
 		populationView.add(new JScrollPane(new JTable(tableModel)));
+		telemetryLabel = new JLabel(" ");
+		populationView.add(telemetryLabel, BorderLayout.SOUTH);
 		view.setLeftComponent(populationView);
 		
 		statsMonitor = new StatsMonitor();
@@ -60,6 +78,9 @@ public class PopulationPanel {
 		vsb.setUnitIncrement(10);
 		view.setRightComponent(statsScrollPane);
 		
+		// Reading the telemetry is cheap enough to poll it on the event dispatch thread
+		telemetryTimer = new Timer(TELEMETRY_INTERVAL_MS, e -> updateTelemetry());
+		
 		Runtime.getRuntime().addShutdownHook(new Thread(this::closeMonitor));
 	}
 
@@ -68,12 +89,34 @@ public class PopulationPanel {
 			monitor.close();
 		}
 	}
+	
+	private void updateTelemetry() {
+		if (telemetry == null && Files.exists(telemetryFile)) {
+			try {
+				telemetry = TelemetryChannel.open(telemetryFile);
+			} catch (IOException e) {
+				telemetryLabel.setText("Invalid telemetry file: " + e.getMessage());
+				return;
+			}
+		}
+		
+		TelemetryChannel.Snapshot snapshot = (telemetry == null) ? null : telemetry.read();
+		if (snapshot != null) {
+			long ageMs = System.currentTimeMillis() - snapshot.getTimeMs();
+			telemetryLabel.setText(snapshot + " (" + (ageMs / 1000) + " s ago)");
+		}
+	}
 
 	private void load() {
 		closeMonitor();
+		telemetryFile = file.get().toPath().resolve(telemetryName.get());
+		telemetry = null;
+		telemetryLabel.setText(" ");
+		telemetryTimer.restart();
 		monitor = new PopulationMonitor.Builder()
 				.table(tableModel)
 				.folder(file.get().toPath())
+				.checkpointName(checkpointName.get())
 				.counterName(counterName.get())
 				.personName(personName.get())
 				.statsName(statsName.get())
@@ -0,0 +1,157 @@
+package fwcd.sc18.trainer.ui;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import fwcd.sc18.geneticneural.StatsStore;
+
+/**
+ * Incrementally reads a stats file (either a {@link StatsStore}
+ * or a legacy file of consecutive rows), only reading the rows
+ * that have been appended since the previous read.
+ */
+class StatsTail {
+	private final Path file;
+	private final int rowInts;
+	
+	private StatsStore store = null;
+	/** The number of rows (of the store) or bytes (of a legacy file) read so far. */
+	private long position = 0;
+	private int[][] columns;
+	
+	StatsTail(Path file, int rowInts) {
+		this.file = file;
+		this.rowInts = rowInts;
+		columns = new int[rowInts][0];
+	}
+	
+	/**
+	 * Reads the rows appended since the last call.
+	 *
+	 * @return All rows read so far (or the most recent ones of a store), indexed by [column][row]
+	 */
+	int[][] read() throws IOException {
+		if (!Files.exists(file)) {
+			reset();
+		} else if (store != null || (position == 0 && StatsStore.isStatsStore(file))) {
+			readStore();
+		} else {
+			readLegacy();
+		}
+		
+		return columns;
+	}
+	
+	/**
+	 * @return Whether rows may have been appended since the last read
+	 */
+	boolean hasUpdates() {
+		try {
+			if (store != null) {
+				return store.getCount() != position;
+			} else {
+				return Files.exists(file) ? (Files.size(file) != position) : (position != 0);
+			}
+		} catch (IOException e) {
+			return true;
+		}
+	}
+	
+	/**
+	 * Discards the rows read so far, e.g. because the file has been replaced.
+	 */
+	void reset() {
+		store = null;
+		position = 0;
+		columns = new int[rowInts][0];
+	}
+	
+	private void readStore() throws IOException {
+		if (store == null) {
+			store = StatsStore.openReadOnly(file);
+			if (store.getRowInts() != rowInts) {
+				store = null;
+				throw new IOException("Expected a stats store with rows of " + rowInts + " ints");
+			}
+		}
+		
+		int window = store.getCapacity() - 1;
+		int[][] tail;
+		long count;
+		long from;
+		
+		do {
+			count = store.getCount();
+			if (count < position) {
+				// The store has been recreated
+				columns = new int[rowInts][0];
+				position = 0;
+			}
+			from = Math.max(position, count - window);
+			tail = store.readColumns(from, count);
+		} while (tail == null);
+		
+		if (from > position) {
+			// Rows have been overwritten since the last read
+			columns = tail;
+		} else {
+			append(tail, window);
+		}
+		position = count;
+	}
+	
+	private void readLegacy() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < position) {
+				// The file has been truncated
+				columns = new int[rowInts][0];
+				position = 0;
+			}
+			
+			int rowBytes = rowInts * Integer.BYTES;
+			int rows = (int) ((size - position) / rowBytes);
+			ByteBuffer bytes = ByteBuffer.allocate(rows * rowBytes);
+			
+			while (bytes.hasRemaining()) {
+				if (channel.read(bytes, position + bytes.position()) < 0) {
+					break;
+				}
+			}
+			bytes.flip();
+			rows = bytes.remaining() / rowBytes;
+			
+			int[][] tail = new int[rowInts][rows];
+			for (int r=0; r<rows; r++) {
+				for (int i=0; i<rowInts; i++) {
+					tail[i][r] = bytes.getInt();
+				}
+			}
+			
+			append(tail, Integer.MAX_VALUE);
+			position += rows * rowBytes;
+		}
+	}
+	
+	private void append(int[][] tail, int maxRows) {
+		int tailRows = tail[0].length;
+		if (tailRows == 0) {
+			return;
+		}
+		
+		int oldRows = columns[0].length;
+		int rows = (int) Math.min((long) oldRows + tailRows, maxRows);
+		int kept = rows - tailRows;
+		
+		for (int i=0; i<rowInts; i++) {
+			int[] column = Arrays.copyOfRange(columns[i], oldRows - kept, oldRows + tailRows);
+			System.arraycopy(tail[i], 0, column, kept, tailRows);
+			columns[i] = column;
+		}
+	}
+}
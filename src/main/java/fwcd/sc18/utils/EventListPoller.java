@@ -1,42 +1,93 @@
 package fwcd.sc18.utils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public class EventListPoller<E> implements Runnable {
 	private final Supplier<Collection<E>> supplier;
-	private final Consumer<E> handler;
+	private final Consumer<List<E>> batchHandler;
 	
 	private int intervalMs = 5000;
+	private int quietPeriodMs = 0;
 	private volatile boolean running = false;
 	
 	public EventListPoller(Supplier<Collection<E>> supplier, Consumer<E> handler) {
 		this.supplier = supplier;
-		this.handler = handler;
+		batchHandler = batch -> batch.forEach(handler);
+	}
+	
+	private EventListPoller(Consumer<List<E>> batchHandler, Supplier<Collection<E>> supplier) {
+		this.supplier = supplier;
+		this.batchHandler = batchHandler;
+	}
+	
+	/**
+	 * Creates a poller that passes all events of a burst
+	 * to the handler at once (see {@link #setQuietPeriod(int)}).
+	 */
+	public static <E> EventListPoller<E> coalescing(Supplier<Collection<E>> supplier, Consumer<List<E>> batchHandler) {
+		return new EventListPoller<>(batchHandler, supplier);
 	}
 	
 	public void setRefreshInterval(int ms) {
 		intervalMs = ms;
 	}
 	
+	/**
+	 * Sets the time without new events after which a burst
+	 * is considered complete. A burst is cut off after the
+	 * refresh interval though, thus continuous events are
+	 * still handled periodically.
+	 */
+	public void setQuietPeriod(int ms) {
+		quietPeriodMs = ms;
+	}
+	
 	@Override
 	public void run() {
 		running = true;
 		while (running && !Thread.interrupted()) {
-			Iterator<E> items = supplier.get().iterator();
+			List<E> batch = new ArrayList<>();
+			poll(batch);
 			
-			while (items.hasNext()) {
-				handler.accept(items.next());
-				items.remove();
+			if (!batch.isEmpty() && quietPeriodMs > 0) {
+				int waitedMs = 0;
+				int polled;
+				
+				do {
+					polled = batch.size();
+					sleep(quietPeriodMs);
+					waitedMs += quietPeriodMs;
+					poll(batch);
+				} while (running && batch.size() > polled && waitedMs < intervalMs);
 			}
 			
-			try {
-				Thread.sleep(intervalMs);
-			} catch (InterruptedException e) {
-				running = false;
+			if (!batch.isEmpty()) {
+				batchHandler.accept(batch);
 			}
+			
+			sleep(intervalMs);
+		}
+	}
+	
+	private void poll(List<E> batch) {
+		Iterator<E> items = supplier.get().iterator();
+		
+		while (items.hasNext()) {
+			batch.add(items.next());
+			items.remove();
+		}
+	}
+	
+	private void sleep(int ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			running = false;
 		}
 	}
 	
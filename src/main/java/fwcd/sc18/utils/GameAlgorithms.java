@@ -1,15 +1,30 @@
 package fwcd.sc18.utils;
 
+import java.util.List;
+
+import fwcd.sc18.alphabeta.MoveOrderer;
+import fwcd.sc18.alphabeta.SearchContext;
+import fwcd.sc18.alphabeta.SearchState;
+import fwcd.sc18.alphabeta.SearchStats;
+import fwcd.sc18.alphabeta.TranspositionTable;
+import fwcd.sc18.alphabeta.ZobristHashing;
+import fwcd.sc18.evaluator.LeafBatch;
 import fwcd.sc18.evaluator.MoveEvaluator;
 import fwcd.sc18.evaluator.MovePruner;
+import fwcd.sc18.exception.SearchTimeoutException;
 
+import sc.plugin2018.Action;
+import sc.plugin2018.Card;
+import sc.plugin2018.EatSalad;
+import sc.plugin2018.FieldType;
 import sc.plugin2018.GameState;
 import sc.plugin2018.Move;
-import sc.shared.InvalidGameStateException;
-import sc.shared.InvalidMoveException;
 import sc.shared.PlayerColor;
 
 public final class GameAlgorithms {
+	private static final int LMR_MIN_DEPTH = 3;
+	private static final int LMR_MIN_MOVE_NUMBER = 3;
+
 	private GameAlgorithms() {}
 
 	public static float alphaBeta(
@@ -35,47 +50,322 @@ public final class GameAlgorithms {
 			MovePruner pruner,
 			MoveEvaluator evaluator
 	) {
-		GameState gameAfterMove;
+		return alphaBeta(maximizing, move, gameBeforeMove, depth, myColor, alpha, beta, pruner, evaluator, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Performs an alpha-beta search that is aborted
+	 * by throwing a {@link SearchTimeoutException} as soon
+	 * as the given deadline (in epoch milliseconds) has passed.
+	 */
+	public static float alphaBeta(
+			boolean maximizing,
+			Move move,
+			GameState gameBeforeMove,
+			int depth,
+			PlayerColor myColor,
+			float alpha,
+			float beta,
+			MovePruner pruner,
+			MoveEvaluator evaluator,
+			long deadline
+	) {
+		SearchContext context = new SearchContext(myColor, pruner, evaluator);
+		context.setDeadline(deadline);
+		return alphaBeta(maximizing, move, gameBeforeMove, 0, depth, alpha, beta, context);
+	}
+
+	/**
+	 * Performs an alpha-beta search using the deadline, the (optional)
+	 * transposition table and the (optional) move orderer of the given context.
+	 *
+	 * @param hashBeforeMove - The Zobrist hash of gameBeforeMove (only used if the context has a transposition table)
+	 */
+	public static float alphaBeta(
+			boolean maximizing,
+			Move move,
+			GameState gameBeforeMove,
+			long hashBeforeMove,
+			int depth,
+			float alpha,
+			float beta,
+			SearchContext context
+	) {
+		return alphaBeta(maximizing, move, new SearchState(gameBeforeMove), hashBeforeMove, depth, alpha, beta, context);
+	}
+
+	/**
+	 * Performs an alpha-beta search by applying and undoing moves
+	 * on the given state, which is unchanged once the search returns.
+	 *
+	 * <p>Internally this is a negamax principal variation search: Every
+	 * move but the first one of a node is searched with a null window
+	 * first and only re-searched with the full window if it fails high.
+	 * If enabled in the context, late quiet moves are additionally
+	 * searched with a reduced depth first.</p>
+	 *
+	 * @param maximizing - Whether the player to move after the move is the maximizing one (see {@link SearchContext#getMyColor()})
+	 * @param hashBeforeMove - The Zobrist hash of the current state (only used if the context has a transposition table)
+	 * @return The rating from the perspective of the maximizing player
+	 */
+	public static float alphaBeta(
+			boolean maximizing,
+			Move move,
+			SearchState state,
+			long hashBeforeMove,
+			int depth,
+			float alpha,
+			float beta,
+			SearchContext context
+	) {
+		if (maximizing) {
+			return negamax(true, move, state, hashBeforeMove, depth, alpha, beta, context);
+		} else {
+			return -negamax(false, move, state, hashBeforeMove, depth, -beta, -alpha, context);
+		}
+	}
+
+	/**
+	 * Searches the node after the given move.
+	 *
+	 * @param myTurn - Whether the maximizing player is to move after the move
+	 * @return The rating from the perspective of the player to move after the move
+	 */
+	private static float negamax(
+			boolean myTurn,
+			Move move,
+			SearchState state,
+			long hashBeforeMove,
+			int depth,
+			float alpha,
+			float beta,
+			SearchContext context
+	) {
+		if (System.currentTimeMillis() > context.getDeadline()) {
+			throw new SearchTimeoutException();
+		}
+
+		if (!state.apply(move)) {
+			return Float.NEGATIVE_INFINITY;
+		}
+
+		SearchStats stats = context.getStats();
+		if (stats != null) {
+			stats.recordNode(state.getPly());
+		}
+
 		try {
-			gameAfterMove = HUIUtils.spawnChild(gameBeforeMove, move);
-		} catch (InvalidMoveException | InvalidGameStateException e) {
-			if (maximizing) {
-				return Float.NEGATIVE_INFINITY;
+			return searchNode(myTurn, move, state, hashBeforeMove, depth, alpha, beta, context);
+		} finally {
+			state.undo();
+		}
+	}
+
+	private static float searchNode(
+			boolean myTurn,
+			Move move,
+			SearchState state,
+			long hashBeforeMove,
+			int depth,
+			float alpha,
+			float beta,
+			SearchContext context
+	) {
+		GameState gameAfterMove = state.getState();
+		PlayerColor myColor = context.getMyColor();
+		MovePruner pruner = context.getPruner();
+		SearchStats stats = context.getStats();
+		boolean wasPruned = false;
+		if (depth <= 0 || HUIUtils.isGameOver(gameAfterMove) || (pruner != null && (wasPruned = pruner.shouldPrune(move, myColor, state.getPrevious(), gameAfterMove)))) {
+			if (stats != null) {
+				stats.recordLeafEvaluation();
+			}
+			float rating = context.getEvaluator().rate(move, myColor, state.getPrevious(), gameAfterMove, wasPruned);
+			return myTurn ? rating : -rating;
+		}
+
+		TranspositionTable table = context.getTable();
+		long hash = 0;
+		int tableMoveIndex = -1;
+
+		if (table != null) {
+			hash = ZobristHashing.childHash(hashBeforeMove, state.getPrevious(), gameAfterMove);
+			long entry = table.probe(hash);
+
+			if (stats != null) {
+				stats.recordTableProbe(entry != TranspositionTable.MISS);
+			}
+
+			if (entry != TranspositionTable.MISS) {
+				tableMoveIndex = TranspositionTable.moveIndexOf(entry);
+			}
+
+			if (entry != TranspositionTable.MISS && TranspositionTable.depthOf(entry) >= depth) {
+				float score = TranspositionTable.scoreOf(entry);
+
+				switch (TranspositionTable.boundOf(entry)) {
+					case EXACT: return score;
+					case LOWER: if (score >= beta) { return score; } break;
+					case UPPER: if (score <= alpha) { return score; } break;
+				}
+			}
+		}
+
+		float originalAlpha = alpha;
+		float bestRating = Float.NEGATIVE_INFINITY;
+		int bestMoveIndex = -1;
+		List<Move> childMoves = gameAfterMove.getPossibleMoves();
+		MoveOrderer orderer = context.getOrderer();
+		int[] order = (orderer == null) ? null : orderer.order(childMoves, gameAfterMove, tableMoveIndex);
+		int searchedChildren = 0;
+		float[] leafRatings = (depth == 1 && context.isBatchingLeaves()) ? rateLeaves(myTurn, childMoves, state, context) : null;
+
+		for (int moveNumber=0; moveNumber<childMoves.size(); moveNumber++) {
+			int i = (order == null) ? moveNumber : order[moveNumber];
+			Move childMove = childMoves.get(i);
+			float rating;
+			searchedChildren++;
+
+			if (leafRatings != null) {
+				rating = leafRatings[i];
+			} else if (moveNumber == 0) {
+				rating = -negamax(!myTurn, childMove, state, hash, depth - 1, -beta, -alpha, context);
 			} else {
-				return Float.POSITIVE_INFINITY;
+				// Try to prove that the move is not better than alpha using a null window
+				float nullBeta = Math.nextUp(alpha);
+				int reduction = lateMoveReduction(context, childMove, gameAfterMove, depth, moveNumber);
+				rating = -negamax(!myTurn, childMove, state, hash, depth - 1 - reduction, -nullBeta, -alpha, context);
+
+				if (reduction > 0 && rating > alpha) {
+					rating = -negamax(!myTurn, childMove, state, hash, depth - 1, -nullBeta, -alpha, context);
+				}
+				if (rating > alpha && rating < beta) {
+					rating = -negamax(!myTurn, childMove, state, hash, depth - 1, -beta, -alpha, context);
+				}
+			}
+
+			if (rating > bestRating || bestMoveIndex < 0) {
+				bestRating = rating;
+				bestMoveIndex = i;
+			}
+			if (bestRating > alpha) {
+				alpha = bestRating;
+			}
+			if (alpha >= beta) {
+				onCutoff(context, childMove, gameAfterMove, depth, moveNumber);
+				break;
 			}
 		}
-		
-		boolean wasPruned = false;
-		if (depth <= 0 || HUIUtils.isGameOver(gameAfterMove) || (pruner != null && (wasPruned = pruner.shouldPrune(move, myColor, gameBeforeMove, gameAfterMove)))) {
-			return evaluator.rate(move, myColor, gameBeforeMove, gameAfterMove, wasPruned);
-		} else {
-			float bestRating = maximizing ? alpha : beta;
-			
-			for (Move childMove : gameAfterMove.getPossibleMoves()) {
-				// TODO: Timer?
-				float rating;
-				
-				if (maximizing) {
-					rating = alphaBeta(!maximizing, childMove, gameAfterMove, depth - 1, myColor, bestRating, beta, pruner, evaluator);
-					if (rating > bestRating) {
-						bestRating = rating;
-						if (bestRating >= beta) {
-							break; // Beta-cutoff
-						}
-					}
-				} else {
-					rating = alphaBeta(!maximizing, childMove, gameAfterMove, depth - 1, myColor, alpha, bestRating, pruner, evaluator);
-					if (rating < bestRating) {
-						bestRating = rating;
-						if (bestRating <= alpha) {
-							break; // Alpha-cutoff
-						}
+
+		if (stats != null) {
+			stats.recordExpansion(searchedChildren);
+		}
+
+		if (table != null) {
+			TranspositionTable.Bound bound;
+
+			if (bestRating <= originalAlpha) {
+				bound = TranspositionTable.Bound.UPPER;
+			} else if (bestRating >= beta) {
+				bound = TranspositionTable.Bound.LOWER;
+			} else {
+				bound = TranspositionTable.Bound.EXACT;
+			}
+
+			table.store(hash, depth, bound, bestRating, bestMoveIndex);
+		}
+
+		return bestRating;
+	}
+
+	/**
+	 * Rates all children of a node at depth 1 (which are leaves)
+	 * using a single batch. Yields the same ratings as searching
+	 * every child individually, regardless of the window.
+	 *
+	 * @return The ratings from the perspective of the player to move, indexed like the child moves
+	 */
+	private static float[] rateLeaves(boolean myTurn, List<Move> childMoves, SearchState state, SearchContext context) {
+		if (System.currentTimeMillis() > context.getDeadline()) {
+			throw new SearchTimeoutException();
+		}
+
+		int count = childMoves.size();
+		PlayerColor myColor = context.getMyColor();
+		SearchStats stats = context.getStats();
+		LeafBatch batch = context.getLeafBatch();
+		float[] ratings = context.getLeafRatings(count);
+
+		for (int i=0; i<count; i++) {
+			if (state.apply(childMoves.get(i))) {
+				try {
+					if (stats != null) {
+						stats.recordNode(state.getPly());
+						stats.recordLeafEvaluation();
 					}
+					batch.add(childMoves.get(i), myColor, state.getPrevious(), state.getState(), false);
+					ratings[i] = Float.NaN;
+				} finally {
+					state.undo();
 				}
+			} else {
+				// Invalid moves are rated as negative infinity from the child's perspective
+				ratings[i] = Float.POSITIVE_INFINITY;
 			}
-			
-			return bestRating;
+		}
+
+		float[] batchRatings = context.getBatchRatings(batch.size());
+		batch.rateAll(batchRatings);
+		int leafIndex = 0;
+
+		for (int i=0; i<count; i++) {
+			if (Float.isNaN(ratings[i])) {
+				float rating = batchRatings[leafIndex++];
+				ratings[i] = myTurn ? rating : -rating;
+			}
+		}
+
+		return ratings;
+	}
+
+	/**
+	 * Computes the number of plies by which a late, quiet
+	 * move is searched less deeply at first.
+	 */
+	private static int lateMoveReduction(SearchContext context, Move move, GameState state, int depth, int moveNumber) {
+		if (!context.isReducingLateMoves() || depth < LMR_MIN_DEPTH || moveNumber < LMR_MIN_MOVE_NUMBER || !isQuiet(move, state)) {
+			return 0;
+		} else if (depth >= 2 * LMR_MIN_DEPTH && moveNumber >= 2 * LMR_MIN_MOVE_NUMBER) {
+			return 2;
+		} else {
+			return 1;
+		}
+	}
+
+	/**
+	 * Checks whether a move neither eats a salad, nor
+	 * plays a card, nor enters the goal or a salad field.
+	 */
+	private static boolean isQuiet(Move move, GameState state) {
+		for (Action action : move.actions) {
+			if (action instanceof EatSalad || action instanceof Card) {
+				return false;
+			}
+		}
+
+		int target = HUIUtils.getTargetField(move, state);
+		return target != HUIUtils.MAX_FIELD && state.getTypeAt(target) != FieldType.SALAD;
+	}
+
+	private static void onCutoff(SearchContext context, Move move, GameState state, int depth, int moveNumber) {
+		MoveOrderer orderer = context.getOrderer();
+		SearchStats stats = context.getStats();
+
+		if (orderer != null) {
+			orderer.onCutoff(move, state, depth, moveNumber);
+		}
+		if (stats != null) {
+			stats.recordCutoff(moveNumber);
 		}
 	}
 }
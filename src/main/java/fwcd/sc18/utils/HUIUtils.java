@@ -7,8 +7,10 @@ import java.util.concurrent.ThreadLocalRandom;
 
 import sc.plugin2018.Action;
 import sc.plugin2018.Advance;
+import sc.plugin2018.Card;
 import sc.plugin2018.CardType;
 import sc.plugin2018.ExchangeCarrots;
+import sc.plugin2018.FallBack;
 import sc.plugin2018.FieldType;
 import sc.plugin2018.GameState;
 import sc.plugin2018.Move;
@@ -133,6 +135,36 @@ public final class HUIUtils {
 		}
 	}
 	
+	/**
+	 * Cheaply computes the field the current player will end up
+	 * on after performing the given move without actually
+	 * performing it.
+	 */
+	public static int getTargetField(Move move, GameState state) {
+		int field = state.getCurrentPlayer().getFieldIndex();
+		int opponentField = state.getOtherPlayer().getFieldIndex();
+		
+		for (Action action : move.actions) {
+			Class<? extends Action> clazz = action.getClass();
+			
+			if (clazz == Advance.class) {
+				field += ((Advance) action).getDistance();
+			} else if (clazz == FallBack.class) {
+				field = state.getPreviousFieldByType(FieldType.HEDGEHOG, field);
+			} else if (clazz == Card.class) {
+				CardType type = ((Card) action).getType();
+				
+				if (type == CardType.FALL_BACK) {
+					field = opponentField - 1;
+				} else if (type == CardType.HURRY_AHEAD) {
+					field = opponentField + 1;
+				}
+			}
+		}
+		
+		return field;
+	}
+	
 	public static boolean isGameOver(GameState state) {
 		return state.getRound() >= Constants.ROUND_LIMIT
 				|| state.getPlayer(PlayerColor.RED).inGoal()
@@ -0,0 +1,90 @@
+package fwcd.sc18.utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.util.List;
+
+import sc.plugin2018.CardType;
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.plugin2018.Player;
+import sc.shared.PlayerColor;
+
+/**
+ * Provides write access to plugin fields that
+ * are not publicly settable (without the validation
+ * or copying performed by the plugin's setters).
+ */
+public final class PluginAccess {
+	private static final MethodHandle SET_TURN = fieldSetter(GameState.class, "turn");
+	private static final MethodHandle SET_CURRENT_PLAYER = fieldSetter(GameState.class, "currentPlayer");
+	private static final MethodHandle SET_LAST_MOVE = fieldSetter(GameState.class, "lastMove");
+	private static final MethodHandle SET_CARROTS = fieldSetter(Player.class, "carrots");
+	private static final MethodHandle SET_SALADS = fieldSetter(Player.class, "salads");
+	private static final MethodHandle SET_CARDS = fieldSetter(Player.class, "cards");
+
+	private PluginAccess() {}
+
+	public static void setTurn(GameState state, int turn) {
+		try {
+			SET_TURN.invokeExact(state, turn);
+		} catch (Throwable e) {
+			throw new HUIException(e);
+		}
+	}
+
+	public static void setCurrentPlayer(GameState state, PlayerColor color) {
+		try {
+			SET_CURRENT_PLAYER.invokeExact(state, color);
+		} catch (Throwable e) {
+			throw new HUIException(e);
+		}
+	}
+
+	public static void setLastMove(GameState state, Move move) {
+		try {
+			SET_LAST_MOVE.invokeExact(state, move);
+		} catch (Throwable e) {
+			throw new HUIException(e);
+		}
+	}
+
+	public static void setCarrots(Player player, int carrots) {
+		try {
+			SET_CARROTS.invokeExact(player, carrots);
+		} catch (Throwable e) {
+			throw new HUIException(e);
+		}
+	}
+
+	public static void setSalads(Player player, int salads) {
+		try {
+			SET_SALADS.invokeExact(player, salads);
+		} catch (Throwable e) {
+			throw new HUIException(e);
+		}
+	}
+
+	/**
+	 * Sets the card list by reference (unlike {@link Player#setCards}, which copies it).
+	 * The list has to be an ArrayList.
+	 */
+	public static void setCards(Player player, List<CardType> cards) {
+		try {
+			SET_CARDS.invoke(player, cards);
+		} catch (Throwable e) {
+			throw new HUIException(e);
+		}
+	}
+
+	private static MethodHandle fieldSetter(Class<?> clazz, String name) {
+		try {
+			Field field = clazz.getDeclaredField(name);
+			field.setAccessible(true);
+			return MethodHandles.lookup().unreflectSetter(field);
+		} catch (ReflectiveOperationException e) {
+			throw new HUIException(e);
+		}
+	}
+}
@@ -61,7 +61,9 @@ public class SimpleLogic implements IGameHandler {
 		move.orderActions();
 		LOG.debug("Sending move: {}", move);
 		sendAction(move);
-		LOG.warn("Time needed for turn: {} ms", System.currentTimeMillis() - startTime);
+		if (LOG.isWarnEnabled()) {
+			LOG.warn("Time needed for turn: {} ms", System.currentTimeMillis() - startTime);
+		}
 	}
 
 	private Move chooseMove() {
@@ -136,15 +138,19 @@ public class SimpleLogic implements IGameHandler {
 	@Override
 	public void onUpdate(Player player, Player otherPlayer) {
 		currentPlayer = player;
-		LOG.info("Player's turn: {}", player.getPlayerColor());
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Player's turn: {}", player.getPlayerColor());
+		}
 	}
 
 	@Override
 	public void onUpdate(GameState gameState) {
 		this.gameState = gameState;
 		currentPlayer = gameState.getCurrentPlayer();
-		LOG.info("Move: {}", gameState.getTurn());
-		LOG.info("Current player: {}", currentPlayer.getPlayerColor());
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Move: {}", gameState.getTurn());
+			LOG.info("Current player: {}", currentPlayer.getPlayerColor());
+		}
 	}
 
 	@Override
@@ -0,0 +1,160 @@
+package fwcd.sc18.alphabeta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fwcd.sc18.utils.HUIUtils;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.plugin2018.Player;
+import sc.shared.InvalidGameStateException;
+import sc.shared.InvalidMoveException;
+import sc.shared.PlayerColor;
+
+/**
+ * Applies and undoes seeded random move sequences and checks
+ * that every field of the game state and of both players
+ * is restored exactly.
+ */
+public class SearchStateTest {
+	private static final int GAMES = 100;
+	private static final int MAX_DEPTH = 6;
+
+	@Test
+	public void testUndoRestoresEveryField() throws Exception {
+		Random random = new Random(1);
+
+		for (int i=0; i<GAMES; i++) {
+			GameState root = new GameState();
+
+			while (!HUIUtils.isGameOver(root)) {
+				SearchState search = new SearchState(root);
+				List<Map<String, Object>> snapshots = new ArrayList<>();
+				int depth = 1 + random.nextInt(MAX_DEPTH);
+
+				for (int ply=0; ply<depth && !HUIUtils.isGameOver(search.getState()); ply++) {
+					GameState state = search.getState();
+					List<Move> moves = state.getPossibleMoves();
+					Move move = moves.get(random.nextInt(moves.size()));
+					Map<String, Object> before = snapshot(state);
+					GameState expected = spawnChild(state, move);
+
+					snapshots.add(before);
+					if (search.apply(move)) {
+						assertTrue("Applied invalid " + move, expected != null);
+						assertEquals("State after " + move, comparable(snapshot(expected)), comparable(snapshot(state)));
+						assertEquals("Previous state after " + move, comparable(before), comparable(snapshot(search.getPrevious())));
+					} else {
+						assertTrue("Could not apply " + move, expected == null);
+						assertRestored("State after invalid " + move, before, state);
+						snapshots.remove(snapshots.size() - 1);
+					}
+				}
+
+				while (search.getPly() > 0) {
+					search.undo();
+					assertRestored("State after undoing to ply " + search.getPly(), snapshots.remove(snapshots.size() - 1), search.getState());
+				}
+
+				List<Move> moves = root.getPossibleMoves();
+				root = HUIUtils.spawnChild(root, moves.get(random.nextInt(moves.size())));
+			}
+		}
+	}
+
+	@Test
+	public void testRootIsNeverModified() throws Exception {
+		GameState root = new GameState();
+		Map<String, Object> before = snapshot(root);
+		SearchState search = new SearchState(root);
+
+		assertTrue(search.apply(root.getPossibleMoves().get(0)));
+		assertFalse(snapshot(search.getState()).equals(before));
+		assertRestored("Root", before, root);
+	}
+
+	private GameState spawnChild(GameState state, Move move) {
+		try {
+			return HUIUtils.spawnChild(state, move);
+		} catch (InvalidMoveException | InvalidGameStateException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Asserts that the fields of the state are equal to the snapshot
+	 * and that every (non-copied) reference is the same.
+	 */
+	private void assertRestored(String msg, Map<String, Object> expected, GameState actual) throws IllegalAccessException {
+		Map<String, Object> snapshot = snapshot(actual);
+		assertEquals(msg, expected, snapshot);
+
+		for (String key : expected.keySet()) {
+			Object value = expected.get(key);
+			if (!(value instanceof List || value instanceof Number || value instanceof Boolean)) {
+				assertSame(msg + ": " + key, expected.get(key), snapshot.get(key));
+			}
+		}
+	}
+
+	/**
+	 * Removes the references that differ between a state and
+	 * an equivalent copy (created by cloning the state).
+	 */
+	private Map<String, Object> comparable(Map<String, Object> snapshot) {
+		Map<String, Object> result = new LinkedHashMap<>(snapshot);
+		result.remove("board");
+		result.remove("lastMove");
+		for (PlayerColor color : PlayerColor.values()) {
+			result.remove(color + ".identity");
+		}
+		return result;
+	}
+
+	/**
+	 * Captures every instance field of the state and of both players.
+	 * Lists are copied, since the plugin modifies them in place.
+	 */
+	private Map<String, Object> snapshot(GameState state) throws IllegalAccessException {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		putFields(snapshot, "", state, GameState.class);
+
+		for (PlayerColor color : PlayerColor.values()) {
+			Player player = state.getPlayer(color);
+			String prefix = color + ".";
+			snapshot.put(prefix + "identity", player);
+
+			for (Class<?> c = Player.class; c != Object.class; c = c.getSuperclass()) {
+				putFields(snapshot, prefix, player, c);
+			}
+		}
+
+		// Players are compared field by field above
+		snapshot.remove("red");
+		snapshot.remove("blue");
+		return snapshot;
+	}
+
+	private void putFields(Map<String, Object> snapshot, String prefix, Object obj, Class<?> c) throws IllegalAccessException {
+		for (Field field : c.getDeclaredFields()) {
+			if (!Modifier.isStatic(field.getModifiers())) {
+				field.setAccessible(true);
+				Object value = field.get(obj);
+				snapshot.put(prefix + field.getName(), value instanceof List ? new ArrayList<>((List<?>) value) : value);
+			}
+		}
+	}
+}
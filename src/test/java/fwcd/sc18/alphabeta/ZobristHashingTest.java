@@ -0,0 +1,59 @@
+package fwcd.sc18.alphabeta;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fwcd.sc18.utils.HUIUtils;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+
+/**
+ * Checks that the incrementally derived hashes match
+ * the hashes computed from scratch in random games.
+ */
+public class ZobristHashingTest {
+	private static final int GAMES = 200;
+
+	@Test
+	public void testChildHashOfClonedStates() throws Exception {
+		Random random = new Random(1);
+
+		for (int i=0; i<GAMES; i++) {
+			GameState state = new GameState();
+			long hash = ZobristHashing.hash(state);
+
+			while (!HUIUtils.isGameOver(state)) {
+				List<Move> moves = state.getPossibleMoves();
+				GameState child = HUIUtils.spawnChild(state, moves.get(random.nextInt(moves.size())));
+
+				hash = ZobristHashing.childHash(hash, state, child);
+				assertEquals("Hash in turn " + child.getTurn(), ZobristHashing.hash(child), hash);
+				state = child;
+			}
+		}
+	}
+
+	@Test
+	public void testChildHashOfSearchStates() {
+		Random random = new Random(2);
+
+		for (int i=0; i<GAMES; i++) {
+			SearchState search = new SearchState(new GameState());
+			long hash = ZobristHashing.hash(search.getState());
+
+			while (!HUIUtils.isGameOver(search.getState())) {
+				List<Move> moves = search.getState().getPossibleMoves();
+
+				if (search.apply(moves.get(random.nextInt(moves.size())))) {
+					hash = ZobristHashing.childHash(hash, search.getPrevious(), search.getState());
+					assertEquals("Hash in turn " + search.getState().getTurn(), ZobristHashing.hash(search.getState()), hash);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package fwcd.sc18.geneticneural;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fwcd.sc18.board.BoardIndex;
+import fwcd.sc18.utils.HUIUtils;
+
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.shared.InvalidGameStateException;
+import sc.shared.InvalidMoveException;
+import sc.shared.PlayerColor;
+
+/**
+ * Compares quantized with float inference on the children of the
+ * positions of random games, using untrained networks (initialized
+ * like new individuals, thus with a wide range of weights).
+ *
+ * <p>The error of every quantized rating is bounded by the worst case
+ * of the rounding: Every int8 weight differs by at most half a step
+ * (1/254 of the largest weight of it's layer) and every 16 bit activation
+ * by at most half a step (1/65534 of the largest activation of it's layer)
+ * from the float one. A different move may thus only be chosen if the
+ * ratings of both moves are within their error bounds. Since the rounding
+ * errors mostly cancel out, the average error is far below the bound.</p>
+ */
+public class QuantizationTest {
+	private static final int NETWORKS = 20;
+	private static final int GAMES = 20;
+	/** The tolerated fraction of positions in which quantized inference chooses another move. */
+	private static final float MOVE_TOLERANCE = 0.1F;
+	/** The tolerated average error relative to the average error bound. */
+	private static final float AVERAGE_ERROR_TOLERANCE = 0.005F;
+	/** Tolerates rounding errors of the float computations. */
+	private static final float FLOAT_TOLERANCE = 1e-4F;
+
+	@Test
+	public void testQuantizedRatingsAndMoves() throws Exception {
+		Random random = new Random(1);
+		List<float[][]> positions = encodedPositions(random);
+		int[] layerSizes = GeneticNeuralLogic.getLayerSizes();
+		double totalError = 0;
+		double totalBound = 0;
+
+		for (int n=0; n<NETWORKS; n++) {
+			Perceptron reference = new Perceptron(layerSizes);
+			reference.setWeights(gaussianWeights(reference.getWeights().length, random));
+			Perceptron quantized = new Perceptron(layerSizes);
+			quantized.setWeights(reference.getWeights());
+			quantized.setQuantized(true);
+
+			int disagreements = 0;
+			for (float[][] leaves : positions) {
+				float[][] referenceRatings = reference.computeBatch(leaves);
+				float[][] quantizedRatings = quantized.computeBatch(leaves);
+				float[] tolerances = new float[leaves.length];
+				int referenceBest = 0;
+				int quantizedBest = 0;
+
+				for (int i=0; i<leaves.length; i++) {
+					float rating = referenceRatings[i][0];
+					float quantizedRating = quantizedRatings[i][0];
+					float[] bounded = rateWithErrorBound(layerSizes, reference.getWeights(), leaves[i]);
+					tolerances[i] = bounded[1] + FLOAT_TOLERANCE * (1 + Math.abs(rating));
+
+					// The batched and the single path should agree exactly
+					assertEquals("Float rating", reference.computeFirst(leaves[i]), rating, 0);
+					assertEquals("Quantized rating", quantized.computeFirst(leaves[i]), quantizedRating, 0);
+					assertEquals("Bounded rating", rating, bounded[0], FLOAT_TOLERANCE * (1 + Math.abs(rating)));
+					assertEquals("Network " + n + ": Quantized rating", rating, quantizedRating, tolerances[i]);
+					totalError += Math.abs(rating - quantizedRating);
+					totalBound += bounded[1];
+
+					if (rating > referenceRatings[referenceBest][0]) {
+						referenceBest = i;
+					}
+					if (quantizedRating > quantizedRatings[quantizedBest][0]) {
+						quantizedBest = i;
+					}
+				}
+
+				if (referenceBest != quantizedBest) {
+					disagreements++;
+					float regret = referenceRatings[referenceBest][0] - referenceRatings[quantizedBest][0];
+					assertTrue("Network " + n + ": Regret " + regret, regret <= tolerances[referenceBest] + tolerances[quantizedBest]);
+				}
+			}
+
+			assertTrue("Network " + n + ": Chose other moves in " + disagreements + " of " + positions.size() + " positions", disagreements <= MOVE_TOLERANCE * positions.size());
+		}
+
+		assertTrue("Average error " + (totalError / totalBound) + " of the bound", totalError <= AVERAGE_ERROR_TOLERANCE * totalBound);
+	}
+
+	/**
+	 * Computes the float rating (the first output) together with the
+	 * largest error that quantized inference can make (using the
+	 * layout of {@link Perceptron}: a row of weights followed by the bias per neuron).
+	 *
+	 * @return The rating and it's error bound
+	 */
+	private float[] rateWithErrorBound(int[] layerSizes, float[] weights, float[] input) {
+		float[] layer = input;
+		float[] errors = new float[input.length];
+		int weightIndex = 0;
+
+		for (int nextLayerI=1; nextLayerI<layerSizes.length; nextLayerI++) {
+			int layerSize = layerSizes[nextLayerI - 1];
+			int nextLayerSize = layerSizes[nextLayerI];
+			float[] nextLayer = new float[nextLayerSize];
+			float[] nextErrors = new float[nextLayerSize];
+
+			float maxWeight = 0;
+			for (int nextNeuronI=0; nextNeuronI<nextLayerSize; nextNeuronI++) {
+				for (int neuronI=0; neuronI<layerSize; neuronI++) {
+					maxWeight = Math.max(maxWeight, Math.abs(weights[weightIndex + nextNeuronI * (layerSize + 1) + neuronI]));
+				}
+			}
+
+			float maxActivation = 0;
+			float activationSum = 0;
+			for (int neuronI=0; neuronI<layerSize; neuronI++) {
+				maxActivation = Math.max(maxActivation, Math.abs(layer[neuronI]) + errors[neuronI]);
+				activationSum += Math.abs(layer[neuronI]);
+			}
+
+			// The layers are small enough to use the full 16 bits for the activations
+			float weightError = maxWeight / (2 * Byte.MAX_VALUE);
+			float activationError = maxActivation / (2 * Short.MAX_VALUE);
+
+			for (int nextNeuronI=0; nextNeuronI<nextLayerSize; nextNeuronI++) {
+				float dot = 0;
+				float error = weightError * activationSum;
+
+				for (int neuronI=0; neuronI<layerSize; neuronI++) {
+					float weight = weights[weightIndex + neuronI];
+					dot += layer[neuronI] * weight;
+					error += (Math.abs(weight) + weightError) * (errors[neuronI] + activationError);
+				}
+				weightIndex += layerSize;
+
+				// The ReLU does not increase the error
+				nextLayer[nextNeuronI] = Math.max(0, dot + weights[weightIndex]);
+				nextErrors[nextNeuronI] = error;
+				weightIndex++;
+			}
+
+			layer = nextLayer;
+			errors = nextErrors;
+		}
+
+		return new float[] {layer[0], errors[0]};
+	}
+
+	private float[] gaussianWeights(int count, Random random) {
+		float[] weights = new float[count];
+		for (int i=0; i<count; i++) {
+			weights[i] = (float) random.nextGaussian();
+		}
+		return weights;
+	}
+
+	/**
+	 * Plays seeded random games and encodes the children of every
+	 * position from the perspective of the player to move.
+	 */
+	private List<float[][]> encodedPositions(Random random) throws Exception {
+		List<float[][]> positions = new ArrayList<>();
+
+		for (int i=0; i<GAMES; i++) {
+			GameState state = new GameState();
+			BoardIndex board = BoardIndex.of(state);
+
+			while (!HUIUtils.isGameOver(state)) {
+				PlayerColor color = state.getCurrentPlayerColor();
+				List<Move> moves = state.getPossibleMoves();
+				List<float[]> leaves = new ArrayList<>();
+
+				for (Move move : moves) {
+					try {
+						float[] encoded = new float[StateEncoder.SIZE];
+						StateEncoder.encode(HUIUtils.spawnChild(state, move), color, board, encoded, 0);
+						leaves.add(encoded);
+					} catch (InvalidMoveException | InvalidGameStateException e) {
+						// Skip invalid moves
+					}
+				}
+
+				if (leaves.size() > 1) {
+					positions.add(leaves.toArray(new float[leaves.size()][]));
+				}
+				state = HUIUtils.spawnChild(state, moves.get(random.nextInt(moves.size())));
+			}
+		}
+
+		return positions;
+	}
+}
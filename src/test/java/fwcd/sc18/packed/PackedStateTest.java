@@ -0,0 +1,178 @@
+package fwcd.sc18.packed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fwcd.sc18.utils.HUIUtils;
+
+import sc.plugin2018.Action;
+import sc.plugin2018.Advance;
+import sc.plugin2018.Card;
+import sc.plugin2018.CardType;
+import sc.plugin2018.ExchangeCarrots;
+import sc.plugin2018.GameState;
+import sc.plugin2018.Move;
+import sc.plugin2018.Player;
+import sc.shared.InvalidGameStateException;
+import sc.shared.InvalidMoveException;
+import sc.shared.PlayerColor;
+
+/**
+ * Compares the packed state and move generator with the
+ * rules of the plugin in every position of seeded random games.
+ */
+public class PackedStateTest {
+	private static final int GAMES = 200;
+
+	@Test
+	public void testGeneratorMatchesPossibleMoves() throws Exception {
+		int[] buffer = new int[PackedMoveGenerator.MAX_MOVES];
+
+		for (GameState state : randomPositions(1)) {
+			List<Move> expected = state.getPossibleMoves();
+			int count = PackedMoveGenerator.generate(PackedState.of(state), buffer, 0);
+			List<Move> actual = new ArrayList<>();
+
+			for (int i=0; i<count; i++) {
+				actual.add(PackedMoves.toMove(buffer[i]));
+			}
+
+			assertEquals("Move count in " + describe(state), expected.size(), count);
+			for (int i=0; i<count; i++) {
+				assertEquals("Move " + i + " in " + describe(state), PackedMoves.of(expected.get(i)), buffer[i]);
+				assertEquals("Converted move " + i + " in " + describe(state), expected.get(i).actions, actual.get(i).actions);
+			}
+		}
+	}
+
+	@Test
+	public void testApplyMatchesPerform() throws Exception {
+		for (GameState state : randomPositions(2)) {
+			PackedState packed = PackedState.of(state);
+
+			for (Move move : state.getPossibleMoves()) {
+				GameState child;
+				try {
+					child = HUIUtils.spawnChild(state, move);
+				} catch (InvalidMoveException | InvalidGameStateException e) {
+					continue;
+				}
+
+				PackedState packedChild = new PackedState(packed);
+				assertTrue("Could not apply " + move + " in " + describe(state), packedChild.apply(move));
+				assertEquals("State after " + move + " in " + describe(state), PackedState.of(child), packedChild);
+			}
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		for (List<GameState> game : randomGames(3)) {
+			// The initial state shares the board, but differs in the other converted fields
+			GameState template = game.get(0);
+
+			for (GameState state : game) {
+				assertEqualStates(state, PackedState.of(state).toGameState(template));
+			}
+		}
+	}
+
+	private List<GameState> randomPositions(long seed) throws Exception {
+		List<GameState> positions = new ArrayList<>();
+		for (List<GameState> game : randomGames(seed)) {
+			positions.addAll(game);
+		}
+		return positions;
+	}
+
+	/**
+	 * Plays seeded random games.
+	 *
+	 * @return The positions of every game (before the game is over)
+	 */
+	private List<List<GameState>> randomGames(long seed) throws Exception {
+		Random random = new Random(seed);
+		List<List<GameState>> games = new ArrayList<>();
+
+		for (int i=0; i<GAMES; i++) {
+			List<GameState> positions = new ArrayList<>();
+			GameState state = new GameState();
+
+			while (!HUIUtils.isGameOver(state)) {
+				positions.add(state);
+				List<Move> moves = state.getPossibleMoves();
+				state = HUIUtils.spawnChild(state, moves.get(random.nextInt(moves.size())));
+			}
+
+			games.add(positions);
+		}
+
+		return games;
+	}
+
+	/**
+	 * Asserts that the states are equal except for the last move (which is not packed).
+	 */
+	private void assertEqualStates(GameState expected, GameState actual) {
+		String msg = describe(expected);
+		assertEquals("Turn in " + msg, expected.getTurn(), actual.getTurn());
+		assertEquals("Current player in " + msg, expected.getCurrentPlayerColor(), actual.getCurrentPlayerColor());
+		assertEquals("Start player in " + msg, expected.getStartPlayerColor(), actual.getStartPlayerColor());
+
+		for (PlayerColor color : PlayerColor.values()) {
+			Player expectedPlayer = expected.getPlayer(color);
+			Player actualPlayer = actual.getPlayer(color);
+			String playerMsg = color + " in " + msg;
+
+			assertEquals("Color of " + playerMsg, expectedPlayer.getPlayerColor(), actualPlayer.getPlayerColor());
+			assertEquals("Field of " + playerMsg, expectedPlayer.getFieldIndex(), actualPlayer.getFieldIndex());
+			assertEquals("Carrots of " + playerMsg, expectedPlayer.getCarrots(), actualPlayer.getCarrots());
+			assertEquals("Salads of " + playerMsg, expectedPlayer.getSalads(), actualPlayer.getSalads());
+			// Packed cards are a set, thus only their order may differ
+			assertEquals("Cards of " + playerMsg, sorted(expectedPlayer.getCards()), sorted(actualPlayer.getCards()));
+			assertEquals("Last action of " + playerMsg, describe(expectedPlayer.getLastNonSkipAction()), describe(actualPlayer.getLastNonSkipAction()));
+			assertEquals("Must play card of " + playerMsg, expectedPlayer.mustPlayCard(), actualPlayer.mustPlayCard());
+		}
+
+		assertEquals("Possible moves in " + msg, expected.getPossibleMoves(), actual.getPossibleMoves());
+	}
+
+	private List<CardType> sorted(List<CardType> cards) {
+		CardType[] array = cards.toArray(new CardType[cards.size()]);
+		Arrays.sort(array);
+		return Arrays.asList(array);
+	}
+
+	/**
+	 * Describes the rule-relevant parts of an action (ignoring it's order).
+	 */
+	private String describe(Action action) {
+		if (action == null) {
+			return "null";
+		} else if (action instanceof Advance) {
+			return "Advance " + ((Advance) action).getDistance();
+		} else if (action instanceof ExchangeCarrots) {
+			return "ExchangeCarrots " + ((ExchangeCarrots) action).getValue();
+		} else if (action instanceof Card) {
+			Card card = (Card) action;
+			return "Card " + card.getType() + " " + card.getValue();
+		} else {
+			return action.getClass().getSimpleName();
+		}
+	}
+
+	private String describe(GameState state) {
+		Player red = state.getPlayer(PlayerColor.RED);
+		Player blue = state.getPlayer(PlayerColor.BLUE);
+		return "turn " + state.getTurn()
+				+ " (red on " + red.getFieldIndex() + " with " + red.getCarrots() + " carrots, " + red.getSalads() + " salads, " + red.getCards()
+				+ "; blue on " + blue.getFieldIndex() + " with " + blue.getCarrots() + " carrots, " + blue.getSalads() + " salads, " + blue.getCards() + ")";
+	}
+}
@@ -0,0 +1,180 @@
+package fwcd.sc18.trainer.distributed;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import fwcd.sc18.geneticneural.EvaluationResult;
+import fwcd.sc18.geneticneural.GeneticNeuralLogic;
+import fwcd.sc18.geneticneural.GeneticStrategy;
+import fwcd.sc18.geneticneural.Population;
+import fwcd.sc18.geneticneural.SoloStreakStrategy;
+import fwcd.sc18.utils.HUIUtils;
+import fwcd.sc18.utils.MatchResult;
+
+/**
+ * Runs a coordinator with workers on localhost, kills a worker
+ * in the middle of a job and checks that it's individual is
+ * evaluated by another worker and that workers can rejoin.
+ */
+public class TrainingCoordinatorTest {
+	private static final int POPULATION_SIZE = 6;
+	private static final long TIMEOUT_MS = 120 * 1000;
+
+	@Test
+	public void testFailedWorkersAreReplaced() throws Exception {
+		Path folder = Files.createTempDirectory("coordinator-test");
+		GeneticStrategy strategy = new SoloStreakStrategy();
+		RecordingPopulation population = new RecordingPopulation(folder, strategy);
+		TrainingCoordinator coordinator = new TrainingCoordinator(population, strategy, 0);
+		Thread coordinatorThread = new Thread(coordinator::run, "Coordinator");
+		List<TrainingWorker> workers = new ArrayList<>();
+		List<Thread> workerThreads = new ArrayList<>();
+
+		// Long jobs, thus the killed worker is still in the middle of it's first one
+		coordinator.setGamesPerJob(50);
+		coordinatorThread.start();
+
+		try {
+			// Start the workers one after another to know which handler serves them
+			TrainingWorker killed = startWorker(coordinator, workers, workerThreads);
+			Event first = population.await(e -> e.is("sample", "Worker-1"));
+			startWorker(coordinator, workers, workerThreads);
+			population.await(e -> e.is("sample", "Worker-2"));
+
+			// Kill the first worker in the middle of it's job
+			killed.stop();
+			Event released = population.await(e -> e.is("release", "Worker-1"));
+			assertSame("Released individual", first.genes, released.genes);
+
+			// The released individual is then evaluated by another worker
+			startWorker(coordinator, workers, workerThreads);
+			population.await(e -> e.kind.equals("evolve") && !e.thread.equals("Worker-1") && e.genes == first.genes);
+
+			// Disconnected workers keep trying to rejoin (and are served by new handlers)
+			coordinator.disconnectWorkers();
+			population.await(e -> e.is("sample", "Worker-4"));
+			population.await(e -> e.is("sample", "Worker-5"));
+		} finally {
+			coordinator.close();
+			for (TrainingWorker worker : workers) {
+				worker.stop();
+			}
+			coordinator.disconnectWorkers();
+
+			for (Thread thread : workerThreads) {
+				thread.join(TIMEOUT_MS);
+			}
+			coordinatorThread.join(TIMEOUT_MS);
+			population.flush();
+			delete(folder.toFile());
+		}
+
+		assertFalse("Coordinator is still running", coordinatorThread.isAlive());
+	}
+
+	private TrainingWorker startWorker(TrainingCoordinator coordinator, List<TrainingWorker> workers, List<Thread> threads) {
+		TrainingWorker worker = new TrainingWorker("localhost", coordinator.getPort());
+		Thread thread = new Thread(worker::run, "TrainingWorker-" + (workers.size() + 1));
+
+		worker.setRetryDelayMs(10);
+		workers.add(worker);
+		threads.add(thread);
+		thread.start();
+		return worker;
+	}
+
+	private void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * A call to the population by a handler thread of the coordinator.
+	 */
+	private static class Event {
+		private final String kind;
+		private final String thread;
+		private final float[] genes;
+
+		public Event(String kind, float[] genes) {
+			this.kind = kind;
+			this.genes = genes;
+			thread = Thread.currentThread().getName();
+		}
+
+		public boolean is(String kind, String thread) {
+			return this.kind.equals(kind) && this.thread.equals(thread);
+		}
+
+		@Override
+		public String toString() {
+			return kind + " by " + thread;
+		}
+	}
+
+	/**
+	 * A population that records which individuals are
+	 * sampled, released and evolved by which thread.
+	 */
+	private static class RecordingPopulation extends Population {
+		private final List<Event> events = new CopyOnWriteArrayList<>();
+
+		public RecordingPopulation(Path folder, GeneticStrategy strategy) {
+			super(POPULATION_SIZE, () -> HUIUtils.generateWeights(GeneticNeuralLogic.getLayerSizes()), folder, strategy, true, 0);
+		}
+
+		@Override
+		public synchronized float[] sample(float[] previous) {
+			float[] genes = super.sample(previous);
+			events.add(new Event("sample", genes));
+			return genes;
+		}
+
+		@Override
+		public synchronized void release(float[] individual) {
+			events.add(new Event("release", individual));
+			super.release(individual);
+		}
+
+		@Override
+		public synchronized boolean evolve(MatchResult result, EvaluationResult evaluation) {
+			events.add(new Event("evolve", result.getGenes()));
+			return super.evolve(result, evaluation);
+		}
+
+		/**
+		 * Waits for the first event matching the condition.
+		 */
+		public Event await(Predicate<Event> condition) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+
+			while (System.currentTimeMillis() < deadline) {
+				for (Event event : events) {
+					if (condition.test(event)) {
+						return event;
+					}
+				}
+				Thread.sleep(10);
+			}
+
+			fail("Timed out waiting for an event, got " + events);
+			return null;
+		}
+	}
+}